@@ -0,0 +1,91 @@
+package com.sample.updater;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sample.bean.API;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smaller JSON paths around the rule engine: NEW.VALUE parsing and copying, and the mapping of
+ * {@code GET /apis} pages to {@link API} beans done while listing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonHandlingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Values {
+
+        @Param({"string", "number", "boolean", "object"})
+        public String kind;
+
+        String raw;
+        UpdateRule rule;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SyntheticPayloads.quietLogging();
+            switch (kind) {
+                case "number":
+                    raw = "1024";
+                    break;
+                case "boolean":
+                    raw = "true";
+                    break;
+                case "object":
+                    raw = "{\"corsConfigurationEnabled\":true,\"accessControlAllowOrigins\":[\"*\"],"
+                            + "\"accessControlAllowHeaders\":[\"authorization\",\"Content-Type\",\"apikey\"]}";
+                    break;
+                default:
+                    raw = "testPolicy";
+            }
+            rule = new UpdateRule(0, "RULE1", "corsConfiguration", "", UpdateRule.parseValue(raw));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pages {
+
+        @Param({"10", "100", "1000"})
+        public int apis;
+
+        JsonObject page;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            page = SyntheticPayloads.page(apis);
+        }
+    }
+
+    @Benchmark
+    public JsonElement parseValue(Values values) {
+        return UpdateRule.parseValue(values.raw);
+    }
+
+    @Benchmark
+    public JsonElement copyOfNewValue(Values values) {
+        return values.rule.copyOfNewValue();
+    }
+
+    @Benchmark
+    public List<API> mapPage(Pages pages) {
+        return APIInventory.parsePage(pages.page);
+    }
+}
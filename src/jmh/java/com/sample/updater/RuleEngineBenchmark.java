@@ -0,0 +1,88 @@
+package com.sample.updater;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transform throughput of the rule engine over payloads of 10 to 10,000 operations and 1 to 100 rules.
+ *
+ * {@code applyToString} is what every API goes through in the default mode (parse, walk, serialize);
+ * {@code applyToTree} isolates the walk and replacements on an already parsed payload, which includes a
+ * {@code deepCopy} so each invocation starts from the original values ({@code deepCopy} alone is measured
+ * separately to subtract it). Run with {@code -prof gc} to see the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleEngineBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int operations;
+
+    @Param({"1", "10", "100"})
+    public int ruleCount;
+
+    private List<UpdateRule> rules;
+    private RuleTrie trie;
+    private String payload;
+    private JsonObject parsed;
+    private int[] hits;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticPayloads.quietLogging();
+        rules = SyntheticPayloads.rules(ruleCount);
+        trie = RuleTrie.compile(rules);
+        payload = SyntheticPayloads.api(1, operations).toString();
+        parsed = JsonParser.parseString(payload).getAsJsonObject();
+        hits = new int[ruleCount];
+        if (trie.apply(payload) == null) {
+            throw new IllegalStateException("Benchmark rules do not change the synthetic payload");
+        }
+    }
+
+    @Benchmark
+    public RuleTrie compile() {
+        return RuleTrie.compile(rules);
+    }
+
+    @Benchmark
+    public String applyToString() {
+        return trie.apply(payload);
+    }
+
+    @Benchmark
+    public String applyStreaming() throws IOException {
+        return trie.applyStreaming(new StringReader(payload)).getPayload();
+    }
+
+    @Benchmark
+    public int applyToTree() {
+        return trie.apply(parsed.deepCopy(), hits);
+    }
+
+    @Benchmark
+    public JsonObject deepCopy() {
+        return parsed.deepCopy();
+    }
+}
@@ -0,0 +1,130 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publisher shaped payloads and rule sets for the benchmarks, generated so every size is reproducible.
+ */
+final class SyntheticPayloads {
+
+    private static final String[] VERBS = {"GET", "POST", "PUT", "DELETE", "PATCH"};
+    private static final String[] POLICIES = {"Unlimited", "Gold", "Silver", "Bronze"};
+
+    /** Keys of {@code additionalPropertiesMap}; one per rule after the first. */
+    static final int PROPERTY_COUNT = 100;
+
+    private SyntheticPayloads() {
+    }
+
+    /**
+     * Keep the per-payload "Updated ..." log lines out of the measurements.
+     */
+    static void quietLogging() {
+        Logger.getLogger("com.sample").setLevel(Level.WARNING);
+    }
+
+    /**
+     * An API definition as returned by {@code GET /apis/{id}}, with {@code operations} resources.
+     */
+    static JsonObject api(int index, int operations) {
+        JsonObject api = summary(index);
+        api.addProperty("apiThrottlingPolicy", "Unlimited");
+        api.addProperty("authorizationHeader", "Authorization");
+
+        JsonObject endpointConfig = new JsonObject();
+        endpointConfig.addProperty("endpoint_type", "http");
+        JsonObject production = new JsonObject();
+        production.addProperty("url", "https://backend.example.com/api-" + index);
+        endpointConfig.add("production_endpoints", production);
+        api.add("endpointConfig", endpointConfig);
+
+        JsonObject corsConfiguration = new JsonObject();
+        corsConfiguration.addProperty("corsConfigurationEnabled", false);
+        corsConfiguration.add("accessControlAllowOrigins", strings("*"));
+        api.add("corsConfiguration", corsConfiguration);
+        api.add("policies", strings("Unlimited", "Gold"));
+
+        JsonObject properties = new JsonObject();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            JsonObject property = new JsonObject();
+            property.addProperty("value", "v" + i);
+            property.addProperty("display", i % 2 == 0);
+            properties.add("p" + i, property);
+        }
+        api.add("additionalPropertiesMap", properties);
+
+        JsonArray resources = new JsonArray();
+        for (int i = 0; i < operations; i++) {
+            JsonObject operation = new JsonObject();
+            operation.addProperty("id", "");
+            operation.addProperty("target", "/resource-" + i + "/{id}");
+            operation.addProperty("verb", VERBS[i % VERBS.length]);
+            operation.addProperty("authType", i % 10 == 0 ? "None" : "Application & Application User");
+            operation.addProperty("throttlingPolicy", POLICIES[i % POLICIES.length]);
+            operation.add("scopes", new JsonArray());
+            operation.add("usedProductIds", new JsonArray());
+            operation.add("operationPolicies", new JsonObject());
+            resources.add(operation);
+        }
+        api.add("operations", resources);
+        return api;
+    }
+
+    /**
+     * A page of {@code GET /apis} with {@code count} entries.
+     */
+    static JsonObject page(int count) {
+        JsonArray list = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            list.add(summary(i));
+        }
+        JsonObject page = new JsonObject();
+        page.addProperty("count", count);
+        page.add("list", list);
+        return page;
+    }
+
+    /**
+     * {@code count} rules on independent paths, so they compile into a single pass. The first one rewrites
+     * every {@code operations[].throttlingPolicy}; the others each replace one {@code additionalPropertiesMap} value.
+     */
+    static List<UpdateRule> rules(int count) {
+        List<UpdateRule> rules = new ArrayList<>();
+        rules.add(new UpdateRule(0, "RULE0", "operations[].throttlingPolicy", "Unlimited",
+                UpdateRule.parseValue("testPolicy")));
+        for (int i = 1; i < count; i++) {
+            int property = (i - 1) % PROPERTY_COUNT;
+            rules.add(new UpdateRule(i, "RULE" + i, "additionalPropertiesMap.p" + property + ".value", "v" + property,
+                    UpdateRule.parseValue("updated-" + i)));
+        }
+        return rules;
+    }
+
+    private static JsonObject summary(int index) {
+        JsonObject api = new JsonObject();
+        api.addProperty("id", String.format("00000000-0000-0000-0000-%012d", index));
+        api.addProperty("name", "API" + index);
+        api.addProperty("description", "Synthetic API " + index);
+        api.addProperty("context", "/api" + index);
+        api.addProperty("version", "1.0.0");
+        api.addProperty("provider", "admin");
+        api.addProperty("type", "HTTP");
+        api.addProperty("lifeCycleStatus", "PUBLISHED");
+        api.addProperty("updatedTime", "2024-01-01T00:00:00." + String.format("%03d", index % 1000) + "Z");
+        return api;
+    }
+
+    private static JsonArray strings(String... values) {
+        JsonArray array = new JsonArray();
+        for (String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+}
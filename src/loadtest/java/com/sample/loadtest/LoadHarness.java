@@ -0,0 +1,129 @@
+package com.sample.loadtest;
+
+import com.sample.updater.UpdateService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs {@link UpdateService} end to end against a {@link StandInServer} and reports the throughput.
+ *
+ * The updater runs with the given configuration, except that the publisher, token and DCR URLs point at the
+ * stand-in and every file it writes (DCR client, journal, fingerprint index, cache, metrics) goes to a fresh
+ * temporary directory, so repeated runs start from the same state. {@code --set KEY=VALUE} overrides any other
+ * property, e.g. {@code --set UPDATE.CONCURRENCY=16}.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.sample.loadtest.LoadHarness <config.properties>
+ * [stand-in options] [--set KEY=VALUE]...}
+ */
+public class LoadHarness {
+
+    private static final String TRUSTSTORE_PASSWORD = "stand-in";
+
+    public static void main(String[] args) throws Exception {
+        List<String> remaining = new ArrayList<>();
+        StandInServer.Options options = StandInServer.Options.parse(args, remaining);
+        Properties overrides = new Properties();
+        String baseConfig = null;
+        for (int i = 0; i < remaining.size(); i++) {
+            String arg = remaining.get(i);
+            if ("--set".equals(arg) && i + 1 < remaining.size() && remaining.get(i + 1).contains("=")) {
+                String[] pair = remaining.get(++i).split("=", 2);
+                overrides.setProperty(pair[0].trim(), pair[1].trim());
+            } else if (baseConfig == null && !arg.startsWith("--")) {
+                baseConfig = arg;
+            } else {
+                System.err.println("Unknown argument " + arg);
+                System.err.println("Usage: LoadHarness <config.properties> [--apis n] [--operations n] [--latency-ms ms]"
+                        + " [--latency-p99-ms ms] [--deploy-latency-ms ms] [--error-rate r] [--throttle-rate r]"
+                        + " [--retry-after s] [--revision-limit n] [--seed-revisions n] [--environments a,b]"
+                        + " [--token-ttl s] [--threads n] [--set KEY=VALUE]...");
+                System.exit(1);
+            }
+        }
+        if (baseConfig == null) {
+            System.err.println("Usage: LoadHarness <config.properties> [stand-in options] [--set KEY=VALUE]...");
+            System.exit(1);
+        }
+
+        StandInServer server = new StandInServer(options);
+        server.start();
+        Path workDirectory = Files.createTempDirectory("apim-load");
+        Path config = writeConfig(Paths.get(baseConfig), overrides, server.getBaseURL(), workDirectory);
+
+        long start = System.nanoTime();
+        UpdateService.main(new String[]{config.toString()});
+        double seconds = (System.nanoTime() - start) / 1e9;
+        server.stop();
+
+        System.out.println(report(server, seconds, workDirectory));
+    }
+
+    private static Path writeConfig(Path baseConfig, Properties overrides, String baseURL, Path workDirectory)
+            throws IOException, GeneralSecurityException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(baseConfig)) {
+            properties.load(in);
+        }
+        properties.setProperty("PUBLISHER.REST.URL", baseURL + "/api/am/publisher/v4/apis");
+        properties.setProperty("RESIDENTKM.TOKEN.URL", baseURL + "/oauth2/token");
+        properties.setProperty("RESIDENTKM.DCR.URL", baseURL + "/client-registration/v0.17/register");
+        properties.setProperty("TRUSTSTORE.PATH", createTrustStore(workDirectory).toString());
+        properties.setProperty("TRUSTSTORE.PASSWORD", TRUSTSTORE_PASSWORD);
+        properties.setProperty("DCR.CREDENTIALS.FILE", workDirectory.resolve("dcr-client.json").toString());
+        properties.setProperty("JOURNAL.FILE", workDirectory.resolve("update-journal.log").toString());
+        properties.setProperty("FINGERPRINT.INDEX.FILE", workDirectory.resolve("fingerprint-index.tsv").toString());
+        properties.setProperty("CACHE.DIRECTORY", workDirectory.resolve("cache").toString());
+        properties.setProperty("METRICS.JSON.FILE", workDirectory.resolve("metrics.json").toString());
+        properties.setProperty("METRICS.PROMETHEUS.FILE", workDirectory.resolve("metrics.prom").toString());
+        properties.putAll(overrides);
+
+        Path config = workDirectory.resolve("config.properties");
+        try (OutputStream out = Files.newOutputStream(config)) {
+            properties.store(out, "Generated by LoadHarness from " + baseConfig);
+        }
+        return config;
+    }
+
+    /**
+     * The stand-in speaks plain HTTP, but the updater always loads a trust store.
+     */
+    private static Path createTrustStore(Path workDirectory) throws IOException, GeneralSecurityException {
+        Path path = workDirectory.resolve("truststore.jks");
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        try (OutputStream out = Files.newOutputStream(path)) {
+            trustStore.store(out, TRUSTSTORE_PASSWORD.toCharArray());
+        }
+        return path;
+    }
+
+    private static String report(StandInServer server, double seconds, Path workDirectory) {
+        long updated = server.getCount("PUT /api/am/publisher/v4/apis/{id} 200");
+        long requests = server.getCounts().values().stream().mapToLong(Long::longValue).sum();
+        StringBuilder report = new StringBuilder();
+        report.append("\n===== Load harness =====\n");
+        report.append("Stand-in         : ").append(server.getOptions()).append('\n');
+        report.append(String.format("Elapsed          : %.2f s%n", seconds));
+        report.append(String.format("APIs updated     : %d (%.2f APIs/s)%n", updated, updated / seconds));
+        report.append(String.format("Requests         : %d (%.2f req/s)%n", requests, requests / seconds));
+        report.append(String.format("Injected 429/500 : %d / %d%n", server.getStatusCount(429),
+                server.getStatusCount(500)));
+        report.append(String.format("Revision limit   : %d rejected revision creations%n",
+                server.getCount("POST /api/am/publisher/v4/apis/{id}/revisions 400")));
+        report.append(String.format("Deployments      : %d%n",
+                server.getCount("POST /api/am/publisher/v4/apis/{id}/deploy-revision 201")));
+        report.append("Work directory   : ").append(workDirectory).append('\n');
+        report.append(server.report());
+        return report.toString();
+    }
+}
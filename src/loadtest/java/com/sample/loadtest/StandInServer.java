@@ -0,0 +1,631 @@
+package com.sample.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the WSO2 Publisher v4 and Key Manager endpoints the updater calls, built on the JDK HTTP server.
+ *
+ * It serves DCR, the token endpoint, API listing (with offset/limit and {@code status:}/{@code context:}/
+ * {@code provider:} queries), API details with ETags, updates, revisions and deployments. Bodies over 1 KB are
+ * gzip compressed for clients that accept it, and gzip request bodies are accepted. The number of APIs,
+ * operations per API, latency distribution, error and 429 rates and the revision limit are configurable
+ * through {@link Options}. Responses are counted per endpoint and status.
+ *
+ * Run alone with {@code java -cp target/benchmarks.jar com.sample.loadtest.StandInServer [options]}, or
+ * through {@link LoadHarness}.
+ */
+public class StandInServer {
+
+    private static final Logger logger = Logger.getLogger(StandInServer.class.getName());
+
+    private static final String PUBLISHER_PATH = "/api/am/publisher/v4/apis";
+    private static final Pattern API_PATH = Pattern.compile(PUBLISHER_PATH + "/([^/]+)(/.*)?");
+    private static final Pattern REVISION_PATH = Pattern.compile("/revisions/([^/]+)");
+    private static final String[] VERBS = {"GET", "POST", "PUT", "DELETE", "PATCH"};
+    // Inverse of the standard normal CDF at 0.99
+    private static final double Z_99 = 2.3263;
+    private static final int GZIP_THRESHOLD = 1024;
+
+    private final Options options;
+    private final Map<String, StoredAPI> apis = new ConcurrentHashMap<>();
+    private final List<String> apiIds = new ArrayList<>();
+    private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private final double latencySigma;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Stand-in settings. Parsed from {@code --name value} arguments by {@link #parse(String[], List)}.
+     */
+    public static class Options {
+        int port = 0;
+        int threads = 64;
+        int apiCount = 1000;
+        int operations = 20;
+        double latencyMs = 20;
+        double latencyP99Ms = 100;
+        double deployLatencyMs = 0;
+        double errorRate = 0;
+        double throttleRate = 0;
+        int retryAfterSeconds = 1;
+        int revisionLimit = 5;
+        int seedRevisions = 0;
+        List<String> environments = Arrays.asList("Default");
+        int tokenTtlSeconds = 3600;
+
+        /**
+         * Apply the stand-in options in {@code args} and collect everything else in {@code remaining}.
+         */
+        public static Options parse(String[] args, List<String> remaining) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (!name.startsWith("--") || i + 1 >= args.length || !options.set(name.substring(2), args[i + 1])) {
+                    remaining.add(name);
+                    continue;
+                }
+                i++;
+            }
+            return options;
+        }
+
+        private boolean set(String name, String value) {
+            switch (name) {
+                case "port": port = Integer.parseInt(value); return true;
+                case "threads": threads = Integer.parseInt(value); return true;
+                case "apis": apiCount = Integer.parseInt(value); return true;
+                case "operations": operations = Integer.parseInt(value); return true;
+                case "latency-ms": latencyMs = Double.parseDouble(value); return true;
+                case "latency-p99-ms": latencyP99Ms = Double.parseDouble(value); return true;
+                case "deploy-latency-ms": deployLatencyMs = Double.parseDouble(value); return true;
+                case "error-rate": errorRate = Double.parseDouble(value); return true;
+                case "throttle-rate": throttleRate = Double.parseDouble(value); return true;
+                case "retry-after": retryAfterSeconds = Integer.parseInt(value); return true;
+                case "revision-limit": revisionLimit = Integer.parseInt(value); return true;
+                case "seed-revisions": seedRevisions = Integer.parseInt(value); return true;
+                case "environments": environments = Arrays.asList(value.split(",")); return true;
+                case "token-ttl": tokenTtlSeconds = Integer.parseInt(value); return true;
+                default: return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return apiCount + " APIs x " + operations + " operations, latency p50 " + latencyMs + " ms / p99 "
+                    + latencyP99Ms + " ms, errors " + errorRate + ", 429s " + throttleRate + ", revision limit "
+                    + revisionLimit + ", environments " + environments;
+        }
+    }
+
+    /**
+     * One API as the publisher holds it. Guarded by its own monitor.
+     */
+    private static class StoredAPI {
+        final String id;
+        final String status;
+        final String context;
+        final String provider;
+        JsonObject definition;
+        String serialized;
+        String lastUpdatedTime;
+        final List<String> revisions = new ArrayList<>();
+        String deployedRevision;
+        int revisionNumber;
+
+        StoredAPI(String id, String status, String context, String provider) {
+            this.id = id;
+            this.status = status;
+            this.context = context;
+            this.provider = provider;
+        }
+    }
+
+    public StandInServer(Options options) {
+        this.options = options;
+        this.latencySigma = options.latencyP99Ms > options.latencyMs && options.latencyMs > 0
+                ? Math.log(options.latencyP99Ms / options.latencyMs) / Z_99 : 0;
+        for (int i = 0; i < options.apiCount; i++) {
+            StoredAPI api = createAPI(i);
+            apis.put(api.id, api);
+            apiIds.add(api.id);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> remaining = new ArrayList<>();
+        Options options = Options.parse(args, remaining);
+        if (!remaining.isEmpty()) {
+            logger.log(Level.SEVERE, "Unknown stand-in options " + remaining);
+            System.exit(1);
+        }
+        StandInServer server = new StandInServer(options);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            System.out.println(server.report());
+        }));
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port), 512);
+        executor = Executors.newFixedThreadPool(options.threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.log(Level.INFO, "***** Stand-in publisher listening on " + getBaseURL() + " : " + options);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+
+    /**
+     * @return responses served so far, keyed by {@code METHOD /path/template status}.
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((key, count) -> snapshot.put(key, count.sum()));
+        return snapshot;
+    }
+
+    public long getCount(String prefix) {
+        return counts.entrySet().stream().filter(entry -> entry.getKey().startsWith(prefix))
+                .mapToLong(entry -> entry.getValue().sum()).sum();
+    }
+
+    public long getStatusCount(int status) {
+        return counts.entrySet().stream().filter(entry -> entry.getKey().endsWith(" " + status))
+                .mapToLong(entry -> entry.getValue().sum()).sum();
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder("Stand-in responses:\n");
+        getCounts().forEach((key, count) -> report.append(String.format("  %-70s %8d%n", key, count)));
+        return report.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String template = path;
+        int status;
+        try {
+            InputStream requestBody = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                requestBody = new GZIPInputStream(requestBody);
+            }
+            byte[] body = readBody(requestBody);
+            if (path.startsWith("/client-registration")) {
+                status = register(exchange);
+            } else if (path.startsWith("/oauth2/token")) {
+                status = token(exchange, body);
+            } else {
+                Matcher api = API_PATH.matcher(path);
+                if (api.matches()) {
+                    String rest = api.group(2) == null ? "" : api.group(2);
+                    template = PUBLISHER_PATH + "/{id}" + REVISION_PATH.matcher(rest).replaceAll("/revisions/{id}");
+                }
+                status = publisher(exchange, method, path, api.matches() ? api : null, body);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Stand-in failed to handle " + method + " " + path, e);
+            status = send(exchange, 500, error(500, e.toString()));
+        } finally {
+            exchange.close();
+        }
+        counts.computeIfAbsent(method + " " + template + " " + status, key -> new LongAdder()).increment();
+    }
+
+    private int register(HttpExchange exchange) throws IOException {
+        JsonObject client = new JsonObject();
+        client.addProperty("clientId", "stand-in-client");
+        client.addProperty("clientSecret", "stand-in-secret");
+        client.addProperty("clientName", "rest_api_publisher");
+        return send(exchange, 200, client);
+    }
+
+    private int token(HttpExchange exchange, byte[] body) throws IOException {
+        String form = new String(body, StandardCharsets.UTF_8);
+        Map<String, String> parameters = parseQuery(form);
+        String grant = parameters.get("grant_type");
+        if (!"password".equals(grant) && !"refresh_token".equals(grant) && !"client_credentials".equals(grant)) {
+            return send(exchange, 400, error(400, "unsupported_grant_type"));
+        }
+        String accessToken = UUID.randomUUID().toString();
+        tokens.put(accessToken, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.tokenTtlSeconds));
+        JsonObject token = new JsonObject();
+        token.addProperty("access_token", accessToken);
+        token.addProperty("refresh_token", UUID.randomUUID().toString());
+        token.addProperty("token_type", "Bearer");
+        token.addProperty("expires_in", options.tokenTtlSeconds);
+        return send(exchange, 200, token);
+    }
+
+    private int publisher(HttpExchange exchange, String method, String path, Matcher api, byte[] body)
+            throws IOException, InterruptedException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Long expiry = authorization != null && authorization.startsWith("Bearer ")
+                ? tokens.get(authorization.substring(7)) : null;
+        if (expiry == null || expiry < System.currentTimeMillis()) {
+            return send(exchange, 401, error(401, "Invalid Credentials"));
+        }
+
+        sleep(sampleLatency());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (options.throttleRate > 0 && random.nextDouble() < options.throttleRate) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+            return send(exchange, 429, error(429, "Message throttled out"));
+        }
+        if (options.errorRate > 0 && random.nextDouble() < options.errorRate) {
+            return send(exchange, 500, error(500, "Injected failure"));
+        }
+
+        if (api == null) {
+            return PUBLISHER_PATH.equals(path) && "GET".equals(method)
+                    ? list(exchange) : send(exchange, 404, error(404, "Not found"));
+        }
+        StoredAPI stored = apis.get(api.group(1));
+        if (stored == null) {
+            return send(exchange, 404, error(404, "API not found : " + api.group(1)));
+        }
+        String rest = api.group(2) == null ? "" : api.group(2);
+        synchronized (stored) {
+            if (rest.isEmpty() && "GET".equals(method)) {
+                return details(exchange, stored);
+            }
+            if (rest.isEmpty() && "PUT".equals(method)) {
+                return update(exchange, stored, body);
+            }
+            if ("/revisions".equals(rest) && "GET".equals(method)) {
+                return revisions(exchange, stored);
+            }
+            if ("/revisions".equals(rest) && "POST".equals(method)) {
+                return createRevision(exchange, stored);
+            }
+            Matcher revision = REVISION_PATH.matcher(rest);
+            if (revision.matches() && "DELETE".equals(method)) {
+                return deleteRevision(exchange, stored, revision.group(1));
+            }
+            if ("/deployments".equals(rest) && "GET".equals(method)) {
+                return deployments(exchange);
+            }
+        }
+        if ("/deploy-revision".equals(rest) && "POST".equals(method)) {
+            // Gateway syncs are slow; they are not held under the API lock
+            sleep(options.deployLatencyMs);
+            synchronized (stored) {
+                return deploy(exchange, stored);
+            }
+        }
+        return send(exchange, 404, error(404, "Not found"));
+    }
+
+    private int list(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : 25;
+        int offset = parameters.containsKey("offset") ? Integer.parseInt(parameters.get("offset")) : 0;
+
+        List<StoredAPI> matching = new ArrayList<>();
+        for (String id : apiIds) {
+            StoredAPI api = apis.get(id);
+            if (matchesQuery(api, parameters.getOrDefault("query", ""))) {
+                matching.add(api);
+            }
+        }
+        JsonArray list = new JsonArray();
+        for (int i = offset; i < Math.min(matching.size(), offset + limit); i++) {
+            StoredAPI api = matching.get(i);
+            synchronized (api) {
+                list.add(summary(api));
+            }
+        }
+        JsonObject page = new JsonObject();
+        page.addProperty("count", list.size());
+        page.add("list", list);
+        JsonObject pagination = new JsonObject();
+        pagination.addProperty("offset", offset);
+        pagination.addProperty("limit", limit);
+        pagination.addProperty("total", matching.size());
+        page.add("pagination", pagination);
+        return send(exchange, 200, page);
+    }
+
+    private int details(HttpExchange exchange, StoredAPI api) throws IOException {
+        String etag = "\"" + api.id + "-" + api.lastUpdatedTime + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return 304;
+        }
+        if (api.serialized == null) {
+            api.serialized = api.definition.toString();
+        }
+        return send(exchange, 200, api.serialized);
+    }
+
+    private int update(HttpExchange exchange, StoredAPI api, byte[] body) throws IOException {
+        JsonElement definition = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+        if (!definition.isJsonObject()) {
+            return send(exchange, 400, error(400, "Invalid API definition"));
+        }
+        api.definition = definition.getAsJsonObject();
+        api.lastUpdatedTime = String.valueOf(clock.incrementAndGet());
+        api.definition.addProperty("lastUpdatedTime", api.lastUpdatedTime);
+        api.serialized = api.definition.toString();
+        return send(exchange, 200, api.serialized);
+    }
+
+    private int revisions(HttpExchange exchange, StoredAPI api) throws IOException {
+        JsonArray list = new JsonArray();
+        for (String revisionId : api.revisions) {
+            JsonObject revision = new JsonObject();
+            revision.addProperty("id", revisionId);
+            revision.addProperty("apiInfo", api.id);
+            JsonArray deploymentInfo = new JsonArray();
+            if (revisionId.equals(api.deployedRevision)) {
+                for (String environment : options.environments) {
+                    JsonObject deployment = new JsonObject();
+                    deployment.addProperty("name", environment);
+                    deployment.addProperty("status", "CREATED");
+                    deploymentInfo.add(deployment);
+                }
+            }
+            revision.add("deploymentInfo", deploymentInfo);
+            list.add(revision);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("count", list.size());
+        response.add("list", list);
+        return send(exchange, 200, response);
+    }
+
+    private int createRevision(HttpExchange exchange, StoredAPI api) throws IOException {
+        if (api.revisions.size() >= options.revisionLimit) {
+            return send(exchange, 400, error(400, "Maximum number of revisions per API has reached. "
+                    + "Need to remove stale revision to create a new Revision for API with API UUID:" + api.id));
+        }
+        String revisionId = api.id + "-r" + (++api.revisionNumber);
+        api.revisions.add(revisionId);
+        JsonObject revision = new JsonObject();
+        revision.addProperty("id", revisionId);
+        revision.addProperty("displayName", "Revision " + api.revisionNumber);
+        return send(exchange, 201, revision);
+    }
+
+    private int deleteRevision(HttpExchange exchange, StoredAPI api, String revisionId) throws IOException {
+        if (revisionId.equals(api.deployedRevision)) {
+            return send(exchange, 400, error(400, "Cannot remove the revision " + revisionId + " as it is deployed"));
+        }
+        if (!api.revisions.remove(revisionId)) {
+            return send(exchange, 404, error(404, "Revision not found : " + revisionId));
+        }
+        return send(exchange, 200, new JsonArray());
+    }
+
+    private int deployments(HttpExchange exchange) throws IOException {
+        JsonArray environments = new JsonArray();
+        for (String environment : options.environments) {
+            JsonObject deployment = new JsonObject();
+            deployment.addProperty("name", environment);
+            deployment.addProperty("vhost", "localhost");
+            deployment.addProperty("displayOnDevportal", true);
+            environments.add(deployment);
+        }
+        return send(exchange, 200, environments);
+    }
+
+    private int deploy(HttpExchange exchange, StoredAPI api) throws IOException {
+        String revisionId = parseQuery(exchange.getRequestURI().getRawQuery()).get("revisionId");
+        if (revisionId == null || !api.revisions.contains(revisionId)) {
+            return send(exchange, 404, error(404, "Revision not found : " + revisionId));
+        }
+        api.deployedRevision = revisionId;
+        return send(exchange, 201, new JsonArray());
+    }
+
+    private StoredAPI createAPI(int index) {
+        String id = String.format("%08x-0000-4000-8000-%012d", index, index);
+        // Every tenth API is not published, so status filtering has something to drop
+        StoredAPI api = new StoredAPI(id, index % 10 == 9 ? "CREATED" : "PUBLISHED", "/api" + index,
+                index % 3 == 0 ? "admin" : "publisher" + (index % 3));
+        api.lastUpdatedTime = String.valueOf(clock.incrementAndGet());
+
+        JsonObject definition = summary(api);
+        definition.addProperty("isDefaultVersion", false);
+        definition.addProperty("responseCachingEnabled", false);
+        definition.addProperty("authorizationHeader", "Authorization");
+        definition.addProperty("apiThrottlingPolicy", "Unlimited");
+        JsonArray policies = new JsonArray();
+        policies.add("Unlimited");
+        definition.add("policies", policies);
+        JsonObject endpointConfig = new JsonObject();
+        endpointConfig.addProperty("endpoint_type", "http");
+        JsonObject production = new JsonObject();
+        production.addProperty("url", "https://backend.example.com/api" + index);
+        endpointConfig.add("production_endpoints", production);
+        definition.add("endpointConfig", endpointConfig);
+        JsonObject cors = new JsonObject();
+        cors.addProperty("corsConfigurationEnabled", false);
+        definition.add("corsConfiguration", cors);
+        JsonArray operations = new JsonArray();
+        for (int i = 0; i < options.operations; i++) {
+            JsonObject operation = new JsonObject();
+            operation.addProperty("id", "");
+            operation.addProperty("target", "/resource" + i);
+            operation.addProperty("verb", VERBS[i % VERBS.length]);
+            operation.addProperty("authType", "Application & Application User");
+            operation.addProperty("throttlingPolicy", "Unlimited");
+            operation.add("scopes", new JsonArray());
+            operation.add("operationPolicies", new JsonObject());
+            operations.add(operation);
+        }
+        definition.add("operations", operations);
+        api.definition = definition;
+
+        for (int i = 0; i < options.seedRevisions; i++) {
+            api.revisions.add(id + "-r" + (++api.revisionNumber));
+        }
+        if (!api.revisions.isEmpty()) {
+            api.deployedRevision = api.revisions.get(api.revisions.size() - 1);
+        }
+        return api;
+    }
+
+    private static JsonObject summary(StoredAPI api) {
+        JsonObject summary = new JsonObject();
+        summary.addProperty("id", api.id);
+        summary.addProperty("name", "API" + api.context.substring(4));
+        summary.addProperty("description", "Stand-in API " + api.context);
+        summary.addProperty("context", api.context);
+        summary.addProperty("version", "1.0.0");
+        summary.addProperty("provider", api.provider);
+        summary.addProperty("type", "HTTP");
+        summary.addProperty("lifeCycleStatus", api.status);
+        summary.addProperty("lastUpdatedTime", api.lastUpdatedTime);
+        return summary;
+    }
+
+    private static boolean matchesQuery(StoredAPI api, String query) {
+        for (String condition : query.trim().split("\\s+")) {
+            int colon = condition.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String value = condition.substring(colon + 1);
+            switch (condition.substring(0, colon)) {
+                case "status":
+                    if (!api.status.equalsIgnoreCase(value)) {
+                        return false;
+                    }
+                    break;
+                case "context":
+                    if (!api.context.startsWith(value)) {
+                        return false;
+                    }
+                    break;
+                case "provider":
+                    if (!api.provider.equals(value)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // Tags and other fields are not modelled; they match everything
+            }
+        }
+        return true;
+    }
+
+    private double sampleLatency() {
+        if (options.latencyMs <= 0) {
+            return 0;
+        }
+        return options.latencyMs * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    private static void sleep(double millis) throws InterruptedException {
+        if (millis > 0) {
+            long nanos = (long) (millis * 1_000_000);
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private static JsonObject error(int code, String description) {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", description);
+        error.addProperty("description", description);
+        return error;
+    }
+
+    private static int send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (bytes.length > GZIP_THRESHOLD && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            // Like the APIM gateway, compress larger bodies for clients that accept it
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(bytes);
+            }
+            return status;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        return status;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+}
@@ -1,5 +1,8 @@
 package com.sample.bean;
 
+import com.google.gson.JsonArray;
+import com.google.gson.annotations.SerializedName;
+
 public class API {
     private String id;
     private String name;
@@ -9,6 +12,12 @@ public class API {
     private String provider;
     private String lifeCycleStatus;
     private String type;
+    @SerializedName(value = "lastUpdatedTime", alternate = {"updatedTime"})
+    private String lastUpdatedTime;
+    // Full API definition when it was already fetched while listing (explicit mode). Not part of the JSON mapping.
+    private transient String details;
+    // JSON Patch to apply instead of the update rules (plan apply mode). Not part of the JSON mapping.
+    private transient JsonArray patch;
 
     public API() {
     }
@@ -77,6 +86,30 @@ public class API {
         this.type = type;
     }
 
+    public String getLastUpdatedTime() {
+        return lastUpdatedTime;
+    }
+
+    public void setLastUpdatedTime(String lastUpdatedTime) {
+        this.lastUpdatedTime = lastUpdatedTime;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public void setDetails(String details) {
+        this.details = details;
+    }
+
+    public JsonArray getPatch() {
+        return patch;
+    }
+
+    public void setPatch(JsonArray patch) {
+        this.patch = patch;
+    }
+
     @Override
     public String toString() {
         return "API{" +
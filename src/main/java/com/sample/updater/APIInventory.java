@@ -0,0 +1,290 @@
+package com.sample.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sample.bean.API;
+import com.sample.utilities.Metrics;
+import com.sample.utilities.RestRequest;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the Publisher API list to the update stage while it is still being paged in.
+ *
+ * The first page is fetched on its own to learn {@code pagination.total}; the remaining offsets are then
+ * fetched in parallel. APIs are handed over through a bounded buffer, so page fetchers stop when the
+ * update stage falls behind and memory stays capped regardless of the size of the estate.
+ *
+ * When a set of API ids is given, the listing is skipped entirely and those APIs are fetched directly,
+ * in parallel, with their full definition attached so the update stage does not fetch them again.
+ */
+public class APIInventory implements Iterable<API> {
+
+    private static final Logger logger = Logger.getLogger(APIInventory.class.getName());
+    private static final API END_OF_INVENTORY = new API();
+    private static final Gson gson = new Gson();
+
+    private final RestRequest restRequest;
+    private final int limit;
+    private final int prefetchPages;
+    private final String query;
+    private List<String> explicitIds;
+    private final BlockingQueue<API> buffer;
+    private final CountDownLatch totalKnown = new CountDownLatch(1);
+    private final AtomicBoolean complete = new AtomicBoolean(true);
+    private final AtomicBoolean consumed = new AtomicBoolean(false);
+    private final AtomicInteger produced = new AtomicInteger();
+    private volatile int total = -1;
+
+    /**
+     * @param query publisher search query used to filter the listing, or null to list every API.
+     */
+    public APIInventory(RestRequest restRequest, int limit, int prefetchPages, int bufferSize,
+                        String query) {
+        this.restRequest = restRequest;
+        this.limit = limit;
+        this.prefetchPages = Math.max(1, prefetchPages);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.query = query;
+    }
+
+    /**
+     * Fetch only these APIs by id instead of listing the publisher. Must be called before {@link #start()}.
+     */
+    public APIInventory withExplicitIds(List<String> ids) {
+        this.explicitIds = new ArrayList<>(ids);
+        return this;
+    }
+
+    /**
+     * Start paging in the background. APIs become available through {@link #iterator()} as pages land.
+     */
+    public APIInventory start() {
+        Thread producer = new Thread(explicitIds != null ? this::produceExplicit : this::produce, "api-inventory");
+        producer.setDaemon(true);
+        producer.start();
+        return this;
+    }
+
+    /**
+     * Wait for the first page and return the total number of APIs reported by the publisher. Returns as soon
+     * as the first page is in or has failed.
+     *
+     * @return the total, or -1 if the first page could not be fetched; {@link #isComplete()} is then false.
+     */
+    public int awaitTotal() throws InterruptedException {
+        totalKnown.await();
+        return total;
+    }
+
+    public int getProducedCount() {
+        return produced.get();
+    }
+
+    /**
+     * @return false if any page failed to load, in which case some APIs were not handed to the update stage.
+     */
+    public boolean isComplete() {
+        return complete.get();
+    }
+
+    /**
+     * Single-use iterator that blocks until the next API is available.
+     */
+    @Override
+    public Iterator<API> iterator() {
+        if (!consumed.compareAndSet(false, true)) {
+            throw new IllegalStateException("API inventory can only be iterated once");
+        }
+        return new Iterator<API>() {
+            private API next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = buffer.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = END_OF_INVENTORY;
+                    }
+                }
+                return next != END_OF_INVENTORY;
+            }
+
+            @Override
+            public API next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                API api = next;
+                next = null;
+                return api;
+            }
+        };
+    }
+
+    private void produce() {
+        ExecutorService pageFetchers = null;
+        try {
+            JsonObject firstPage = fetchPage(0);
+            if (firstPage == null) {
+                complete.set(false);
+                return;
+            }
+
+            JsonObject pagination = firstPage.getAsJsonObject("pagination");
+            List<API> firstAPIs = parsePage(firstPage);
+            total = pagination != null ? pagination.get("total").getAsInt() : firstAPIs.size();
+            totalKnown.countDown();
+            publish(firstAPIs);
+
+            if (pagination == null || firstAPIs.isEmpty() || limit >= total) {
+                return;
+            }
+
+            // Remaining offsets are known up front, so fetch them in parallel. A fetcher blocks on the full
+            // buffer, which caps the pages held in memory at the buffer plus one page per fetcher.
+            pageFetchers = Executors.newFixedThreadPool(prefetchPages, runnable -> {
+                Thread thread = new Thread(runnable, "api-inventory-page");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int offset = limit; offset < total; offset += limit) {
+                final int pageOffset = offset;
+                pageFetchers.submit(() -> {
+                    try {
+                        JsonObject page = fetchPage(pageOffset);
+                        if (page == null) {
+                            complete.set(false);
+                            return;
+                        }
+                        publish(parsePage(page));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        complete.set(false);
+                    } catch (RuntimeException e) {
+                        // The future is never read, so report it here
+                        logger.log(Level.SEVERE, "***** Failed to read API page at offset " + pageOffset, e);
+                        complete.set(false);
+                    }
+                });
+            }
+            pageFetchers.shutdown();
+            pageFetchers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete.set(false);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error fetching APIs", e);
+            complete.set(false);
+        } finally {
+            if (pageFetchers != null) {
+                pageFetchers.shutdownNow();
+            }
+            totalKnown.countDown();
+            if (!complete.get()) {
+                logger.log(Level.SEVERE, "***** API inventory is incomplete. Some pages could not be fetched.");
+            }
+            try {
+                buffer.put(END_OF_INVENTORY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void produceExplicit() {
+        total = explicitIds.size();
+        totalKnown.countDown();
+        ExecutorService detailFetchers = Executors.newFixedThreadPool(prefetchPages, runnable -> {
+            Thread thread = new Thread(runnable, "api-inventory-details");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (String apiId : explicitIds) {
+                detailFetchers.submit(() -> {
+                    try {
+                        String details = restRequest.getAPIDetails(apiId);
+                        if (details == null) {
+                            logger.log(Level.SEVERE, "***** Failed to fetch explicitly listed API with ID : " + apiId);
+                            complete.set(false);
+                            return;
+                        }
+                        API api = gson.fromJson(details, API.class);
+                        api.setDetails(details);
+                        buffer.put(api);
+                        produced.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        complete.set(false);
+                    } catch (RuntimeException e) {
+                        // The future is never read, so report it here
+                        logger.log(Level.SEVERE, "***** Failed to read explicitly listed API with ID : " + apiId, e);
+                        complete.set(false);
+                    }
+                });
+            }
+            detailFetchers.shutdown();
+            detailFetchers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete.set(false);
+        } finally {
+            detailFetchers.shutdownNow();
+            if (!complete.get()) {
+                logger.log(Level.SEVERE, "***** API inventory is incomplete. Some APIs could not be fetched.");
+            }
+            try {
+                buffer.put(END_OF_INVENTORY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private JsonObject fetchPage(int offset) {
+        long start = System.nanoTime();
+        JsonObject page = restRequest.getAPIs(limit, offset, query);
+        if (page == null) {
+            logger.log(Level.SEVERE, "***** Failed to fetch API page at offset " + offset);
+            return null;
+        }
+        Metrics.recordPhase("list", start);
+        return page;
+    }
+
+    static List<API> parsePage(JsonObject page) {
+        List<API> apis = new ArrayList<>();
+        JsonArray apiList = page.getAsJsonArray("list");
+        if (apiList == null) {
+            return apis;
+        }
+        for (int i = 0; i < apiList.size(); i++) {
+            apis.add(gson.fromJson(apiList.get(i), API.class));
+        }
+        return apis;
+    }
+
+    private void publish(List<API> apis) throws InterruptedException {
+        for (API api : apis) {
+            buffer.put(api);
+            produced.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.sample.updater;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only record of how far each API got, so an interrupted run can be resumed with {@code --resume}.
+ *
+ * Each line is {@code <time> <apiId> <state> [revisionId]}, tab separated. Records are written through a group
+ * commit: concurrent workers append to a shared buffer, and a single syncer thread flushes and fsyncs
+ * whatever has accumulated, then completes the futures of every record in that batch. A record is
+ * acknowledged only once it is on disk, at the cost of one fsync per batch instead of one per record.
+ */
+public class CheckpointJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(CheckpointJournal.class.getName());
+    private static final String RULES_HEADER = "#rules";
+
+    public enum State {
+        FETCHED,
+        UNCHANGED,
+        UPDATED,
+        REVISION_CREATED,
+        DEPLOYED,
+        FAILED
+    }
+
+    /**
+     * Last known state of an API in the journal being resumed.
+     */
+    public static class Entry {
+        private final State state;
+        private final String revisionId;
+
+        Entry(State state, String revisionId) {
+            this.state = state;
+            this.revisionId = revisionId;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public String getRevisionId() {
+            return revisionId;
+        }
+    }
+
+    private final FileChannel channel;
+    private final Writer writer;
+    private final Map<String, Entry> previous;
+    private final Object lock = new Object();
+    private List<CompletableFuture<Void>> pending = new ArrayList<>();
+    private boolean closed;
+    private volatile boolean failed;
+    private final Thread syncer;
+
+    /**
+     * @param tornTail the journal being appended to ends in a partly written line.
+     */
+    private CheckpointJournal(Path path, Map<String, Entry> previous, boolean append, boolean tornTail,
+                              String rulesFingerprint) throws IOException {
+        this.previous = previous;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        if (tornTail) {
+            // Keep the header off the line the crash cut short
+            writer.write('\n');
+        }
+        writer.write(RULES_HEADER + "\t" + rulesFingerprint + "\n");
+        this.syncer = new Thread(this::syncLoop, "journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Start a new journal, discarding any previous one.
+     */
+    public static CheckpointJournal create(Path path, String rulesFingerprint) throws IOException {
+        return new CheckpointJournal(path, new HashMap<>(), false, false, rulesFingerprint);
+    }
+
+    /**
+     * Load the state recorded by an interrupted run and keep appending to the same journal.
+     *
+     * Every record is judged by the rules in effect when it was written (the {@code #rules} header above it).
+     * APIs found unchanged or deployed under other rules are evaluated again. APIs that were already written
+     * to but not deployed are still finished from where they stopped.
+     */
+    public static CheckpointJournal resume(Path path, String rulesFingerprint) throws IOException {
+        if (!Files.exists(path)) {
+            logger.log(Level.WARNING, "No checkpoint journal at " + path + ". Starting from the beginning.");
+            return create(path, rulesFingerprint);
+        }
+
+        Map<String, Entry> previous = new HashMap<>();
+        boolean tornTail = !endsWithNewline(path);
+        boolean otherRules = false;
+        boolean rulesChanged = false;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            for (String next; line != null; line = next) {
+                next = reader.readLine();
+                if (next == null && tornTail) {
+                    // Last line of a crashed run, only partly written
+                    break;
+                }
+                String[] fields = line.split("\t");
+                if (fields[0].equals(RULES_HEADER)) {
+                    otherRules = fields.length < 2 || !fields[1].equals(rulesFingerprint);
+                    rulesChanged |= otherRules;
+                    continue;
+                }
+                if (fields.length < 3) {
+                    continue;
+                }
+                State state;
+                try {
+                    state = State.valueOf(fields[2]);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (state == State.REVISION_CREATED && fields.length < 4) {
+                    // Cut short before the revision id by an earlier crash
+                    continue;
+                }
+                if (otherRules && (state == State.UNCHANGED || state == State.DEPLOYED)) {
+                    // Finished under other rules, so the current ones have not been applied yet
+                    previous.remove(fields[1]);
+                    continue;
+                }
+                Entry last = previous.get(fields[1]);
+                // A failure after the API was written must not lose the progress, or the resumed run would find
+                // nothing left to change and never deploy it.
+                if (state == State.FAILED && last != null
+                        && (last.state == State.UPDATED || last.state == State.REVISION_CREATED)) {
+                    continue;
+                }
+                previous.put(fields[1], new Entry(state, fields.length > 3 ? fields[3] : null));
+            }
+        }
+        if (rulesChanged) {
+            logger.log(Level.WARNING, "Update rules changed during the journaled runs. APIs completed under other rules will be evaluated again.");
+        }
+        logger.log(Level.INFO, "***** Resuming from checkpoint journal " + path + " with " + previous.size() + " APIs recorded");
+        return new CheckpointJournal(path, previous, true, tornTail, rulesFingerprint);
+    }
+
+    static boolean endsWithNewline(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            if (channel.size() == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    /**
+     * @return the state the API reached in the resumed run, or null if it was not recorded.
+     */
+    public Entry getPrevious(String apiId) {
+        return previous.get(apiId);
+    }
+
+    public boolean isCompleted(String apiId) {
+        Entry entry = previous.get(apiId);
+        return entry != null && (entry.state == State.DEPLOYED || entry.state == State.UNCHANGED);
+    }
+
+    /**
+     * Append a record. The future completes once the record has been synced to disk.
+     */
+    public CompletableFuture<Void> append(String apiId, State state, String revisionId) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        StringBuilder line = new StringBuilder()
+                .append(System.currentTimeMillis()).append('\t').append(apiId).append('\t').append(state);
+        if (revisionId != null) {
+            line.append('\t').append(revisionId);
+        }
+        line.append('\n');
+        synchronized (lock) {
+            if (closed || failed) {
+                durable.complete(null);
+                return durable;
+            }
+            try {
+                writer.write(line.toString());
+            } catch (IOException e) {
+                fail(e);
+                durable.complete(null);
+                return durable;
+            }
+            pending.add(durable);
+            lock.notifyAll();
+        }
+        return durable;
+    }
+
+    /**
+     * Append a record and wait until it is on disk.
+     */
+    public void record(String apiId, State state, String revisionId) {
+        append(apiId, state, revisionId).join();
+    }
+
+    public void record(String apiId, State state) {
+        record(apiId, state, null);
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.flush();
+            channel.force(false);
+            writer.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing checkpoint journal", e);
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            List<CompletableFuture<Void>> batch;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            // Records appended while this fsync runs go into the next batch.
+            try {
+                if (!failed) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    fail(e);
+                }
+            }
+            for (CompletableFuture<Void> durable : batch) {
+                durable.complete(null);
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        if (!failed) {
+            failed = true;
+            logger.log(Level.SEVERE, "***** Failed to write checkpoint journal. An interrupted run may repeat work.", e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.sample.bean.API;
+import com.sample.utilities.ConfigLoader;
+import com.sample.utilities.Metrics;
+import com.sample.utilities.RestRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gateway deployments, run as a separate stage after all APIs have been updated and revised.
+ *
+ * Each revision is deployed to each of its environments with a separate request, and every environment has
+ * its own worker pool (DEPLOY.CONCURRENCY.<ENV>, default DEPLOY.CONCURRENCY), so a slow gateway does not hold
+ * back the others. With DEPLOY.CANARY.PERCENT set, that share of the APIs is deployed first; the rest follow
+ * only if every canary deployment succeeded. APIs that are not deployed keep their revision in the journal
+ * and are deployed by {@code --resume}; in watch mode they are deployed by the next poll. Their definitions
+ * were already updated, so a plain re-run finds nothing to change, and a canary wave is refused without the
+ * journal.
+ */
+public class DeploymentStage {
+
+    private static final Logger logger = Logger.getLogger(DeploymentStage.class.getName());
+
+    private final ConfigLoader configLoader;
+    private final RestRequest restRequest;
+    private final CheckpointJournal journal;
+    private final FingerprintIndex fingerprintIndex;
+    private final UpdateSummary summary;
+    private final ResultStream results;
+    private final int defaultConcurrency;
+    private final double canaryPercent;
+    private final ConcurrentLinkedQueue<Deployment> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Revision of one API waiting to be deployed to one or more environments.
+     */
+    private static class Deployment {
+        final API api;
+        final String revisionId;
+        final JsonArray environments;
+        final AtomicInteger remaining;
+        volatile boolean failed;
+
+        Deployment(API api, String revisionId, JsonArray environments) {
+            this.api = api;
+            this.revisionId = revisionId;
+            this.environments = environments;
+            this.remaining = new AtomicInteger(environments.size());
+        }
+    }
+
+    /**
+     * @param journal          journal to record deployed and failed APIs in, or null.
+     * @param fingerprintIndex index to record deployed APIs in, or null.
+     * @param results          stream to write the final outcome of each API to, or null.
+     */
+    public DeploymentStage(ConfigLoader configLoader, RestRequest restRequest, CheckpointJournal journal,
+                           FingerprintIndex fingerprintIndex, UpdateSummary summary, ResultStream results) {
+        this.configLoader = configLoader;
+        this.restRequest = restRequest;
+        this.journal = journal;
+        this.fingerprintIndex = fingerprintIndex;
+        this.summary = summary;
+        this.results = results;
+        this.defaultConcurrency = Math.max(1, configLoader.getIntProperty("DEPLOY.CONCURRENCY", 2));
+        this.canaryPercent = Math.min(100, Math.max(0, configLoader.getDoubleProperty("DEPLOY.CANARY.PERCENT", 0)));
+    }
+
+    public double getCanaryPercent() {
+        return canaryPercent;
+    }
+
+    /**
+     * Queue a revision for deployment. Safe to call from any worker.
+     */
+    public void submit(API api, String revisionId, String deploymentPayload) {
+        queue.add(new Deployment(api, revisionId, JsonParser.parseString(deploymentPayload).getAsJsonArray()));
+    }
+
+    /**
+     * Deploy everything queued so far, canary wave first.
+     */
+    public void run() throws InterruptedException {
+        List<Deployment> deployments = new ArrayList<>(queue);
+        queue.clear();
+        if (deployments.isEmpty()) {
+            return;
+        }
+
+        int canaryCount = (int) Math.ceil(deployments.size() * canaryPercent / 100);
+        logger.log(Level.INFO, "***** Starting Deployment Stage for " + deployments.size() + " APIs"
+                + (canaryCount > 0 ? " (" + canaryCount + " in the canary wave)" : "") + " *****");
+        if (canaryCount > 0 && canaryCount < deployments.size()) {
+            List<Deployment> canary = deployments.subList(0, canaryCount);
+            int failed = runWave(canary, "canary");
+            if (failed > 0) {
+                logger.log(Level.SEVERE, "***** Canary wave failed for " + failed + " of " + canaryCount + " APIs. "
+                        + (deployments.size() - canaryCount) + " APIs were not deployed. Fix the cause and run again with --resume"
+                        + " (watch mode retries them at the next poll).");
+                for (Deployment deployment : deployments.subList(canaryCount, deployments.size())) {
+                    summary.recordPendingRevision(deployment.api.getId(), deployment.revisionId);
+                }
+                return;
+            }
+            runWave(deployments.subList(canaryCount, deployments.size()), "rollout");
+        } else {
+            runWave(deployments, "rollout");
+        }
+    }
+
+    /**
+     * Deploy a wave, each environment on its own pool.
+     *
+     * @return the number of APIs that failed to deploy.
+     */
+    private int runWave(List<Deployment> wave, String name) throws InterruptedException {
+        Map<String, List<Runnable>> byEnvironment = new LinkedHashMap<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (Deployment deployment : wave) {
+            if (deployment.environments.size() == 0) {
+                // Nothing is deployed yet, let the publisher pick the default gateway
+                byEnvironment.computeIfAbsent("", key -> new ArrayList<>())
+                        .add(() -> deploy(deployment, new JsonArray(), failed));
+                deployment.remaining.set(1);
+                continue;
+            }
+            for (JsonElement environment : deployment.environments) {
+                JsonArray payload = new JsonArray();
+                payload.add(environment);
+                byEnvironment.computeIfAbsent(environmentName(environment), key -> new ArrayList<>())
+                        .add(() -> deploy(deployment, payload, failed));
+            }
+        }
+
+        List<ExecutorService> pools = new ArrayList<>();
+        for (Map.Entry<String, List<Runnable>> entry : byEnvironment.entrySet()) {
+            int concurrency = getConcurrency(entry.getKey());
+            logger.log(Level.INFO, "***** Deploying " + entry.getValue().size() + " revisions to environment '"
+                    + entry.getKey() + "' (" + name + " wave, concurrency " + concurrency + ")");
+            ExecutorService pool = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "deploy-" + entry.getKey());
+                thread.setDaemon(true);
+                return thread;
+            });
+            entry.getValue().forEach(pool::submit);
+            pool.shutdown();
+            pools.add(pool);
+        }
+        for (ExecutorService pool : pools) {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.log(Level.INFO, "***** Waiting for " + name + " deployments");
+            }
+        }
+        logger.log(Level.INFO, "***** Completed " + name + " wave : " + (wave.size() - failed.get()) + " of "
+                + wave.size() + " APIs deployed");
+        return failed.get();
+    }
+
+    private void deploy(Deployment deployment, JsonArray payload, AtomicInteger failedAPIs) {
+        boolean deployed;
+        // Each request deploys to one environment, so the pools of different environments need not wait for
+        // each other on the same API
+        long start = System.nanoTime();
+        try {
+            deployed = restRequest.deployRevision(deployment.api.getId(), deployment.revisionId, payload.toString());
+            Metrics.recordPhase("deploy", start);
+            if (results != null) {
+                results.recordPhase(deployment.api, "deploy", start);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error deploying revision " + deployment.revisionId, e);
+            deployed = false;
+        }
+        if (!deployed) {
+            deployment.failed = true;
+        }
+        if (deployment.remaining.decrementAndGet() > 0) {
+            return;
+        }
+
+        UpdateStatus status;
+        if (deployment.failed) {
+            logger.log(Level.SEVERE, "***** Deployment failed for API : " + deployment.api.getId());
+            failedAPIs.incrementAndGet();
+            status = UpdateStatus.FAILED;
+        } else {
+            logger.log(Level.INFO, () -> "***** Completed Updating API : " + deployment.api.getId());
+            status = UpdateStatus.UPDATED;
+        }
+        if (journal != null) {
+            journal.record(deployment.api.getId(),
+                    deployment.failed ? CheckpointJournal.State.FAILED : CheckpointJournal.State.DEPLOYED);
+        }
+        if (fingerprintIndex != null) {
+            if (deployment.failed) {
+                fingerprintIndex.remove(deployment.api.getId());
+            } else {
+                fingerprintIndex.record(deployment.api);
+            }
+        }
+        summary.resolve(deployment.api, UpdateStatus.DEPLOY_PENDING, status);
+        if (deployment.failed) {
+            summary.recordPendingRevision(deployment.api.getId(), deployment.revisionId);
+        }
+        if (results != null) {
+            results.complete(deployment.api, status);
+        }
+    }
+
+    private int getConcurrency(String environment) {
+        String key = "DEPLOY.CONCURRENCY." + environment.toUpperCase();
+        return environment.isEmpty() || !configLoader.hasProperty(key)
+                ? defaultConcurrency : Math.max(1, configLoader.getIntProperty(key, defaultConcurrency));
+    }
+
+    private static String environmentName(JsonElement environment) {
+        JsonElement name = environment.isJsonObject() ? environment.getAsJsonObject().get("name") : null;
+        return name != null && !name.isJsonNull() ? name.getAsString() : "";
+    }
+}
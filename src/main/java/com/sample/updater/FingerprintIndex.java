@@ -0,0 +1,171 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers, per API, the {@code lastUpdatedTime} it had when a run last found it unchanged or finished updating
+ * it, together with the fingerprint of the rules that run applied. A later run with the same rules skips these
+ * APIs before their definition is fetched, unless they were modified in the meantime.
+ *
+ * Each line of the file is {@code <apiId> <lastUpdatedTime> <rulesFingerprint>}, tab separated, or
+ * {@code <apiId> - -} for an API that was removed. Changes are appended as they are recorded, so an interrupted
+ * run keeps what it learned; the last line for an API wins. Closing the index rewrites the file with one line per API.
+ */
+public class FingerprintIndex implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(FingerprintIndex.class.getName());
+    private static final String REMOVED = "-";
+
+    private final Path path;
+    private final String rulesFingerprint;
+    private final Map<String, Entry> entries;
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final Writer appender;
+    private boolean failed;
+
+    private static class Entry {
+        final String lastUpdatedTime;
+        final String rulesFingerprint;
+
+        Entry(String lastUpdatedTime, String rulesFingerprint) {
+            this.lastUpdatedTime = lastUpdatedTime;
+            this.rulesFingerprint = rulesFingerprint;
+        }
+    }
+
+    private FingerprintIndex(Path path, String rulesFingerprint, Map<String, Entry> entries, boolean tornTail)
+            throws IOException {
+        this.path = path;
+        this.rulesFingerprint = rulesFingerprint;
+        this.entries = entries;
+        this.appender = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        if (tornTail) {
+            // Keep the next record off the line an interrupted run cut short
+            appender.write('\n');
+        }
+    }
+
+    /**
+     * Load the index, or start an empty one if the file does not exist yet.
+     */
+    public static FingerprintIndex load(Path path, String rulesFingerprint) throws IOException {
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        boolean tornTail = false;
+        if (Files.exists(path)) {
+            tornTail = !CheckpointJournal.endsWithNewline(path);
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // A cut short line has fewer fields, or a fingerprint that matches no rules
+                    String[] fields = line.split("\t");
+                    if (fields.length != 3) {
+                        continue;
+                    }
+                    if (fields[1].equals(REMOVED)) {
+                        entries.remove(fields[0]);
+                    } else {
+                        entries.put(fields[0], new Entry(fields[1], fields[2]));
+                    }
+                }
+            }
+        }
+        long current = entries.values().stream().filter(entry -> entry.rulesFingerprint.equals(rulesFingerprint)).count();
+        logger.log(Level.INFO, "***** Fingerprint index " + path + " : " + current + " of " + entries.size()
+                + " APIs recorded with the current rules");
+        return new FingerprintIndex(path, rulesFingerprint, entries, tornTail);
+    }
+
+    /**
+     * @return true if the current rules already left the API, as listed, with nothing to change.
+     */
+    public boolean isUnchanged(API api) {
+        Entry entry = entries.get(api.getId());
+        boolean unchanged = entry != null && api.getLastUpdatedTime() != null
+                && entry.lastUpdatedTime.equals(api.getLastUpdatedTime())
+                && entry.rulesFingerprint.equals(rulesFingerprint);
+        if (unchanged) {
+            skipped.incrementAndGet();
+        }
+        return unchanged;
+    }
+
+    /**
+     * Record that the current rules have nothing left to change in the API as of its {@code lastUpdatedTime}.
+     */
+    public synchronized void record(API api) {
+        if (api.getLastUpdatedTime() == null) {
+            remove(api.getId());
+        } else {
+            entries.put(api.getId(), new Entry(api.getLastUpdatedTime(), rulesFingerprint));
+            append(api.getId(), api.getLastUpdatedTime(), rulesFingerprint);
+        }
+    }
+
+    public synchronized void remove(String apiId) {
+        if (entries.remove(apiId) != null) {
+            append(apiId, REMOVED, REMOVED);
+        }
+    }
+
+    /**
+     * Write one record through to the file. Runs under the index lock, so the file sees changes in map order.
+     */
+    private void append(String apiId, String lastUpdatedTime, String fingerprint) {
+        if (failed) {
+            return;
+        }
+        try {
+            appender.write(apiId + "\t" + lastUpdatedTime + "\t" + fingerprint + "\n");
+            appender.flush();
+        } catch (IOException e) {
+            // The index is still saved in full on close
+            failed = true;
+            logger.log(Level.WARNING, "Failed to append to fingerprint index " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            appender.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing fingerprint index " + path, e);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().lastUpdatedTime + "\t"
+                            + entry.getValue().rulesFingerprint + "\n");
+                }
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save fingerprint index " + path, e);
+        }
+        logger.log(Level.INFO, "***** Fingerprint index : " + skipped.get() + " APIs skipped as unchanged, "
+                + entries.size() + " APIs recorded");
+    }
+}
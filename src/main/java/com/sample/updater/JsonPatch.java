@@ -0,0 +1,118 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The subset of JSON Patch (RFC 6902) used by update plans: {@code test} and {@code replace}.
+ *
+ * Every planned replacement is preceded by a {@code test} of the value seen while planning, so a plan is only
+ * applied to an API that has not changed since.
+ */
+public final class JsonPatch {
+
+    private JsonPatch() {
+    }
+
+    /**
+     * Thrown when a patch does not apply, e.g. because the API was changed after the plan was made.
+     */
+    public static class PatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public PatchException(String message) {
+            super(message);
+        }
+    }
+
+    public static JsonObject test(String pointer, JsonElement value) {
+        return operation("test", pointer, value);
+    }
+
+    public static JsonObject replace(String pointer, JsonElement value) {
+        return operation("replace", pointer, value);
+    }
+
+    /**
+     * Apply a patch to a payload.
+     *
+     * @return the patched JSON.
+     * @throws PatchException if a {@code test} fails or a path does not exist.
+     */
+    public static String apply(String document, JsonArray patch) throws PatchException {
+        JsonObject root = JsonParser.parseString(document).getAsJsonObject();
+        for (JsonElement element : patch) {
+            JsonObject operation = element.getAsJsonObject();
+            String op = operation.get("op").getAsString();
+            String pointer = operation.get("path").getAsString();
+            JsonElement value = operation.get("value");
+
+            if (pointer.isEmpty()) {
+                throw new PatchException("Patching the whole document is not supported");
+            }
+            int split = pointer.lastIndexOf('/');
+            JsonElement parent = resolve(root, pointer.substring(0, split));
+            String last = unescape(pointer.substring(split + 1));
+            JsonElement current = get(parent, last, pointer);
+
+            if ("test".equals(op)) {
+                if (!current.equals(value)) {
+                    throw new PatchException("Value at " + pointer + " is " + current + ", expected " + value);
+                }
+            } else if ("replace".equals(op)) {
+                if (parent.isJsonArray()) {
+                    parent.getAsJsonArray().set(Integer.parseInt(last), value.deepCopy());
+                } else {
+                    parent.getAsJsonObject().add(last, value.deepCopy());
+                }
+            } else {
+                throw new PatchException("Unsupported patch operation " + op);
+            }
+        }
+        return root.toString();
+    }
+
+    static String escape(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(String segment) {
+        return segment.replace("~1", "/").replace("~0", "~");
+    }
+
+    private static JsonElement resolve(JsonElement root, String pointer) throws PatchException {
+        JsonElement current = root;
+        if (pointer.isEmpty()) {
+            return current;
+        }
+        for (String segment : pointer.substring(1).split("/", -1)) {
+            current = get(current, unescape(segment), pointer);
+        }
+        return current;
+    }
+
+    private static JsonElement get(JsonElement container, String segment, String pointer) throws PatchException {
+        JsonElement child = null;
+        if (container.isJsonObject()) {
+            child = container.getAsJsonObject().get(segment);
+        } else if (container.isJsonArray() && segment.matches("\\d+")) {
+            JsonArray array = container.getAsJsonArray();
+            int index = Integer.parseInt(segment);
+            child = index < array.size() ? array.get(index) : null;
+        }
+        if (child == null) {
+            throw new PatchException("Path " + pointer + " does not exist");
+        }
+        return child;
+    }
+
+    private static JsonObject operation(String op, String pointer, JsonElement value) {
+        JsonObject operation = new JsonObject();
+        operation.addProperty("op", op);
+        operation.addProperty("path", pointer);
+        operation.add("value", value);
+        return operation;
+    }
+}
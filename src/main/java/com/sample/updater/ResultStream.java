@@ -0,0 +1,226 @@
+package com.sample.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sample.bean.API;
+import com.sample.utilities.ConfigLoader;
+import com.sample.utilities.Metrics;
+import com.sample.utilities.RestRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Machine readable outcome of every API, one JSON object per line (NDJSON) in RESULTS.FILE.
+ *
+ * A line has the API id, name, context and version, the final status, the time spent in each phase, the
+ * values each rule replaced and the status code of every Publisher request made for the API, e.g.
+ * <pre>
+ * {"time":"...","id":"...","name":"Pizza","context":"/pizza","version":"1.0.0","status":"UPDATED","elapsedMs":412.5,
+ *  "phasesMs":{"fetch":80.1,"transform":1.2,"update":150.3,"revision":90.4,"deploy":88.0},"ruleHits":{"RULE1":3},
+ *  "requests":[{"endpoint":"GET /apis/{id}","status":200,"ms":79.8},...]}
+ * </pre>
+ * An API whose deployment is left to the deployment stage gets a DEPLOY_PENDING line, then a second line with
+ * its final status once deployed; the last line of an API wins.
+ *
+ * Lines are buffered and written at most once a second, so the workers do not wait on the disk.
+ */
+public class ResultStream implements Closeable, RestRequest.ResponseListener {
+
+    private static final Logger logger = Logger.getLogger(ResultStream.class.getName());
+    private static final Gson gson = new Gson();
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path path;
+    private final Writer writer;
+    private final String target;
+    private final List<UpdateRule> rules;
+    private final Map<String, Result> open = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private long lastFlush = System.nanoTime();
+    private boolean failed;
+
+    /**
+     * What is known about an API while it is processed.
+     */
+    private static final class Result {
+        final long start = System.nanoTime();
+        final Map<String, Double> phases = new LinkedHashMap<>();
+        final JsonArray requests = new JsonArray();
+        int[] ruleHits;
+    }
+
+    private ResultStream(Path path, boolean append, String target, List<UpdateRule> rules) throws IOException {
+        this.path = path;
+        this.target = target;
+        this.rules = rules;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @param append keep the lines of a previous run, e.g. when resuming it.
+     * @return the stream configured in RESULTS.FILE, or null if none is configured.
+     */
+    public static ResultStream open(ConfigLoader configLoader, String target, List<UpdateRule> rules, boolean append)
+            throws IOException {
+        String file = configLoader.hasProperty("RESULTS.FILE") ? configLoader.getProperty("RESULTS.FILE") : "";
+        if (file.isEmpty()) {
+            return null;
+        }
+        return new ResultStream(Paths.get(file), append, target, rules);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Start collecting the requests and phases of an API.
+     */
+    public void start(API api) {
+        open.putIfAbsent(api.getId(), new Result());
+    }
+
+    public void recordPhase(API api, String phase, long startNanos) {
+        Result result = open.get(api.getId());
+        if (result != null) {
+            synchronized (result) {
+                result.phases.merge(phase, millis(System.nanoTime() - startNanos), Double::sum);
+            }
+        }
+    }
+
+    /**
+     * @param hits values each rule replaced, indexed by {@link UpdateRule#getIndex()}.
+     */
+    public void recordRuleHits(API api, int[] hits) {
+        Result result = open.get(api.getId());
+        if (result != null) {
+            synchronized (result) {
+                result.ruleHits = hits.clone();
+            }
+        }
+    }
+
+    /**
+     * Called by the REST clients for every response. Requests that are not about one API, such as listing, are ignored.
+     */
+    @Override
+    public void onResponse(HttpUriRequest request, int statusCode, long nanos) {
+        String apiId = apiId(request);
+        Result result = apiId != null ? open.get(apiId) : null;
+        if (result == null) {
+            return;
+        }
+        JsonObject entry = new JsonObject();
+        entry.addProperty("endpoint", Metrics.endpoint(request));
+        entry.addProperty("status", statusCode);
+        entry.addProperty("ms", millis(nanos));
+        synchronized (result) {
+            result.requests.add(entry);
+        }
+    }
+
+    /**
+     * Write the line of an API. Unless it still waits for the deployment stage, nothing more is recorded for it.
+     */
+    public void complete(API api, UpdateStatus status) {
+        Result result = status == UpdateStatus.DEPLOY_PENDING ? open.get(api.getId()) : open.remove(api.getId());
+        JsonObject line = new JsonObject();
+        line.addProperty("time", Instant.now().toString());
+        if (target != null) {
+            line.addProperty("target", target);
+        }
+        line.addProperty("id", api.getId());
+        line.addProperty("name", api.getName());
+        line.addProperty("context", api.getContext());
+        line.addProperty("version", api.getVersion());
+        line.addProperty("status", status.name());
+        if (result != null) {
+            synchronized (result) {
+                line.addProperty("elapsedMs", millis(System.nanoTime() - result.start));
+                JsonObject phases = new JsonObject();
+                result.phases.forEach(phases::addProperty);
+                line.add("phasesMs", phases);
+                if (result.ruleHits != null) {
+                    JsonObject hits = new JsonObject();
+                    for (UpdateRule rule : rules) {
+                        if (result.ruleHits[rule.getIndex()] > 0) {
+                            hits.addProperty(rule.getName(), result.ruleHits[rule.getIndex()]);
+                        }
+                    }
+                    line.add("ruleHits", hits);
+                }
+                line.add("requests", result.requests.deepCopy());
+            }
+        }
+        write(gson.toJson(line));
+    }
+
+    private void write(String line) {
+        synchronized (lock) {
+            if (failed) {
+                return;
+            }
+            try {
+                writer.write(line);
+                writer.write('\n');
+                long now = System.nanoTime();
+                if (now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                    writer.flush();
+                    lastFlush = now;
+                }
+            } catch (IOException e) {
+                failed = true;
+                logger.log(Level.WARNING, "Failed to write results to " + path + ". Continuing without them.", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close results file " + path, e);
+            }
+            failed = true;
+        }
+    }
+
+    /**
+     * @return the id in a Publisher URL such as /apis/{id}/revisions, or null if the request is not about one API.
+     */
+    static String apiId(HttpUriRequest request) {
+        String[] segments = request.getURI().getRawPath().split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if ("apis".equals(segments[i]) && !segments[i + 1].isEmpty()) {
+                return segments[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e5) / 10.0;
+    }
+}
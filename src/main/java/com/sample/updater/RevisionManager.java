@@ -0,0 +1,169 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sample.utilities.AsyncRestRequest;
+import com.sample.utilities.ConfigLoader;
+import com.sample.utilities.RestRequest;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Revision housekeeping for updated APIs.
+ *
+ * The revisions and deployments of an API are fetched once, concurrently, and the rest is decided locally:
+ * which old revisions to delete so the new one fits within REVISION.RETENTION.LIMIT, and which environments
+ * the new revision is deployed to. Revisions that are currently deployed are never deleted.
+ */
+public class RevisionManager implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(RevisionManager.class.getName());
+
+    private final RestRequest restRequest;
+    private final AsyncRestRequest asyncRestRequest;
+    private final int retentionLimit;
+    private final ExecutorService lookups;
+
+    /**
+     * What has to happen to the revisions of one API before a new revision is created and deployed.
+     */
+    public static class Plan {
+        private final int revisionCount;
+        private final List<String> deletions;
+        private final String deploymentPayload;
+
+        Plan(int revisionCount, List<String> deletions, String deploymentPayload) {
+            this.revisionCount = revisionCount;
+            this.deletions = deletions;
+            this.deploymentPayload = deploymentPayload;
+        }
+
+        /**
+         * @return the number of existing revisions, or -1 if they could not be listed.
+         */
+        public int getRevisionCount() {
+            return revisionCount;
+        }
+
+        /**
+         * @return ids of the revisions to delete, oldest first.
+         */
+        public List<String> getDeletions() {
+            return deletions;
+        }
+
+        public String getDeploymentPayload() {
+            return deploymentPayload;
+        }
+    }
+
+    /**
+     * @param asyncRestRequest client for {@link #planAsync} and {@link #pruneAsync}, or null in blocking mode.
+     */
+    public RevisionManager(ConfigLoader configLoader, RestRequest restRequest, AsyncRestRequest asyncRestRequest) {
+        this.restRequest = restRequest;
+        this.asyncRestRequest = asyncRestRequest;
+        this.retentionLimit = Math.max(1, configLoader.getIntProperty("REVISION.RETENTION.LIMIT", 5));
+        this.lookups = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "revision-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getRetentionLimit() {
+        return retentionLimit;
+    }
+
+    /**
+     * Fetch the revisions and deployments of an API and work out the housekeeping for a new revision.
+     */
+    public Plan plan(String apiId) {
+        // Deployments are fetched on another thread while this one lists the revisions
+        CompletableFuture<JsonArray> deployments = CompletableFuture.supplyAsync(() -> restRequest.getDeployments(apiId), lookups);
+        JsonArray revisions = restRequest.getRevisions(apiId);
+        return createPlan(apiId, revisions, deployments.join());
+    }
+
+    public CompletableFuture<Plan> planAsync(String apiId) {
+        return asyncRestRequest.getRevisions(apiId).thenCombine(asyncRestRequest.getDeployments(apiId),
+                (revisions, deployments) -> createPlan(apiId, revisions, deployments));
+    }
+
+    /**
+     * Fetch only the deployment environments, for a revision that already exists.
+     */
+    public String getDeploymentPayload(String apiId) {
+        return toPayload(restRequest.getDeployments(apiId));
+    }
+
+    public CompletableFuture<String> getDeploymentPayloadAsync(String apiId) {
+        return asyncRestRequest.getDeployments(apiId).thenApply(RevisionManager::toPayload);
+    }
+
+    /**
+     * Delete the revisions the plan makes room with.
+     */
+    public void prune(String apiId, Plan plan) {
+        for (String revisionId : plan.getDeletions()) {
+            restRequest.deleteRevision(apiId, revisionId);
+        }
+    }
+
+    public CompletableFuture<Void> pruneAsync(String apiId, Plan plan) {
+        CompletableFuture<Void> pruned = CompletableFuture.completedFuture(null);
+        for (String revisionId : plan.getDeletions()) {
+            pruned = pruned.thenCompose(ignored -> asyncRestRequest.deleteRevision(apiId, revisionId));
+        }
+        return pruned;
+    }
+
+    @Override
+    public void close() {
+        lookups.shutdown();
+    }
+
+    private Plan createPlan(String apiId, JsonArray revisions, JsonArray deployments) {
+        String deploymentPayload = toPayload(deployments);
+        if (revisions == null) {
+            logger.log(Level.WARNING, "Could not list revisions of API " + apiId + ". Creating the new revision without pruning.");
+            return new Plan(-1, Collections.emptyList(), deploymentPayload);
+        }
+
+        // Keep retentionLimit - 1 revisions so the new one fits
+        int excess = revisions.size() - (retentionLimit - 1);
+        List<String> deletions = new ArrayList<>();
+        for (JsonElement element : revisions) {
+            if (deletions.size() >= excess) {
+                break;
+            }
+            JsonObject revision = element.getAsJsonObject();
+            if (!isDeployed(revision)) {
+                deletions.add(revision.get("id").getAsString());
+            }
+        }
+        if (excess > 0 && deletions.size() < excess) {
+            logger.log(Level.WARNING, "Only " + deletions.size() + " of " + excess + " excess revisions of API " + apiId
+                    + " can be deleted. The others are deployed.");
+        }
+        return new Plan(revisions.size(), deletions, deploymentPayload);
+    }
+
+    private static boolean isDeployed(JsonObject revision) {
+        JsonElement deploymentInfo = revision.get("deploymentInfo");
+        return deploymentInfo != null && deploymentInfo.isJsonArray() && deploymentInfo.getAsJsonArray().size() > 0;
+    }
+
+    private static String toPayload(JsonArray deployments) {
+        return deployments != null ? deployments.toString() : "[]";
+    }
+}
@@ -0,0 +1,460 @@
+package com.sample.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Update rules compiled into a path trie so a single walk over an API payload applies all of them.
+ *
+ * Rules are applied in the order they are configured. When a rule replaces a value that an earlier rule
+ * already changed further down (e.g. {@code endpointConfig} after {@code endpointConfig.production_endpoints.url}),
+ * a single walk would apply them in the wrong order, so the trie is split into consecutive passes at that point.
+ * The common case of independent paths needs one pass.
+ */
+public class RuleTrie {
+
+    private static final Logger logger = Logger.getLogger(RuleTrie.class.getName());
+    private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+    private final List<UpdateRule> rules;
+    private final List<Map<String, Node>> passes;
+
+    /**
+     * One path segment. {@code terminalRules} end here; {@code children} continue below it. For an array
+     * segment ({@code name[]}) both apply to every element of the array.
+     */
+    private static final class Node {
+        final String key;
+        final boolean array;
+        final List<UpdateRule> terminalRules = new ArrayList<>();
+        final Map<String, Node> children = new LinkedHashMap<>();
+
+        Node(String segment) {
+            this.array = segment.endsWith("[]");
+            this.key = array ? segment.substring(0, segment.length() - 2) : segment;
+        }
+    }
+
+    /**
+     * Outcome of applying the rules to one payload.
+     */
+    public static final class Result {
+        private final String payload;
+        private final int[] hits;
+        private final int changes;
+
+        Result(String payload, int[] hits, int changes) {
+            this.payload = payload;
+            this.hits = hits;
+            this.changes = changes;
+        }
+
+        /**
+         * @return the rewritten payload, or null if nothing changed.
+         */
+        public String getPayload() {
+            return changes > 0 ? payload : null;
+        }
+
+        public boolean isChanged() {
+            return changes > 0;
+        }
+
+        public int getChanges() {
+            return changes;
+        }
+
+        public int[] getHits() {
+            return hits;
+        }
+    }
+
+    private RuleTrie(List<UpdateRule> rules, List<Map<String, Node>> passes) {
+        this.rules = rules;
+        this.passes = passes;
+    }
+
+    public static RuleTrie compile(List<UpdateRule> rules) {
+        List<Map<String, Node>> passes = new ArrayList<>();
+        List<UpdateRule> passRules = new ArrayList<>();
+        Map<String, Node> root = new LinkedHashMap<>();
+
+        for (UpdateRule rule : rules) {
+            if (conflictsWithPass(rule, passRules)) {
+                passes.add(root);
+                root = new LinkedHashMap<>();
+                passRules.clear();
+            }
+            insert(root, rule);
+            passRules.add(rule);
+        }
+        if (!root.isEmpty()) {
+            passes.add(root);
+        }
+        if (passes.size() > 1) {
+            logger.log(Level.INFO, "Update rules overlap on nested paths. Applying them in " + passes.size() + " passes.");
+        }
+        return new RuleTrie(Collections.unmodifiableList(new ArrayList<>(rules)), passes);
+    }
+
+    public List<UpdateRule> getRules() {
+        return rules;
+    }
+
+    public int getPassCount() {
+        return passes.size();
+    }
+
+    /**
+     * Hash of the rule definitions, to tell whether state recorded by an earlier run was produced by the same rules.
+     */
+    public String fingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (UpdateRule rule : rules) {
+                String definition = rule.getName() + "\u0000" + rule.getJsonPath() + "\u0000" + rule.getOldValue()
+                        + "\u0000" + rule.getNewValue() + "\n";
+                digest.update(definition.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Streaming rewrites walk the payload once, so they are only possible when the rules fit in one pass.
+     */
+    public boolean supportsStreaming() {
+        return passes.size() <= 1;
+    }
+
+    /**
+     * Apply all rules to an API payload.
+     *
+     * @return the updated JSON, or null if no rule changed anything or the payload could not be parsed.
+     */
+    public String apply(String apiDetails) {
+        try {
+            JsonObject apiJson = JsonParser.parseString(apiDetails).getAsJsonObject();
+            int[] hits = new int[rules.size()];
+            return apply(apiJson, hits) > 0 ? apiJson.toString() : null;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error applying update rules", e);
+            return null;
+        }
+    }
+
+    /**
+     * Apply all rules to a parsed payload in place.
+     *
+     * @param hits receives the number of values each rule replaced, indexed by {@link UpdateRule#getIndex()}.
+     * @return the total number of values replaced.
+     */
+    public int apply(JsonObject apiJson, int[] hits) {
+        return apply(apiJson, hits, null);
+    }
+
+    /**
+     * Apply all rules to a parsed payload in place and describe every replacement as a JSON Patch
+     * ({@code test} of the old value followed by {@code replace}) appended to {@code patch}.
+     *
+     * @param patch receives the patch operations, or null if they are not needed.
+     * @return the total number of values replaced.
+     */
+    public int apply(JsonObject apiJson, int[] hits, JsonArray patch) {
+        int changes = 0;
+        for (Map<String, Node> pass : passes) {
+            changes += applyChildren(apiJson, pass, hits, "", patch);
+        }
+        logHits(hits, changes);
+        return changes;
+    }
+
+    /**
+     * Apply all rules while copying the payload token by token from {@code in} to {@code out}.
+     *
+     * Only values a rule actually targets are materialized; everything else, including large
+     * {@code operations[]} arrays whose elements are merely traversed, is copied without building a tree.
+     * Requires {@link #supportsStreaming()}.
+     */
+    public Result applyStreaming(Reader in) throws IOException {
+        if (!supportsStreaming()) {
+            throw new IllegalStateException("Update rules need " + passes.size() + " passes and cannot be streamed");
+        }
+        int[] hits = new int[rules.size()];
+        StringWriter buffer = new StringWriter();
+        JsonReader reader = new JsonReader(in);
+        JsonWriter writer = new JsonWriter(buffer);
+        reader.setStrictness(Strictness.LENIENT);
+        writer.setStrictness(Strictness.LENIENT);
+
+        int changes;
+        if (passes.isEmpty() || reader.peek() != JsonToken.BEGIN_OBJECT) {
+            copyValue(reader, writer);
+            changes = 0;
+        } else {
+            changes = streamObject(reader, writer, passes.get(0), hits);
+        }
+        writer.flush();
+        logHits(hits, changes);
+        return new Result(buffer.toString(), hits, changes);
+    }
+
+    private static int streamObject(JsonReader in, JsonWriter out, Map<String, Node> children, int[] hits) throws IOException {
+        int changes = 0;
+        in.beginObject();
+        out.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            out.name(name);
+
+            Node single = null;
+            Map<String, Node> matching = null;
+            for (Node node : children.values()) {
+                if (!node.key.equals(name)) {
+                    continue;
+                }
+                if (single == null && matching == null) {
+                    single = node;
+                } else {
+                    if (matching == null) {
+                        matching = new LinkedHashMap<>();
+                        matching.put(single.key + (single.array ? "[]" : ""), single);
+                        single = null;
+                    }
+                    matching.put(node.key + (node.array ? "[]" : ""), node);
+                }
+            }
+
+            if (single == null && matching == null) {
+                copyValue(in, out);
+            } else if (single != null && single.terminalRules.isEmpty()) {
+                changes += streamThrough(in, out, single, hits);
+            } else {
+                // A rule ends here: materialize just this value and apply the tree logic to it.
+                if (matching == null) {
+                    matching = Collections.singletonMap(name, single);
+                }
+                JsonObject holder = new JsonObject();
+                holder.add(name, JsonParser.parseReader(in));
+                changes += applyChildren(holder, matching, hits, "", null);
+                ELEMENT_ADAPTER.write(out, holder.get(name));
+            }
+        }
+        in.endObject();
+        out.endObject();
+        return changes;
+    }
+
+    /**
+     * Descend into a value that only has rules further down, without materializing it.
+     */
+    private static int streamThrough(JsonReader in, JsonWriter out, Node node, int[] hits) throws IOException {
+        int changes = 0;
+        if (!node.array) {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                return streamObject(in, out, node.children, hits);
+            }
+            copyValue(in, out);
+            return 0;
+        }
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            copyValue(in, out);
+            return 0;
+        }
+        in.beginArray();
+        out.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                changes += streamObject(in, out, node.children, hits);
+            } else {
+                copyValue(in, out);
+            }
+        }
+        in.endArray();
+        out.endArray();
+        return changes;
+    }
+
+    private static void copyValue(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyValue(in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copyValue(in, out);
+                }
+                in.endObject();
+                out.endObject();
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                // Keep the number exactly as written.
+                out.jsonValue(in.nextString());
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    private void logHits(int[] hits, int changes) {
+        if (changes > 0 && logger.isLoggable(Level.FINE)) {
+            for (UpdateRule rule : rules) {
+                if (hits[rule.getIndex()] > 0) {
+                    logger.log(Level.FINE, "***** Updated " + hits[rule.getIndex()] + " value(s) in path '"
+                            + rule.getJsonPath() + "' using rule " + rule.getName());
+                }
+            }
+        }
+    }
+
+    private static int applyChildren(JsonObject object, Map<String, Node> children, int[] hits,
+                                     String pointer, JsonArray patch) {
+        int changes = 0;
+        for (Node node : children.values()) {
+            JsonElement child = object.get(node.key);
+            if (child == null) {
+                continue;
+            }
+            String childPointer = patch == null ? null : pointer + "/" + JsonPatch.escape(node.key);
+
+            if (node.array) {
+                if (!child.isJsonArray()) {
+                    continue;
+                }
+                JsonArray array = child.getAsJsonArray();
+                for (int i = 0; i < array.size(); i++) {
+                    JsonElement element = array.get(i);
+                    String elementPointer = patch == null ? null : childPointer + "/" + i;
+                    for (UpdateRule rule : node.terminalRules) {
+                        if (rule.shouldReplace(element)) {
+                            JsonElement replaced = element;
+                            element = rule.copyOfNewValue();
+                            array.set(i, element);
+                            hits[rule.getIndex()]++;
+                            changes++;
+                            recordReplace(patch, elementPointer, replaced, rule);
+                        }
+                    }
+                    if (!node.children.isEmpty() && element.isJsonObject()) {
+                        changes += applyChildren(element.getAsJsonObject(), node.children, hits, elementPointer, patch);
+                    }
+                }
+            } else {
+                for (UpdateRule rule : node.terminalRules) {
+                    if (rule.shouldReplace(child)) {
+                        JsonElement replaced = child;
+                        child = rule.copyOfNewValue();
+                        object.add(node.key, child);
+                        hits[rule.getIndex()]++;
+                        changes++;
+                        recordReplace(patch, childPointer, replaced, rule);
+                    }
+                }
+                if (!node.children.isEmpty() && child.isJsonObject()) {
+                    changes += applyChildren(child.getAsJsonObject(), node.children, hits, childPointer, patch);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * The replaced value is detached from the payload, so it can be referenced as is. The new value is copied
+     * because rules further down the same path may still change the one in the payload.
+     */
+    private static void recordReplace(JsonArray patch, String pointer, JsonElement replaced, UpdateRule rule) {
+        if (patch == null) {
+            return;
+        }
+        patch.add(JsonPatch.test(pointer, replaced));
+        patch.add(JsonPatch.replace(pointer, rule.copyOfNewValue()));
+    }
+
+    private static void insert(Map<String, Node> root, UpdateRule rule) {
+        Map<String, Node> level = root;
+        Node node = null;
+        for (String segment : rule.getSegments()) {
+            node = level.get(segment);
+            if (node == null) {
+                node = new Node(segment);
+                level.put(segment, node);
+            }
+            level = node.children;
+        }
+        node.terminalRules.add(rule);
+    }
+
+    /**
+     * A rule conflicts with the current pass if it targets the same field as, or an ancestor of, a path an
+     * earlier rule in the pass reaches through a different route. Applying it in the same walk could run it
+     * before that earlier rule.
+     */
+    private static boolean conflictsWithPass(UpdateRule rule, List<UpdateRule> passRules) {
+        List<String> segments = rule.getSegments();
+        for (UpdateRule earlier : passRules) {
+            List<String> earlierSegments = earlier.getSegments();
+            if (segments.size() > earlierSegments.size() || segments.equals(earlierSegments)) {
+                continue;
+            }
+            boolean prefix = true;
+            for (int i = 0; i < segments.size() && prefix; i++) {
+                prefix = key(segments.get(i)).equals(key(earlierSegments.get(i)));
+            }
+            if (prefix) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(String segment) {
+        return segment.endsWith("[]") ? segment.substring(0, segment.length() - 2) : segment;
+    }
+}
@@ -0,0 +1,277 @@
+package com.sample.updater;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Outcome of a run per target, written as JSON so the reports of several shards can be merged.
+ *
+ * A report covers the shards in {@code shards} out of {@code shardCount}: one shard for the file a shard writes,
+ * several once merged. Merged reports have the same format and can be merged again.
+ */
+public class RunReport {
+
+    private static final Logger logger = Logger.getLogger(RunReport.class.getName());
+
+    static final String COMPLETED = "COMPLETED";
+    static final String COMPLETED_WITH_FAILURES = "COMPLETED_WITH_FAILURES";
+    static final String NOT_RUN = "NOT_RUN";
+
+    private final int shardCount;
+    private final SortedSet<Integer> shards = new TreeSet<>();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private static class Entry {
+        String status;
+        String error;
+        double elapsedSeconds;
+        int otherShards;
+        final Map<UpdateStatus, Integer> counts = new EnumMap<>(UpdateStatus.class);
+        final List<String> failedAPIs = new ArrayList<>();
+    }
+
+    public RunReport(Shard shard) {
+        this.shardCount = shard.getCount();
+        this.shards.add(shard.getIndex());
+    }
+
+    private RunReport(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public void add(String target, UpdateSummary summary) {
+        Entry entry = new Entry();
+        entry.status = summary.hasFailures() ? COMPLETED_WITH_FAILURES : COMPLETED;
+        entry.elapsedSeconds = summary.getElapsedMillis() / 1000.0;
+        entry.otherShards = summary.getOtherShardCount();
+        for (UpdateStatus status : UpdateStatus.values()) {
+            entry.counts.put(status, summary.getCount(status));
+        }
+        entry.failedAPIs.addAll(summary.getFailedAPIs());
+        entries.put(target, entry);
+    }
+
+    public void addError(String target, String error) {
+        Entry entry = new Entry();
+        entry.status = NOT_RUN;
+        entry.error = error;
+        entries.put(target, entry);
+    }
+
+    /**
+     * @return true if a target did not run, had failed APIs, or shards are missing.
+     */
+    public boolean hasFailures() {
+        return shards.size() < shardCount
+                || entries.values().stream().anyMatch(entry -> !COMPLETED.equals(entry.status));
+    }
+
+    public void log() {
+        logger.log(Level.INFO, "***** Run Report *****");
+        if (shardCount > 1) {
+            List<Integer> missing = getMissingShards();
+            logger.log(missing.isEmpty() ? Level.INFO : Level.SEVERE, "***** Shards : " + shards + " of " + shardCount
+                    + (missing.isEmpty() ? "" : ", missing " + missing));
+        }
+        Map<UpdateStatus, Integer> totals = new EnumMap<>(UpdateStatus.class);
+        for (Map.Entry<String, Entry> target : entries.entrySet()) {
+            Entry entry = target.getValue();
+            if (NOT_RUN.equals(entry.status)) {
+                logger.log(Level.SEVERE, "***** " + target.getKey() + " : not run. " + entry.error);
+                continue;
+            }
+            int total = entry.counts.values().stream().mapToInt(Integer::intValue).sum();
+            StringBuilder line = new StringBuilder("***** " + target.getKey() + " : " + total + " APIs in "
+                    + Math.round(entry.elapsedSeconds) + "s");
+            for (Map.Entry<UpdateStatus, Integer> count : entry.counts.entrySet()) {
+                totals.merge(count.getKey(), count.getValue(), Integer::sum);
+                if (count.getValue() > 0) {
+                    line.append(", ").append(count.getKey()).append(' ').append(count.getValue());
+                }
+            }
+            if (entry.otherShards > 0) {
+                line.append(", ").append(entry.otherShards).append(" left to other shards");
+            }
+            if (entry.error != null) {
+                line.append(". ").append(entry.error);
+            }
+            logger.log(COMPLETED.equals(entry.status) ? Level.INFO : Level.WARNING, line.toString());
+            for (String failed : entry.failedAPIs) {
+                logger.log(Level.SEVERE, "***** " + target.getKey() + " : Failed API : " + failed);
+            }
+        }
+        if (entries.size() > 1) {
+            long ran = entries.values().stream().filter(entry -> !NOT_RUN.equals(entry.status)).count();
+            StringBuilder line = new StringBuilder("***** All targets : " + ran + " of " + entries.size() + " ran");
+            for (Map.Entry<UpdateStatus, Integer> total : totals.entrySet()) {
+                line.append(", ").append(total.getKey()).append(' ').append(total.getValue());
+            }
+            logger.log(Level.INFO, line.toString());
+        }
+    }
+
+    private List<Integer> getMissingShards() {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            if (!shards.contains(i)) {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    public void write(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            logger.log(Level.INFO, "***** Run report written to " + file);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write run report " + file, e);
+        }
+    }
+
+    private JsonObject toJson() {
+        JsonObject report = new JsonObject();
+        report.addProperty("shardCount", shardCount);
+        JsonArray shardIndexes = new JsonArray();
+        shards.forEach(shardIndexes::add);
+        report.add("shards", shardIndexes);
+        JsonArray missing = new JsonArray();
+        getMissingShards().forEach(missing::add);
+        report.add("missingShards", missing);
+
+        JsonArray targets = new JsonArray();
+        for (Map.Entry<String, Entry> target : entries.entrySet()) {
+            Entry entry = target.getValue();
+            JsonObject json = new JsonObject();
+            json.addProperty("target", target.getKey());
+            json.addProperty("status", entry.status);
+            if (entry.error != null) {
+                json.addProperty("error", entry.error);
+            }
+            if (!NOT_RUN.equals(entry.status)) {
+                json.addProperty("elapsedSeconds", entry.elapsedSeconds);
+                JsonObject counts = new JsonObject();
+                entry.counts.forEach((status, count) -> counts.addProperty(status.name(), count));
+                json.add("counts", counts);
+                if (entry.otherShards > 0) {
+                    json.addProperty("otherShards", entry.otherShards);
+                }
+                JsonArray failed = new JsonArray();
+                entry.failedAPIs.forEach(failed::add);
+                json.add("failedAPIs", failed);
+            }
+            targets.add(json);
+        }
+        report.add("targets", targets);
+        return report;
+    }
+
+    private static RunReport read(Path file) throws IOException {
+        JsonObject json;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            json = JsonParser.parseReader(reader).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException("Not a run report: " + file, e);
+        }
+        if (!json.has("shardCount") || !json.has("targets")) {
+            throw new IOException("Not a run report: " + file);
+        }
+        RunReport report = new RunReport(json.get("shardCount").getAsInt());
+        for (JsonElement index : json.getAsJsonArray("shards")) {
+            report.shards.add(index.getAsInt());
+        }
+        for (JsonElement element : json.getAsJsonArray("targets")) {
+            JsonObject target = element.getAsJsonObject();
+            Entry entry = new Entry();
+            entry.status = target.get("status").getAsString();
+            entry.error = target.has("error") ? target.get("error").getAsString() : null;
+            entry.elapsedSeconds = target.has("elapsedSeconds") ? target.get("elapsedSeconds").getAsDouble() : 0;
+            if (target.has("counts")) {
+                for (Map.Entry<String, JsonElement> count : target.getAsJsonObject("counts").entrySet()) {
+                    entry.counts.put(UpdateStatus.valueOf(count.getKey()), count.getValue().getAsInt());
+                }
+            }
+            if (target.has("failedAPIs")) {
+                target.getAsJsonArray("failedAPIs").forEach(failed -> entry.failedAPIs.add(failed.getAsString()));
+            }
+            report.entries.put(target.get("target").getAsString(), entry);
+        }
+        return report;
+    }
+
+    /**
+     * Combine the reports of the shards of one sweep. Counts and failed APIs are added up per target, the
+     * elapsed time is that of the slowest shard.
+     *
+     * @throws IOException if a report cannot be read, the reports disagree on the shard count or a shard
+     *                     appears twice.
+     */
+    public static RunReport merge(List<Path> files) throws IOException {
+        RunReport merged = null;
+        for (Path file : files) {
+            RunReport report = read(file);
+            if (merged == null) {
+                merged = new RunReport(report.shardCount);
+            } else if (merged.shardCount != report.shardCount) {
+                throw new IOException(file + " is one of " + report.shardCount + " shards, expected " + merged.shardCount);
+            }
+            for (Integer index : report.shards) {
+                if (!merged.shards.add(index)) {
+                    throw new IOException("Shard " + index + " is reported twice (again in " + file + ")");
+                }
+            }
+            for (Map.Entry<String, Entry> target : report.entries.entrySet()) {
+                merged.entries.merge(target.getKey(), target.getValue(), RunReport::combine);
+            }
+        }
+        if (merged == null) {
+            throw new IOException("No reports to merge");
+        }
+        // APIs left to other shards are counted by the shards that own them
+        merged.entries.values().forEach(entry -> entry.otherShards = 0);
+        return merged;
+    }
+
+    private static Entry combine(Entry a, Entry b) {
+        Entry combined = new Entry();
+        combined.status = NOT_RUN.equals(a.status) || NOT_RUN.equals(b.status) ? NOT_RUN
+                : COMPLETED.equals(a.status) && COMPLETED.equals(b.status) ? COMPLETED
+                : COMPLETED_WITH_FAILURES;
+        combined.error = a.error == null ? b.error : b.error == null ? a.error : a.error + "; " + b.error;
+        if (NOT_RUN.equals(combined.status) && !(NOT_RUN.equals(a.status) && NOT_RUN.equals(b.status))) {
+            // Some shards of the target ran; report what they did rather than dropping it
+            combined.status = COMPLETED_WITH_FAILURES;
+            combined.error = "Not run on every shard: " + combined.error;
+        }
+        combined.elapsedSeconds = Math.max(a.elapsedSeconds, b.elapsedSeconds);
+        combined.counts.putAll(a.counts);
+        b.counts.forEach((status, count) -> combined.counts.merge(status, count, Integer::sum));
+        combined.failedAPIs.addAll(a.failedAPIs);
+        combined.failedAPIs.addAll(b.failedAPIs);
+        return combined;
+    }
+}
@@ -0,0 +1,102 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One of {@code count} disjoint slices of a publisher's APIs, so several processes or machines can share a
+ * sweep without coordinating. An API belongs to shard {@code crc32(id) % count}: the assignment only depends
+ * on the API id, so every node computes the same split and a re-run with the same count gives each shard the
+ * same APIs (and lets it reuse its own journal and fingerprint index).
+ */
+public final class Shard {
+
+    public static final Shard ALL = new Shard(0, 1);
+
+    private final int index;
+    private final int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Shard index must be between 0 and shard count - 1, got "
+                    + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public boolean owns(String apiId) {
+        if (count == 1) {
+            return true;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(apiId.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % count == index;
+    }
+
+    /**
+     * Suffix for the files this shard writes, e.g. update-journal-shard-2-of-4.log.
+     */
+    public String getSuffix() {
+        return "shard-" + index + "-of-" + count;
+    }
+
+    /**
+     * The APIs of this shard, taken lazily from {@code apis}. APIs of other shards are passed to
+     * {@code otherShard} instead.
+     */
+    public Iterable<API> filter(Iterable<API> apis, Consumer<API> otherShard) {
+        if (count == 1) {
+            return apis;
+        }
+        return () -> new Iterator<API>() {
+            private final Iterator<API> source = apis.iterator();
+            private API next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && source.hasNext()) {
+                    API api = source.next();
+                    if (owns(api.getId())) {
+                        next = api;
+                    } else {
+                        otherShard.accept(api);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public API next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                API api = next;
+                next = null;
+                return api;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return index + " of " + count;
+    }
+}
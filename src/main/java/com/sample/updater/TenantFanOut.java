@@ -0,0 +1,152 @@
+package com.sample.updater;
+
+import com.sample.utilities.ConfigLoader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the same update against several tenants and publishers in one JVM.
+ *
+ * TARGETS names the targets. Each one runs a full {@link UpdateService} on this configuration, overlaid with the
+ * properties file in TARGET.&lt;name&gt;.CONFIG and then with every TARGET.&lt;name&gt;.&lt;KEY&gt; property, so it
+ * has its own DCR client, token, connection pool and rate limits. Files a run writes (DCR client, journal,
+ * fingerprint index, results, details cache, plans) get the target name added unless the target sets them itself.
+ *
+ * Up to TARGETS.CONCURRENCY targets run at once. TARGETS.MAX.IN.FLIGHT caps the APIs in flight across all
+ * targets with a fair semaphore, so a tenant with thousands of APIs cannot hold every slot while small tenants wait.
+ */
+public class TenantFanOut {
+
+    private static final Logger logger = Logger.getLogger(TenantFanOut.class.getName());
+
+    /**
+     * Files each run writes, with the default name {@link UpdateService} and its collaborators use.
+     */
+    private static final String[][] PER_TARGET_FILES = {
+            {"DCR.CREDENTIALS.FILE", "dcr-client.json"},
+            {"JOURNAL.FILE", "update-journal.log"},
+            {"FINGERPRINT.INDEX.FILE", "fingerprint-index.tsv"},
+            {"RESULTS.FILE", ""},
+    };
+
+    private final ConfigLoader configLoader;
+    private final List<String> targets;
+    private final int targetConcurrency;
+    private final Semaphore sharedPermits;
+
+    public TenantFanOut(ConfigLoader configLoader) {
+        this.configLoader = configLoader;
+        this.targets = new ArrayList<>(new LinkedHashSet<>(configLoader.getListProperty("TARGETS")));
+        for (String target : targets) {
+            if (!target.matches("[A-Za-z0-9._-]+")) {
+                throw new IllegalArgumentException("Invalid target name " + target
+                        + ". Use letters, digits, '.', '_' and '-' only, as it is part of file names.");
+            }
+        }
+        this.targetConcurrency = Math.max(1, configLoader.getIntProperty("TARGETS.CONCURRENCY", Math.min(targets.size(), 4)));
+        int maxInFlight = configLoader.getIntProperty("TARGETS.MAX.IN.FLIGHT", 0);
+        this.sharedPermits = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+    }
+
+    /**
+     * Run every target and log one consolidated report, also written to TARGETS.REPORT.FILE (empty for none).
+     */
+    public RunReport run(String planFile, String applyPlanFile, boolean resume, Shard shard) throws InterruptedException {
+        logger.log(Level.INFO, "***** Running " + targets.size() + " targets, " + targetConcurrency + " at a time"
+                + (sharedPermits != null ? ", at most " + sharedPermits.availablePermits() + " APIs in flight" : "") + " *****");
+
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService runners = Executors.newFixedThreadPool(targetConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "target-runner-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Future<UpdateSummary>> runs = new LinkedHashMap<>();
+        for (String target : targets) {
+            runs.put(target, runners.submit(() -> new UpdateService(targetConfig(target), target, sharedPermits)
+                    .run(withSuffix(planFile, target), withSuffix(applyPlanFile, target), resume, shard)));
+        }
+        runners.shutdown();
+
+        RunReport report = new RunReport(shard);
+        for (Map.Entry<String, Future<UpdateSummary>> run : runs.entrySet()) {
+            try {
+                report.add(run.getKey(), run.getValue().get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.log(Level.SEVERE, "***** Target " + run.getKey() + " failed to run", cause);
+                report.addError(run.getKey(), String.valueOf(cause.getMessage()));
+            }
+        }
+
+        report.log();
+        String file = configLoader.hasProperty("TARGETS.REPORT.FILE") ? configLoader.getProperty("TARGETS.REPORT.FILE") : "targets-report.json";
+        if (!file.isEmpty()) {
+            report.write(Paths.get(file));
+        }
+        return report;
+    }
+
+    /**
+     * The base configuration overlaid with the target's properties file and inline properties.
+     */
+    ConfigLoader targetConfig(String target) throws IOException {
+        Properties overrides = new Properties();
+        String prefix = "TARGET." + target + ".";
+        String file = configLoader.getProperties(prefix).getProperty("CONFIG", "").trim();
+        if (!file.isEmpty()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                overrides.load(in);
+            }
+        }
+        overrides.putAll(configLoader.getProperties(prefix));
+        overrides.remove("CONFIG");
+
+        // Keep the targets from reading and writing each other's state
+        for (String[] entry : PER_TARGET_FILES) {
+            if (!overrides.containsKey(entry[0])) {
+                String base = configLoader.hasProperty(entry[0]) ? configLoader.getProperty(entry[0]) : entry[1];
+                overrides.setProperty(entry[0], base.isEmpty() ? base : withSuffix(base, target));
+            }
+        }
+        if (!overrides.containsKey("CACHE.DIRECTORY")) {
+            String base = configLoader.hasProperty("CACHE.DIRECTORY") ? configLoader.getProperty("CACHE.DIRECTORY") : "";
+            overrides.setProperty("CACHE.DIRECTORY",
+                    Paths.get(base.isEmpty() ? "cache/api-details" : base).resolve(target).toString());
+        }
+        return configLoader.withOverrides(overrides);
+    }
+
+    /**
+     * @return the file name with the suffix added before the extension, e.g. plan.json -> plan-eu.json.
+     */
+    static String withSuffix(String file, String suffix) {
+        if (file == null) {
+            return null;
+        }
+        Path path = Paths.get(file);
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String targetName = dot > 0
+                ? name.substring(0, dot) + "-" + suffix + name.substring(dot)
+                : name + "-" + suffix;
+        return path.resolveSibling(targetName).toString();
+    }
+}
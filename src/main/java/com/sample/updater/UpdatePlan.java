@@ -0,0 +1,152 @@
+package com.sample.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.sample.bean.API;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plan file written by {@code --plan} and executed by {@code --apply-plan}.
+ *
+ * Only APIs with at least one change are written, each with the JSON Patch that turns its current definition
+ * into the updated one. The file ends with the number of values and APIs each rule changed:
+ * <pre>
+ * {"apis":[{"id":"..","name":"..",..,"patch":[{"op":"test",..},{"op":"replace",..}]}],
+ *  "rules":{"RULE1":{"values":12,"apis":4}},"planned":4}
+ * </pre>
+ */
+public class UpdatePlan implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(UpdatePlan.class.getName());
+    private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+    private final List<UpdateRule> rules;
+    private final JsonWriter writer;
+    private final long[] ruleValues;
+    private final int[] ruleAPIs;
+    private int planned;
+
+    /**
+     * Start writing a plan. Entries are streamed to the file as APIs are planned.
+     */
+    public UpdatePlan(Path path, List<UpdateRule> rules) throws IOException {
+        this.rules = rules;
+        this.ruleValues = new long[rules.size()];
+        this.ruleAPIs = new int[rules.size()];
+        Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        this.writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("apis");
+        writer.beginArray();
+    }
+
+    /**
+     * Add the changes planned for one API.
+     *
+     * @param hits number of values each rule changed, indexed by {@link UpdateRule#getIndex()}.
+     */
+    public synchronized void add(API api, JsonArray patch, int[] hits) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(api.getId());
+        writer.name("name").value(api.getName());
+        writer.name("context").value(api.getContext());
+        writer.name("version").value(api.getVersion());
+        writer.name("provider").value(api.getProvider());
+        writer.name("lifeCycleStatus").value(api.getLifeCycleStatus());
+        writer.name("patch");
+        ELEMENT_ADAPTER.write(writer, patch);
+        writer.endObject();
+        for (int i = 0; i < hits.length; i++) {
+            if (hits[i] > 0) {
+                ruleValues[i] += hits[i];
+                ruleAPIs[i]++;
+            }
+        }
+        planned++;
+    }
+
+    /**
+     * Write the per-rule counts, close the file and log them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        writer.endArray();
+        writer.name("rules");
+        writer.beginObject();
+        for (UpdateRule rule : rules) {
+            writer.name(rule.getName());
+            writer.beginObject();
+            writer.name("values").value(ruleValues[rule.getIndex()]);
+            writer.name("apis").value(ruleAPIs[rule.getIndex()]);
+            writer.endObject();
+        }
+        writer.endObject();
+        writer.name("planned").value(planned);
+        writer.endObject();
+        writer.close();
+
+        logger.log(Level.INFO, "***** Plan : " + planned + " APIs to update");
+        for (UpdateRule rule : rules) {
+            logger.log(Level.INFO, "***** Plan : rule " + rule.getName() + " changes " + ruleValues[rule.getIndex()]
+                    + " value(s) in " + ruleAPIs[rule.getIndex()] + " API(s)");
+        }
+    }
+
+    /**
+     * Read the APIs of a plan that have a non-empty patch. Each returned API carries its patch.
+     */
+    public static List<API> load(Path path) throws IOException {
+        List<API> apis = new ArrayList<>();
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"apis".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    JsonObject entry = ELEMENT_ADAPTER.read(reader).getAsJsonObject();
+                    JsonArray patch = entry.getAsJsonArray("patch");
+                    if (patch == null || patch.size() == 0) {
+                        continue;
+                    }
+                    API api = new API();
+                    api.setId(entry.get("id").getAsString());
+                    api.setName(stringOrNull(entry, "name"));
+                    api.setContext(stringOrNull(entry, "context"));
+                    api.setVersion(stringOrNull(entry, "version"));
+                    api.setProvider(stringOrNull(entry, "provider"));
+                    api.setLifeCycleStatus(stringOrNull(entry, "lifeCycleStatus"));
+                    api.setPatch(patch);
+                    apis.add(api);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        return apis;
+    }
+
+    private static String stringOrNull(JsonObject entry, String name) {
+        JsonElement value = entry.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.sample.updater;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.sample.utilities.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single UPDATE.RULES entry: replace the value at JSON.PATH with NEW.VALUE when it matches OLD.VALUE.
+ *
+ * The path is split once when the rule is loaded, and the new value is parsed once into a JSON element
+ * that is shared by every API the rule is applied to.
+ */
+public class UpdateRule {
+
+    private static final Logger logger = Logger.getLogger(UpdateRule.class.getName());
+    private static final Gson gson = new Gson();
+
+    private final int index;
+    private final String name;
+    private final String jsonPath;
+    private final List<String> segments;
+    private final String oldValue;
+    private final JsonElement newValue;
+
+    public UpdateRule(int index, String name, String jsonPath, String oldValue, JsonElement newValue) {
+        this.index = index;
+        this.name = name;
+        this.jsonPath = jsonPath;
+        this.segments = Collections.unmodifiableList(Arrays.asList(jsonPath.split("\\.")));
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public static List<UpdateRule> loadUpdateRules(ConfigLoader configLoader) {
+        List<String> ruleNames = configLoader.getListProperty("UPDATE.RULES");
+        List<UpdateRule> rules = new ArrayList<>();
+
+        for (String ruleName : ruleNames) {
+            String path = configLoader.getProperty(ruleName + ".JSON.PATH");
+            String oldValue = configLoader.getProperty(ruleName + ".OLD.VALUE");
+            String newValueRaw = configLoader.getProperty(ruleName + ".NEW.VALUE");
+
+            if (path.isEmpty() || newValueRaw.isEmpty()) {
+                logger.log(Level.WARNING, "Skipping rule " + ruleName + " due to missing JSON.PATH or NEW.VALUE");
+                continue;
+            }
+
+            rules.add(new UpdateRule(rules.size(), ruleName, path, oldValue, parseValue(newValueRaw)));
+            logger.log(Level.INFO, "Loaded update rule: " + ruleName + " targeting path: " + path);
+        }
+
+        return rules;
+    }
+
+    public static JsonElement parseValue(String raw) {
+        String trimmed = raw.trim();
+        try {
+            if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
+                return JsonParser.parseString(trimmed);
+            }
+            if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+                return gson.toJsonTree(Boolean.parseBoolean(trimmed));
+            }
+            if (trimmed.matches("-?\\d+(\\.\\d+)?")) {
+                if (trimmed.contains(".")) {
+                    return gson.toJsonTree(Double.parseDouble(trimmed));
+                } else {
+                    return gson.toJsonTree(Long.parseLong(trimmed));
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to parse value '" + raw + "' as JSON. Falling back to string.");
+        }
+        return gson.toJsonTree(trimmed);
+    }
+
+    /**
+     * Check whether an existing value matches OLD.VALUE. An empty OLD.VALUE matches anything.
+     */
+    public boolean shouldReplace(JsonElement existing) {
+        if (oldValue == null || oldValue.isEmpty()) {
+            return true;
+        }
+        if (existing == null || existing.isJsonNull()) {
+            return false;
+        }
+
+        if (existing.isJsonPrimitive()) {
+            return oldValue.equals(existing.getAsString());
+        }
+        return oldValue.equals(existing.toString());
+    }
+
+    /**
+     * Return a copy of NEW.VALUE that can be inserted into an API payload. Primitives are immutable and
+     * shared as is; only objects and arrays are copied.
+     */
+    public JsonElement copyOfNewValue() {
+        return newValue.isJsonPrimitive() || newValue.isJsonNull() ? newValue : newValue.deepCopy();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getJsonPath() {
+        return jsonPath;
+    }
+
+    public List<String> getSegments() {
+        return segments;
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public JsonElement getNewValue() {
+        return newValue;
+    }
+}
@@ -1,388 +1,1162 @@
 package com.sample.updater;
 
-import com.sample.bean.API;
-import com.sample.utilities.ConfigLoader;
-import com.sample.utilities.RestRequest;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import com.google.gson.JsonElement;
+import com.sample.bean.API;
+import com.sample.utilities.AsyncLogHandler;
+import com.sample.utilities.AsyncRestRequest;
+import com.sample.utilities.ConfigLoader;
+import com.sample.utilities.Metrics;
+import com.sample.utilities.RestRequest;
 
 import javax.net.ssl.*;
 import java.io.FileInputStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class UpdateService {
 
     private static final Logger logger = Logger.getLogger(UpdateService.class.getName());
-    private static ConfigLoader configLoader;
-    private static RestRequest restRequest;
-    private static Gson gson = new Gson();
+    private static final Gson gson = new Gson();
+    private static final Map<String, SSLContext> sslContexts = new ConcurrentHashMap<>();
+    private ConfigLoader configLoader;
+    private RestRequest restRequest;
+    private AsyncRestRequest asyncRestRequest;
+    private List<String> skipList;
+    private boolean explicitMode;
+    private List<String> explicitList;
+    private boolean streamingTransform;
+    private String contextPrefix;
+    private String provider;
+    private CheckpointJournal journal;
+    private RevisionManager revisionManager;
+    private DeploymentStage deploymentStage;
+    private FingerprintIndex fingerprintIndex;
+    private ResultStream results;
+    private WatchState watchState;
+
+    private final String name;
+    private final Semaphore sharedPermits;
+    private SSLContext sslContext;
+    private Shard shard = Shard.ALL;
+
+    /**
+     * @param name          label used in the logs and thread names; the target name in a multi-target run.
+     * @param sharedPermits permits shared by all targets of a run, one taken per API in flight; null if unbounded.
+     */
+    public UpdateService(ConfigLoader configLoader, String name, Semaphore sharedPermits) {
+        this.configLoader = configLoader;
+        this.name = name;
+        this.sharedPermits = sharedPermits;
+    }
+
+    /**
+     * Only process the APIs that changed since the previous poll of watch mode.
+     */
+    public void setWatchState(WatchState watchState) {
+        this.watchState = watchState;
+    }
 
     public static void main(String[] args) {
         try {
-            if (args.length != 1) {
-                logger.log(Level.SEVERE, "Usage: java -jar UpdateClient.jar <config.properties>");
+            if (args.length >= 2 && "--merge-shards".equals(args[0])) {
+                mergeShardReports(args);
+                return;
+            }
+            String planFile = null;
+            String applyPlanFile = null;
+            boolean resume = false;
+            boolean watch = false;
+            int shardIndex = 0;
+            int shardCount = 1;
+            boolean validArgs = args.length >= 1;
+            for (int i = 1; i < args.length && validArgs; i++) {
+                if ("--plan".equals(args[i]) && i + 1 < args.length) {
+                    planFile = args[++i];
+                } else if ("--apply-plan".equals(args[i]) && i + 1 < args.length) {
+                    applyPlanFile = args[++i];
+                } else if ("--resume".equals(args[i])) {
+                    resume = true;
+                } else if ("--watch".equals(args[i])) {
+                    watch = true;
+                } else if ("--shard-index".equals(args[i]) && i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    shardIndex = Integer.parseInt(args[++i]);
+                } else if ("--shard-count".equals(args[i]) && i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    shardCount = Integer.parseInt(args[++i]);
+                } else {
+                    validArgs = false;
+                }
+            }
+            if (!validArgs || (planFile != null && (applyPlanFile != null || resume))
+                    || (watch && (planFile != null || applyPlanFile != null || resume)) || shardCount < 1 || shardIndex >= shardCount) {
+                logger.log(Level.SEVERE, "Usage: java -jar UpdateClient.jar <config.properties> [--plan <plan.json> | [--apply-plan <plan.json>] [--resume]"
+                        + " | --watch] [--shard-index <n> --shard-count <m>]");
+                logger.log(Level.SEVERE, "       java -jar UpdateClient.jar --merge-shards <merged.json> <shard report>...");
                 System.exit(1);
             }
+            Shard shard = new Shard(shardIndex, shardCount);
 
             // Load configuration
-            configLoader = new ConfigLoader(args[0]);
-
-            // Initialize SSL context
-            initializeSSLContext();
+            ConfigLoader configLoader = new ConfigLoader(args[0]);
+            if (shard.isSharded()) {
+                // Shards may share a working directory; each keeps its own state files
+                configLoader = configLoader.withOverrides(shardFiles(configLoader, shard));
+                planFile = TenantFanOut.withSuffix(planFile, shard.getSuffix());
+                applyPlanFile = TenantFanOut.withSuffix(applyPlanFile, shard.getSuffix());
+            }
+            AsyncLogHandler.install(configLoader);
+            Metrics.start(configLoader);
 
-            // Initialize REST request handler
-            restRequest = new RestRequest(configLoader);
+            boolean multiTarget = configLoader.hasProperty("TARGETS") && !configLoader.getListProperty("TARGETS").isEmpty();
+            if (watch) {
+                if (multiTarget) {
+                    throw new IllegalArgumentException("--watch runs against a single publisher. Remove TARGETS or run one watcher per target.");
+                }
+                new WatchMode(args[0], configLoader, shard).run();
+                Metrics.stop();
+                AsyncLogHandler.uninstall();
+                return;
+            }
 
-            // Get access token
-            String accessToken = restRequest.getAccessToken();
-            if (accessToken == null) {
-                logger.log(Level.SEVERE, "Failed to obtain access token");
-                System.exit(1);
+            RunReport report;
+            if (multiTarget) {
+                // Several tenants / publishers in one JVM, each with its own token, pool and rate limits
+                report = new TenantFanOut(configLoader).run(planFile, applyPlanFile, resume, shard);
+            } else {
+                report = new RunReport(shard);
+                report.add("default", new UpdateService(configLoader, null, null).run(planFile, applyPlanFile, resume, shard));
+            }
+            String reportFile = configLoader.hasProperty("SHARD.REPORT.FILE") ? configLoader.getProperty("SHARD.REPORT.FILE") : "";
+            if (shard.isSharded() && !reportFile.isEmpty()) {
+                report.write(Paths.get(reportFile));
             }
+            Metrics.stop();
+            AsyncLogHandler.uninstall();
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error in main execution", e);
+            AsyncLogHandler.uninstall();
+            System.exit(1);
+        }
+    }
 
-            // Get all APIs
-            List<API> apis = getAllAPIs(accessToken);
-            logger.log(Level.INFO, "***** Starting API Bulk Update *****");
-            logger.log(Level.INFO, "***** Number Of APIs : " + apis.size());
+    /**
+     * Files written by a run, with their default names. A shard adds its suffix, e.g. report-shard-0-of-4.json.
+     */
+    private static final String[][] SHARD_FILES = {
+            {"DCR.CREDENTIALS.FILE", "dcr-client.json"},
+            {"JOURNAL.FILE", "update-journal.log"},
+            {"FINGERPRINT.INDEX.FILE", "fingerprint-index.tsv"},
+            {"METRICS.JSON.FILE", "metrics.json"},
+            {"METRICS.PROMETHEUS.FILE", "metrics.prom"},
+            {"TARGETS.REPORT.FILE", "targets-report.json"},
+            {"SHARD.REPORT.FILE", "report.json"},
+            {"RESULTS.FILE", ""},
+            {"WATCH.STATE.FILE", "watch-state.json"},
+    };
+
+    static Properties shardFiles(ConfigLoader configLoader, Shard shard) {
+        Properties files = new Properties();
+        for (String[] entry : SHARD_FILES) {
+            String file = configLoader.hasProperty(entry[0]) ? configLoader.getProperty(entry[0]) : entry[1];
+            files.setProperty(entry[0], file.isEmpty() ? file : TenantFanOut.withSuffix(file, shard.getSuffix()));
+        }
+        String cache = configLoader.hasProperty("CACHE.DIRECTORY") ? configLoader.getProperty("CACHE.DIRECTORY") : "";
+        files.setProperty("CACHE.DIRECTORY", Paths.get(cache.isEmpty() ? "cache/api-details" : cache)
+                .resolve(shard.getSuffix()).toString());
+        return files;
+    }
 
-            // Load generic update rules
-            List<UpdateRule> updateRules = loadUpdateRules(configLoader);
-            if (updateRules.isEmpty()) {
-                logger.log(Level.SEVERE, "No update rules configured. Please configure UPDATE.RULES in config.properties");
-                System.exit(1);
+    /**
+     * Combine the reports written by the shards of a sweep: {@code --merge-shards <merged.json> <report>...}.
+     */
+    private static void mergeShardReports(String[] args) throws Exception {
+        List<Path> reports = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            reports.add(Paths.get(args[i]));
+        }
+        RunReport merged = RunReport.merge(reports);
+        merged.log();
+        merged.write(Paths.get(args[1]));
+        if (merged.hasFailures()) {
+            logger.log(Level.WARNING, "***** Merged " + reports.size() + " shard reports. The sweep is incomplete or has failures *****");
+        } else {
+            logger.log(Level.INFO, "***** Merged " + reports.size() + " shard reports. All shards completed successfully *****");
+        }
+    }
+
+    /**
+     * Run the bulk update (or the plan, with {@code planFile}) against the publisher of this configuration.
+     * Only the APIs that belong to {@code shard} are processed.
+     *
+     * @throws IllegalStateException if the run cannot start, e.g. no token could be obtained.
+     */
+    public UpdateSummary run(String planFile, String applyPlanFile, boolean resume, Shard shard) throws Exception {
+        try {
+            return execute(planFile, applyPlanFile, resume, shard);
+        } finally {
+            // Also when the run fails part way; watch mode builds a new service for every poll
+            closeResources();
+        }
+    }
+
+    private UpdateSummary execute(String planFile, String applyPlanFile, boolean resume, Shard shard) throws Exception {
+        this.shard = shard;
+        if (shard.isSharded()) {
+            logger.log(Level.INFO, "***** Shard : " + shard + label());
+        }
+        boolean asyncMode = planFile == null && Boolean.parseBoolean(configLoader.getProperty("ENABLE.ASYNC.UPDATE.MODE"));
+        if (asyncMode && configLoader.hasProperty("HTTP.TRANSPORT") && "http2".equalsIgnoreCase(configLoader.getProperty("HTTP.TRANSPORT"))) {
+            // The async client only speaks HTTP/1.1, and would silently bypass the HTTP/2 connection
+            throw new IllegalStateException("HTTP.TRANSPORT = http2 is not supported with ENABLE.ASYNC.UPDATE.MODE = true."
+                    + " Set HTTP.TRANSPORT = http1 or disable async mode.");
+        }
+
+        // Initialize SSL context
+        sslContext = initializeSSLContext();
+
+        // Initialize REST request handler
+        restRequest = new RestRequest(configLoader, sslContext);
+
+        // Get access token
+        if (restRequest.getAccessToken() == null) {
+            throw new IllegalStateException("Failed to obtain access token");
+        }
+
+        // Load generic update rules
+        List<UpdateRule> rules = UpdateRule.loadUpdateRules(configLoader);
+        if (rules.isEmpty()) {
+            throw new IllegalStateException("No update rules configured. Please configure UPDATE.RULES in config.properties");
+        }
+        RuleTrie updateRules = RuleTrie.compile(rules);
+        streamingTransform = Boolean.parseBoolean(configLoader.getProperty("ENABLE.STREAMING.TRANSFORM.MODE"));
+        if (streamingTransform && !updateRules.supportsStreaming()) {
+            logger.log(Level.WARNING, "Update rules overlap on nested paths and cannot be streamed. Using tree transform.");
+            streamingTransform = false;
+        }
+
+        skipList = configLoader.getListProperty("API.SKIP.LIST");
+        explicitMode = Boolean.parseBoolean(configLoader.getProperty("ENABLE.EXPLICIT.API.UPDATE.MODE"));
+        explicitList = configLoader.getListProperty("EXPLICIT.API.UPDATE.LIST");
+        contextPrefix = configLoader.getProperty("FILTER.CONTEXT.PREFIX");
+        provider = configLoader.getProperty("FILTER.PROVIDER");
+
+        if (configLoader.hasProperty("API.REDEPLOY.THREAD.SLEEP.TIME")) {
+            logger.log(Level.WARNING, "API.REDEPLOY.THREAD.SLEEP.TIME is no longer used. Request pacing is controlled by RATE.LIMIT.* properties.");
+        }
+        int concurrency = Math.max(1, configLoader.getIntProperty("UPDATE.CONCURRENCY", 1));
+        UpdateSummary summary = new UpdateSummary(name);
+
+        // One NDJSON line per API with its status, phase timings, rule hits and response codes
+        results = ResultStream.open(configLoader, name, rules, resume || watchState != null);
+        if (results != null) {
+            restRequest.setResponseListener(results);
+            logger.log(Level.INFO, "***** Writing per API results to " + results.getPath() + label());
+        }
+
+        // Skip APIs the same rules already handled and nobody modified since
+        if (Boolean.parseBoolean(configLoader.getProperty("ENABLE.FINGERPRINT.INDEX"))) {
+            String indexFile = configLoader.getProperty("FINGERPRINT.INDEX.FILE");
+            fingerprintIndex = FingerprintIndex.load(Paths.get(indexFile.isEmpty() ? "fingerprint-index.tsv" : indexFile),
+                    updateRules.fingerprint());
+        }
+
+        if (planFile != null) {
+            // Dry run: fetch and transform every API, write the changes to the plan, no writes to the publisher
+            APIInventory apis = getAllAPIs();
+            logger.log(Level.INFO, "***** Starting API Update Plan" + label() + " *****");
+            logTotal(apis);
+            int planConcurrency = Math.max(1, configLoader.getIntProperty("PLAN.CONCURRENCY", concurrency));
+            logger.log(Level.INFO, "***** Plan Concurrency : " + planConcurrency);
+            try (UpdatePlan plan = new UpdatePlan(Paths.get(planFile), rules)) {
+                runWorkerPool(shard.filter(apis, summary::recordOtherShard), api -> planAPI(api, updateRules, plan),
+                        planConcurrency, summary);
             }
+            closeStores();
+            summary.log();
+            if (!apis.isComplete()) {
+                logger.log(Level.SEVERE, "***** Only " + apis.getProducedCount() + " APIs were listed. The plan is incomplete.");
+            }
+            restRequest.getRateLimiter().logRates();
+            logCircuitOpenings();
+            closeResources();
+            logger.log(Level.INFO, "***** API Update Plan written to " + planFile + label() + " *****");
+            return summary;
+        }
 
-            List<String> skipList = configLoader.getListProperty("API.SKIP.LIST");
-            boolean explicitMode = Boolean.parseBoolean(configLoader.getProperty("ENABLE.EXPLICIT.API.UPDATE.MODE"));
-            List<String> explicitList = configLoader.getListProperty("EXPLICIT.API.UPDATE.LIST");
-            int threadSleepTime = Integer.parseInt(configLoader.getProperty("API.REDEPLOY.THREAD.SLEEP.TIME"));
-
-            // Process each API
-            for (API api : apis) {
-                logger.log(Level.INFO, "");
-                logger.log(Level.INFO, "***** Starting Processing API with ID :" + api.getId());
-
-                // Check if API should be skipped
-                if (skipList.contains(api.getId())) {
-                    logger.log(Level.INFO, "***** API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + " is defined in APISkipList. Hence Skipping this API");
-                    logger.log(Level.INFO, "***** Finished Processing API with Id : " + api.getId());
-                    continue;
-                }
+        // Record per API progress so an interrupted run can be finished with --resume
+        if (resume || Boolean.parseBoolean(configLoader.getProperty("ENABLE.CHECKPOINT.JOURNAL"))) {
+            String journalFile = configLoader.getProperty("JOURNAL.FILE");
+            Path journalPath = Paths.get(journalFile.isEmpty() ? "update-journal.log" : journalFile);
+            journal = resume
+                    ? CheckpointJournal.resume(journalPath, updateRules.fingerprint())
+                    : CheckpointJournal.create(journalPath, updateRules.fingerprint());
+        }
 
-                // Check explicit mode
-                if (explicitMode && !explicitList.contains(api.getId())) {
-                    logger.log(Level.INFO, "***** Explicit mode enabled. API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + " is not in explicit list. Skipping.");
-                    logger.log(Level.INFO, "***** Finished Processing API with Id : " + api.getId());
-                    continue;
-                }
+        Iterable<API> apis;
+        APIInventory inventory = null;
+        if (applyPlanFile != null) {
+            // Only the APIs the plan changes are fetched, patched and updated
+            List<API> plannedAPIs = UpdatePlan.load(Paths.get(applyPlanFile));
+            apis = plannedAPIs;
+            concurrency = Math.max(1, configLoader.getIntProperty("PLAN.APPLY.CONCURRENCY", concurrency));
+            logger.log(Level.INFO, "***** Applying API Update Plan " + applyPlanFile + label() + " *****");
+            logger.log(Level.INFO, "***** Number Of APIs : " + plannedAPIs.size());
+        } else {
+            // Stream all APIs
+            inventory = getAllAPIs();
+            apis = inventory;
+            logger.log(Level.INFO, "***** Starting API Bulk Update" + label() + " *****");
+            logTotal(inventory);
+        }
 
-                // Check API lifecycle status
-                if (!"PUBLISHED".equals(api.getLifeCycleStatus())) {
-                    logger.log(Level.INFO, "***** API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + " is not in PUBLISHED state. Current state: " + api.getLifeCycleStatus());
-                    logger.log(Level.INFO, "***** Finished Processing API with Id : " + api.getId());
-                    continue;
-                }
+        logger.log(Level.INFO, "***** Update Concurrency : " + concurrency + (asyncMode ? " (async mode)" : ""));
 
-                logger.log(Level.INFO, "***** API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + " is in PUBLISHED State. Proceeding with Update.");
+        if (asyncMode) {
+            asyncRestRequest = new AsyncRestRequest(configLoader, sslContext, restRequest.getRateLimiter(),
+                    restRequest.getDetailsCache(), restRequest.getTokenManager(), restRequest.getRetryPolicy(),
+                    restRequest.getCircuitBreaker());
+            asyncRestRequest.setResponseListener(results);
+        }
+        revisionManager = new RevisionManager(configLoader, restRequest, asyncRestRequest);
+        logger.log(Level.INFO, "***** Revision Retention Limit : " + revisionManager.getRetentionLimit());
+        if (Boolean.parseBoolean(configLoader.getProperty("ENABLE.DEPLOYMENT.STAGE"))) {
+            // Updates only create revisions; gateway deployments run afterwards in their own stage
+            deploymentStage = new DeploymentStage(configLoader, restRequest, journal, fingerprintIndex, summary, results);
+            if (deploymentStage.getCanaryPercent() > 0 && journal == null && watchState == null) {
+                // The held back APIs are already updated; only --resume knows their revisions
+                throw new IllegalStateException("DEPLOY.CANARY.PERCENT needs ENABLE.CHECKPOINT.JOURNAL = true, or APIs held back"
+                        + " by a failed canary wave are never deployed. Enable the journal or set DEPLOY.CANARY.PERCENT = 0.");
+            }
+        }
+        apis = shard.filter(apis, summary::recordOtherShard);
+        if (watchState != null) {
+            apis = watchState.filter(apis);
+        }
+        if (asyncMode) {
+            runAsyncPipeline(apis, updateRules, concurrency, summary);
+            asyncRestRequest.close();
+            asyncRestRequest = null;
+        } else {
+            runWorkerPool(apis, api -> recordOutcome(api, processAPI(api, updateRules)), concurrency, summary);
+        }
+        revisionManager.close();
+        revisionManager = null;
+        if (deploymentStage != null) {
+            deploymentStage.run();
+        }
+        closeStores();
 
-                // Get full API details
-                String apiDetails = restRequest.getAPIDetails(api.getId(), accessToken);
-                if (apiDetails == null) {
-                    logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
-                    continue;
-                }
+        summary.log();
+        summary.setListingComplete(inventory == null || inventory.isComplete());
+        if (inventory != null && !inventory.isComplete()) {
+            logger.log(Level.SEVERE, "***** Only " + inventory.getProducedCount() + " APIs were listed. Re-run to cover the rest.");
+        }
+        restRequest.getRateLimiter().logRates();
+        logCircuitOpenings();
+        closeResources();
+        if (summary.hasFailures()) {
+            logger.log(Level.WARNING, "***** API Bulk Update Completed With Failures" + label() + " *****");
+        } else {
+            logger.log(Level.INFO, "***** API Bulk Update Completed Successfully" + label() + " *****");
+        }
+        return summary;
+    }
 
-                // Apply generic update rules
-                String updatedApiDetails = applyUpdateRules(apiDetails, updateRules);
+    /**
+     * Process APIs on a fixed pool of blocking workers. Each API is handled end to end by a single worker so
+     * its fetch -> update -> revision -> deploy steps always run in order.
+     */
+    private void runWorkerPool(Iterable<API> apis, Function<API, UpdateStatus> processor,
+                               int concurrency, UpdateSummary summary) throws InterruptedException {
+        Set<String> scheduledAPIs = new HashSet<>();
+        // Only take as many APIs from the inventory as the workers can start on soon.
+        Semaphore pending = new Semaphore(concurrency * 2);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, new WorkerThreadFactory(name));
+        for (API api : apis) {
+            if (!scheduledAPIs.add(api.getId())) {
+                logger.log(Level.INFO, "***** API with ID : " + api.getId() + " is already scheduled. Skipping duplicate.");
+                continue;
+            }
+            pending.acquire();
+            workers.submit(() -> {
+                try {
+                    acquireSharedPermit();
+                    try {
+                        if (results != null) {
+                            results.start(api);
+                        }
+                        record(summary, api, processor.apply(api));
+                    } finally {
+                        releaseSharedPermit();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+        workers.shutdown();
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            logger.log(Level.INFO, "***** Waiting for workers. Processed " + summary.getTotal() + " of " + scheduledAPIs.size() + " APIs");
+        }
+    }
 
-                if (updatedApiDetails == null) {
-                    logger.log(Level.INFO, "***** No matching updates applied for API : " + api.getName());
-                    logger.log(Level.INFO, "***** Finished Processing API with Id : " + api.getId());
-                    continue;
+    /**
+     * Process APIs as composed non-blocking pipelines. Up to {@code concurrency} APIs are in flight at once;
+     * the steps of one API are chained so they still run in order, but no thread waits on the network.
+     */
+    private void runAsyncPipeline(Iterable<API> apis, RuleTrie updateRules,
+                                  int concurrency, UpdateSummary summary) throws InterruptedException {
+        Set<String> scheduledAPIs = new HashSet<>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        int transformThreads = configLoader.getIntProperty("ASYNC.TRANSFORM.THREADS", Runtime.getRuntime().availableProcessors());
+        ExecutorService transformExecutor = Executors.newFixedThreadPool(transformThreads, new WorkerThreadFactory(name));
+        for (API api : apis) {
+            if (!scheduledAPIs.add(api.getId())) {
+                logger.log(Level.INFO, "***** API with ID : " + api.getId() + " is already scheduled. Skipping duplicate.");
+                continue;
+            }
+            inFlight.acquire();
+            acquireSharedPermit();
+            CompletableFuture<UpdateStatus> pipeline;
+            try {
+                if (results != null) {
+                    results.start(api);
                 }
+                pipeline = processAPIAsync(api, updateRules, transformExecutor);
+            } catch (RuntimeException e) {
+                // Fails only this API, as a worker of the blocking path would
+                logger.log(Level.SEVERE, "***** Error processing API with ID : " + api.getId(), e);
+                pipeline = CompletableFuture.completedFuture(UpdateStatus.FAILED);
+            }
+            pipeline.thenCompose(status -> recordOutcomeAsync(api, status))
+                    .whenComplete((status, e) -> {
+                        try {
+                            record(summary, api, status == null ? UpdateStatus.FAILED : status);
+                        } finally {
+                            releaseSharedPermit();
+                            inFlight.release();
+                        }
+                    });
+        }
+        // All permits are back once every pipeline has completed.
+        while (!inFlight.tryAcquire(concurrency, 1, TimeUnit.MINUTES)) {
+            logger.log(Level.INFO, "***** Waiting for pipelines. Processed " + summary.getTotal() + " of " + scheduledAPIs.size() + " APIs");
+        }
+        transformExecutor.shutdown();
+    }
 
-                // Update the API with the modified JSON
-                String updateResponse = restRequest.updateAPI(api.getId(), updatedApiDetails, accessToken);
-                if (updateResponse != null) {
-                    logger.log(Level.INFO, "***** API throttling policy updated successfully.");
+    /**
+     * Wait for a permit of the run-wide pool. The pool is fair, so targets take turns instead of the busiest
+     * one starving the rest.
+     */
+    private void acquireSharedPermit() throws InterruptedException {
+        if (sharedPermits != null) {
+            sharedPermits.acquire();
+        }
+    }
 
-                    // Handle revision management
-                    handleRevisionManagement(api, accessToken);
+    private void releaseSharedPermit() {
+        if (sharedPermits != null) {
+            sharedPermits.release();
+        }
+    }
 
-                    logger.log(Level.INFO, "***** Completed Updating API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion());
-                } else {
-                    logger.log(Level.SEVERE, "***** Failed to update API : " + api.getName());
-                } 
+    private void record(UpdateSummary summary, API api, UpdateStatus status) {
+        summary.record(api, status);
+        if (results != null) {
+            results.complete(api, status);
+        }
+    }
 
-                logger.log(Level.INFO, "***** Finished Processing API with Id : " + api.getId());
+    private void recordPhase(API api, String phase, long startNanos) {
+        Metrics.recordPhase(phase, startNanos);
+        if (results != null) {
+            results.recordPhase(api, phase, startNanos);
+        }
+    }
 
-                // Sleep to avoid overwhelming the server
-                Thread.sleep(threadSleepTime);
-            }
+    private void recordRuleHits(API api, int[] hits) {
+        if (results != null) {
+            results.recordRuleHits(api, hits);
+        }
+    }
 
-            logger.log(Level.INFO, "***** API Bulk Update Completed Successfully *****");
+    /**
+     * Close the fingerprint index, journal and result stream. Each is closed only once.
+     */
+    private void closeStores() {
+        if (fingerprintIndex != null) {
+            fingerprintIndex.close();
+            fingerprintIndex = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (results != null) {
+            results.close();
+            results = null;
+        }
+    }
 
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error in main execution", e);
-            System.exit(1);
+    /**
+     * Close everything the run opened, stores first so they are complete before the connections go.
+     */
+    private void closeResources() {
+        if (asyncRestRequest != null) {
+            asyncRestRequest.close();
+            asyncRestRequest = null;
+        }
+        if (revisionManager != null) {
+            revisionManager.close();
+            revisionManager = null;
+        }
+        closeStores();
+        if (restRequest != null) {
+            restRequest.close();
+            restRequest = null;
         }
     }
 
-    private static class UpdateRule {
-        String name;
-        String jsonPath;
-        String oldValue;
-        JsonElement newValue;
+    private void logCircuitOpenings() {
+        int openings = restRequest.getCircuitBreaker().getOpenings();
+        if (openings > 0) {
+            logger.log(Level.WARNING, "***** Publisher was overloaded " + openings + " time(s); requests were paused" + label());
+        }
     }
 
-    private static List<UpdateRule> loadUpdateRules(ConfigLoader configLoader) {
-        List<String> ruleNames = configLoader.getListProperty("UPDATE.RULES");
-        List<UpdateRule> rules = new ArrayList<>();
+    private String label() {
+        return name != null ? " [" + name + "]" : "";
+    }
 
-        for (String ruleName : ruleNames) {
-            String path = configLoader.getProperty(ruleName + ".JSON.PATH");
-            String oldValue = configLoader.getProperty(ruleName + ".OLD.VALUE");
-            String newValueRaw = configLoader.getProperty(ruleName + ".NEW.VALUE");
+    /**
+     * Check skip list, explicit mode and lifecycle state.
+     *
+     * @return SKIPPED if the API must not be processed, null otherwise.
+     */
+    private UpdateStatus checkEligibility(API api) {
+        // Check if API should be skipped
+        if (skipList.contains(api.getId())) {
+            logger.log(Level.INFO, () -> "***** API : " + describe(api) + " is defined in APISkipList. Hence Skipping this API");
+            return UpdateStatus.SKIPPED;
+        }
 
-            if (path.isEmpty() || newValueRaw.isEmpty()) {
-                logger.log(Level.WARNING, "Skipping rule " + ruleName + " due to missing JSON.PATH or NEW.VALUE");
-                continue;
-            }
+        // Check explicit mode
+        if (explicitMode && !explicitList.contains(api.getId())) {
+            logger.log(Level.INFO, () -> "***** Explicit mode enabled. API : " + describe(api) + " is not in explicit list. Skipping.");
+            return UpdateStatus.SKIPPED;
+        }
 
-            UpdateRule rule = new UpdateRule();
-            rule.name = ruleName;
-            rule.jsonPath = path;
-            rule.oldValue = oldValue;
-            rule.newValue = parseValue(newValueRaw);
-            rules.add(rule);
-            logger.log(Level.INFO, "Loaded update rule: " + ruleName + " targeting path: " + path);
+        // Check filters again, the publisher search may match more loosely than a prefix
+        if (!contextPrefix.isEmpty() && (api.getContext() == null || !api.getContext().startsWith(contextPrefix))) {
+            logger.log(Level.INFO, () -> "***** API : " + describe(api) + " does not match FILTER.CONTEXT.PREFIX. Skipping.");
+            return UpdateStatus.SKIPPED;
+        }
+        if (!provider.isEmpty() && !provider.equals(api.getProvider())) {
+            logger.log(Level.INFO, () -> "***** API : " + describe(api) + " does not match FILTER.PROVIDER. Skipping.");
+            return UpdateStatus.SKIPPED;
         }
 
-        return rules;
+        // Check API lifecycle status
+        if (!"PUBLISHED".equals(api.getLifeCycleStatus())) {
+            logger.log(Level.INFO, () -> "***** API : " + describe(api) + " is not in PUBLISHED state. Current state: " + api.getLifeCycleStatus());
+            return UpdateStatus.SKIPPED;
+        }
+
+        logger.log(Level.FINE, () -> "***** API : " + describe(api) + " is in PUBLISHED State. Proceeding with Update.");
+        return null;
     }
 
-    private static JsonElement parseValue(String raw) {
-        String trimmed = raw.trim();
+    private UpdateStatus processAPI(API api, RuleTrie updateRules) {
         try {
-            if (trimmed.startsWith("{") || trimmed.startsWith("[")) {
-                return JsonParser.parseString(trimmed);
+            logger.log(Level.FINE, () -> "***** Starting Processing API with ID :" + api.getId());
+
+            UpdateStatus ineligible = checkEligibility(api);
+            if (ineligible != null) {
+                return ineligible;
             }
-            if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
-                return gson.toJsonTree(Boolean.parseBoolean(trimmed));
+
+            // Finish or skip APIs recorded by an interrupted run
+            UpdateStatus resumed = resumeAPI(api);
+            if (resumed != null) {
+                return resumed;
             }
-            if (trimmed.matches("-?\\d+(\\.\\d+)?")) {
-                if (trimmed.contains(".")) {
-                    return gson.toJsonTree(Double.parseDouble(trimmed));
-                } else {
-                    return gson.toJsonTree(Long.parseLong(trimmed));
+            if (isUnchangedSinceLastRun(api)) {
+                return UpdateStatus.UNCHANGED;
+            }
+
+            String updatedApiDetails = null;
+            JsonObject updatedApiJson = null;
+            if (api.getPatch() != null) {
+                // Apply the planned changes to the current definition
+                long start = System.nanoTime();
+                String apiDetails = restRequest.getAPIDetails(api.getId(), api.getLastUpdatedTime());
+                recordPhase(api, "fetch", start);
+                if (apiDetails == null) {
+                    logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
+                    return UpdateStatus.FAILED;
+                }
+                start = System.nanoTime();
+                try {
+                    updatedApiDetails = JsonPatch.apply(apiDetails, api.getPatch());
+                } catch (JsonPatch.PatchException e) {
+                    logger.log(Level.SEVERE, "***** Plan no longer applies to API : " + describe(api) + ". " + e.getMessage());
+                    return UpdateStatus.FAILED;
+                }
+                recordPhase(api, "transform", start);
+            } else if (api.getDetails() != null) {
+                // Definition was already fetched while building the inventory
+                long start = System.nanoTime();
+                updatedApiDetails = transform(api, api.getDetails(), updateRules);
+                recordPhase(api, "transform", start);
+                api.setDetails(null);
+            } else if (streamingTransform) {
+                // Apply the rules while the API details stream in, without building the JSON tree.
+                // Fetch and transform overlap, so both are recorded as fetch.
+                long start = System.nanoTime();
+                RuleTrie.Result result = restRequest.getAPIDetails(api.getId(), api.getLastUpdatedTime(),
+                        updateRules::applyStreaming);
+                recordPhase(api, "fetch", start);
+                if (result == null) {
+                    logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
+                    return UpdateStatus.FAILED;
+                }
+                recordRuleHits(api, result.getHits());
+                updatedApiDetails = result.getPayload();
+            } else {
+                // Get full API details, parsed into a tree as they are read from the connection
+                long start = System.nanoTime();
+                JsonObject apiJson = restRequest.getAPIDetails(api.getId(), api.getLastUpdatedTime(),
+                        payload -> JsonParser.parseReader(payload).getAsJsonObject());
+                recordPhase(api, "fetch", start);
+                if (apiJson == null) {
+                    logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
+                    return UpdateStatus.FAILED;
+                }
+
+                // Apply generic update rules in place; the tree is written straight back by the update
+                start = System.nanoTime();
+                int[] hits = new int[updateRules.getRules().size()];
+                if (updateRules.apply(apiJson, hits) > 0) {
+                    updatedApiJson = apiJson;
                 }
+                recordRuleHits(api, hits);
+                recordPhase(api, "transform", start);
+            }
+            checkpoint(api, CheckpointJournal.State.FETCHED, null);
+
+            if (updatedApiDetails == null && updatedApiJson == null) {
+                logger.log(Level.INFO, () -> "***** No matching updates applied for API : " + describe(api));
+                return UpdateStatus.UNCHANGED;
+            }
+
+            // Update the API with the modified JSON
+            long updateStart = System.nanoTime();
+            API updated = updatedApiJson != null
+                    ? restRequest.updateAPI(api.getId(), updatedApiJson)
+                    : restRequest.updateAPI(api.getId(), updatedApiDetails);
+            recordPhase(api, "update", updateStart);
+            if (updated == null) {
+                logger.log(Level.SEVERE, "***** Failed to update API : " + describe(api));
+                return UpdateStatus.FAILED;
             }
+            logger.log(Level.INFO, () -> "***** API updated successfully : " + describe(api));
+            // The next listing reports the time of our own update
+            api.setLastUpdatedTime(updated.getLastUpdatedTime());
+            checkpoint(api, CheckpointJournal.State.UPDATED, null);
+
+            // Handle revision management
+            return finishRevisionManagement(api, handleRevisionManagement(api));
         } catch (Exception e) {
-            logger.log(Level.WARNING, "Failed to parse value '" + raw + "' as JSON. Falling back to string.");
+            logger.log(Level.SEVERE, "***** Error processing API with ID : " + api.getId(), e);
+            return UpdateStatus.FAILED;
+        } finally {
+            logger.log(Level.FINE, () -> "***** Finished Processing API with Id : " + api.getId());
         }
-        return gson.toJsonTree(trimmed);
     }
 
-    private static String applyUpdateRules(String apiDetails, List<UpdateRule> rules) {
+    /**
+     * Dry run of {@link #processAPI}: fetch and transform the API and write the changes to the plan.
+     */
+    private UpdateStatus planAPI(API api, RuleTrie updateRules, UpdatePlan plan) {
         try {
-            JsonObject apiJson = JsonParser.parseString(apiDetails).getAsJsonObject();
-            AtomicBoolean hasUpdates = new AtomicBoolean(false);
-
-            for (UpdateRule rule : rules) {
-                List<String> pathSegments = new ArrayList<>(Arrays.asList(rule.jsonPath.split("\\.")));
-                applyRuleRecursive(apiJson, pathSegments, rule, hasUpdates);
+            UpdateStatus ineligible = checkEligibility(api);
+            if (ineligible != null) {
+                return ineligible;
+            }
+            if (isUnchangedSinceLastRun(api)) {
+                return UpdateStatus.UNCHANGED;
             }
 
-            // Return the updated JSON string if there were updates, otherwise null
-            return hasUpdates.get() ? apiJson.toString() : null;
+            String apiDetails = api.getDetails();
+            api.setDetails(null);
+            if (apiDetails == null) {
+                apiDetails = restRequest.getAPIDetails(api.getId(), api.getLastUpdatedTime());
+            }
+            if (apiDetails == null) {
+                logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
+                return UpdateStatus.FAILED;
+            }
 
+            int[] hits = new int[updateRules.getRules().size()];
+            JsonArray patch = new JsonArray();
+            int changes = updateRules.apply(JsonParser.parseString(apiDetails).getAsJsonObject(), hits, patch);
+            recordRuleHits(api, hits);
+            if (changes == 0) {
+                logger.log(Level.INFO, () -> "***** No matching updates for API : " + describe(api));
+                return UpdateStatus.UNCHANGED;
+            }
+            plan.add(api, patch, hits);
+            logger.log(Level.INFO, () -> "***** Planned " + patch.size() / 2 + " change(s) for API : " + describe(api));
+            return UpdateStatus.PLANNED;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error applying update rules", e);
-            return null;
+            logger.log(Level.SEVERE, "***** Error planning API with ID : " + api.getId(), e);
+            return UpdateStatus.FAILED;
         }
     }
 
-    private static void applyRuleRecursive(JsonElement currentElement, List<String> pathSegments, UpdateRule rule,
-                                           AtomicBoolean hasUpdates) {
-        if (pathSegments.isEmpty()) {
-            return;
+    /**
+     * Non-blocking version of {@link #processAPI}: details -> transform -> update -> revisions -> deploy.
+     * Rule evaluation runs on the transform executor so it never occupies an I/O dispatcher thread.
+     */
+    private CompletableFuture<UpdateStatus> processAPIAsync(API api, RuleTrie updateRules,
+                                                                   ExecutorService transformExecutor) {
+        logger.log(Level.FINE, () -> "***** Starting Processing API with ID :" + api.getId());
+        UpdateStatus ineligible = checkEligibility(api);
+        if (ineligible != null) {
+            logger.log(Level.FINE, () -> "***** Finished Processing API with Id : " + api.getId());
+            return CompletableFuture.completedFuture(ineligible);
         }
-
-        String segment = pathSegments.get(0);
-        boolean isArray = segment.endsWith("[]");
-        String key = isArray ? segment.substring(0, segment.length() - 2) : segment;
-        List<String> remaining = pathSegments.size() > 1
-                ? pathSegments.subList(1, pathSegments.size())
-                : Collections.emptyList();
-
-        if (!currentElement.isJsonObject()) {
-            return;
+        CompletableFuture<UpdateStatus> resumed = resumeAPIAsync(api);
+        if (resumed != null) {
+            return resumed.whenComplete((status, e) -> logger.log(Level.FINE, () -> "***** Finished Processing API with Id : " + api.getId()));
         }
-
-        JsonObject currentObject = currentElement.getAsJsonObject();
-        if (!currentObject.has(key)) {
-            return;
+        if (isUnchangedSinceLastRun(api)) {
+            logger.log(Level.FINE, () -> "***** Finished Processing API with Id : " + api.getId());
+            return CompletableFuture.completedFuture(UpdateStatus.UNCHANGED);
         }
 
-        JsonElement child = currentObject.get(key);
-
-        if (isArray) {
-            if (child != null && child.isJsonArray()) {
-                JsonArray array = child.getAsJsonArray();
-                for (int i = 0; i < array.size(); i++) {
-                    JsonElement arrayElement = array.get(i);
+        long fetchStart = System.nanoTime();
+        CompletableFuture<String> details;
+        if (api.getDetails() != null) {
+            details = CompletableFuture.completedFuture(api.getDetails());
+            api.setDetails(null);
+        } else {
+            details = asyncRestRequest.getAPIDetails(api.getId(), api.getLastUpdatedTime());
+        }
+        return details
+                .thenComposeAsync(apiDetails -> {
+                    recordPhase(api, "fetch", fetchStart);
+                    if (apiDetails == null) {
+                        logger.log(Level.SEVERE, "***** Failed to get API details for " + api.getId());
+                        return CompletableFuture.completedFuture(UpdateStatus.FAILED);
+                    }
 
-                    if (remaining.isEmpty()) {
-                        // Updating array values directly (e.g., policies[])
-                        if (shouldReplace(arrayElement, rule.oldValue)) {
-                            array.set(i, deepCopy(rule.newValue));
-                            hasUpdates.set(true);
-                            logger.log(Level.INFO, "***** Updated array element in path '" + rule.jsonPath + "' using rule " + rule.name);
+                    long transformStart = System.nanoTime();
+                    String updatedApiDetails;
+                    if (api.getPatch() != null) {
+                        try {
+                            updatedApiDetails = JsonPatch.apply(apiDetails, api.getPatch());
+                        } catch (JsonPatch.PatchException e) {
+                            logger.log(Level.SEVERE, "***** Plan no longer applies to API : " + describe(api) + ". " + e.getMessage());
+                            return CompletableFuture.completedFuture(UpdateStatus.FAILED);
                         }
                     } else {
-                        applyRuleRecursive(arrayElement, remaining, rule, hasUpdates);
+                        updatedApiDetails = transform(api, apiDetails, updateRules);
                     }
-                }
+                    recordPhase(api, "transform", transformStart);
+                    checkpointAsync(api, CheckpointJournal.State.FETCHED, null);
+                    if (updatedApiDetails == null) {
+                        logger.log(Level.INFO, () -> "***** No matching updates applied for API : " + describe(api));
+                        return CompletableFuture.completedFuture(UpdateStatus.UNCHANGED);
+                    }
+
+                    long updateStart = System.nanoTime();
+                    return asyncRestRequest.updateAPI(api.getId(), updatedApiDetails)
+                            .thenCompose(updateResponse -> {
+                                recordPhase(api, "update", updateStart);
+                                if (updateResponse == null) {
+                                    logger.log(Level.SEVERE, "***** Failed to update API : " + describe(api));
+                                    return CompletableFuture.completedFuture(UpdateStatus.FAILED);
+                                }
+                                logger.log(Level.INFO, () -> "***** API updated successfully : " + describe(api));
+                                api.setLastUpdatedTime(getLastUpdatedTime(updateResponse));
+                                return checkpointAsync(api, CheckpointJournal.State.UPDATED, null)
+                                        .thenCompose(ignored -> handleRevisionManagementAsync(api))
+                                        .thenApply(deployed -> finishRevisionManagement(api, deployed));
+                            });
+                }, transformExecutor)
+                .exceptionally(e -> {
+                    logger.log(Level.SEVERE, "***** Error processing API with ID : " + api.getId(), e);
+                    return UpdateStatus.FAILED;
+                })
+                .whenComplete((status, e) -> logger.log(Level.FINE, () -> "***** Finished Processing API with Id : " + api.getId()));
+    }
+
+    /**
+     * Apply the rules to a payload that is already in memory, streaming it if the streaming mode is enabled.
+     */
+    private String transform(API api, String apiDetails, RuleTrie updateRules) {
+        try {
+            if (streamingTransform) {
+                RuleTrie.Result result = updateRules.applyStreaming(new StringReader(apiDetails));
+                recordRuleHits(api, result.getHits());
+                return result.getPayload();
             }
+            JsonObject apiJson = JsonParser.parseString(apiDetails).getAsJsonObject();
+            int[] hits = new int[updateRules.getRules().size()];
+            int changes = updateRules.apply(apiJson, hits);
+            recordRuleHits(api, hits);
+            return changes > 0 ? apiJson.toString() : null;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error applying update rules", e);
+            return null;
+        }
+    }
+
+    private String describe(API api) {
+        return api.getName() + "|" + api.getContext() + "|" + api.getVersion();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        WorkerThreadFactory(String target) {
+            this.prefix = target != null ? target + "-worker-" : "api-worker-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static void logTotal(APIInventory inventory) throws InterruptedException {
+        int total = inventory.awaitTotal();
+        if (total < 0) {
+            logger.log(Level.SEVERE, "***** Number Of APIs : unknown. The first page of the API list could not be fetched.");
         } else {
-            if (remaining.isEmpty()) {
-                // Final segment - perform replacement
-                if (shouldReplace(child, rule.oldValue)) {
-                    currentObject.add(key, deepCopy(rule.newValue));
-                    hasUpdates.set(true);
-                    logger.log(Level.INFO, "***** Updated path '" + rule.jsonPath + "' using rule " + rule.name);
-                }
-            } else {
-                applyRuleRecursive(child, remaining, rule, hasUpdates);
+            logger.log(Level.INFO, "***** Number Of APIs : " + total);
+        }
+    }
+
+    /**
+     * Start streaming the Publisher API list. APIs are handed to the update stage as soon as each page lands.
+     */
+    private APIInventory getAllAPIs() {
+        int limit = Integer.parseInt(configLoader.getProperty("MAX.API.LIMIT"));
+        int prefetchPages = configLoader.getIntProperty("INVENTORY.PREFETCH.PAGES", 4);
+        int bufferSize = configLoader.getIntProperty("INVENTORY.BUFFER.SIZE", 2 * limit);
+        if (explicitMode) {
+            // Fetch the listed APIs directly instead of enumerating the whole publisher
+            List<String> ids = new ArrayList<>(explicitList);
+            ids.removeAll(skipList);
+            ids.removeIf(id -> !shard.owns(id));
+            if (journal != null) {
+                // Completed in the run being resumed, no need to fetch them again
+                ids.removeIf(journal::isCompleted);
             }
+            logger.log(Level.INFO, () -> "***** Explicit mode enabled. Fetching " + ids.size() + " listed APIs directly.");
+            return new APIInventory(restRequest, limit, prefetchPages, bufferSize, null)
+                    .withExplicitIds(ids).start();
         }
+
+        String query = buildSearchQuery();
+        if (query != null) {
+            logger.log(Level.INFO, () -> "***** Listing APIs with search query : " + query);
+        }
+        return new APIInventory(restRequest, limit, prefetchPages, bufferSize, query).start();
     }
 
-    private static boolean shouldReplace(JsonElement existing, String expectedOldValue) {
-        if (expectedOldValue == null || expectedOldValue.isEmpty()) {
-            return true;
+    /**
+     * Build the publisher search query that filters the listing server side, so APIs that would be skipped
+     * are never listed. Returns null when server side filtering is disabled.
+     */
+    private String buildSearchQuery() {
+        if (configLoader.hasProperty("ENABLE.SERVER.SIDE.FILTER")
+                && !Boolean.parseBoolean(configLoader.getProperty("ENABLE.SERVER.SIDE.FILTER"))) {
+            return null;
         }
-        if (existing == null || existing.isJsonNull()) {
-            return false;
+        List<String> conditions = new ArrayList<>();
+        conditions.add("status:PUBLISHED");
+        if (!contextPrefix.isEmpty()) {
+            conditions.add("context:" + contextPrefix);
+        }
+        if (!provider.isEmpty()) {
+            conditions.add("provider:" + provider);
+        }
+        for (String tag : configLoader.getListProperty("FILTER.TAGS")) {
+            conditions.add("tag:" + tag);
         }
+        return String.join(" ", conditions);
+    }
+
+    private boolean handleRevisionManagement(API api) {
+        try {
+            // One lookup of revisions and deployments decides what to delete and where to deploy
+            long start = System.nanoTime();
+            RevisionManager.Plan plan = revisionManager.plan(api.getId());
+            logRevisionPlan(api, plan);
+            revisionManager.prune(api.getId(), plan);
+
+            // Create new revision
+            String newRevisionId = restRequest.createRevision(api.getId());
+            recordPhase(api, "revision", start);
+            if (newRevisionId == null) {
+                return false;
+            }
+            logger.log(Level.INFO, () -> "***** New Revision created with id : " + newRevisionId + " for API : " + describe(api));
+            checkpoint(api, CheckpointJournal.State.REVISION_CREATED, newRevisionId);
 
-        if (existing.isJsonPrimitive()) {
-            return expectedOldValue.equals(existing.getAsString());
+            // Deploy revision
+            return deployRevision(api, newRevisionId, plan.getDeploymentPayload());
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error in revision management", e);
+            return false;
         }
-        return expectedOldValue.equals(existing.toString());
     }
 
-    private static JsonElement deepCopy(JsonElement element) {
-        return element == null ? null : JsonParser.parseString(element.toString());
+    private boolean deployRevision(API api, String revisionId, String deploymentPayload) {
+        if (deploymentStage != null) {
+            deploymentStage.submit(api, revisionId, deploymentPayload);
+            return true;
+        }
+        logger.log(Level.FINE, () -> "***** New Revision going to be deployed with payload : " + deploymentPayload);
+        long start = System.nanoTime();
+        boolean deployed = restRequest.deployRevision(api.getId(), revisionId, deploymentPayload);
+        recordPhase(api, "deploy", start);
+        return deployed;
     }
 
-    private static List<API> getAllAPIs(String accessToken) {
-        List<API> allAPIs = new ArrayList<>();
-        int limit = Integer.parseInt(configLoader.getProperty("MAX.API.LIMIT"));
-        int offset = 0;
+    private CompletableFuture<Boolean> handleRevisionManagementAsync(API api) {
+        long start = System.nanoTime();
+        return revisionManager.planAsync(api.getId())
+                .thenCompose(plan -> {
+                    logRevisionPlan(api, plan);
+                    return revisionManager.pruneAsync(api.getId(), plan)
+                            .thenCompose(ignored -> asyncRestRequest.createRevision(api.getId()))
+                            .thenCompose(newRevisionId -> {
+                                recordPhase(api, "revision", start);
+                                if (newRevisionId == null) {
+                                    return CompletableFuture.completedFuture(false);
+                                }
+                                logger.log(Level.INFO, () -> "***** New Revision created with id : " + newRevisionId + " for API : " + describe(api));
+                                return checkpointAsync(api, CheckpointJournal.State.REVISION_CREATED, newRevisionId)
+                                        .thenCompose(ignored -> deployRevisionAsync(api, newRevisionId, plan.getDeploymentPayload()));
+                            });
+                });
+    }
 
-        try {
-            while (true) {
-                String response = restRequest.getAPIs(limit, offset, accessToken);
-                if (response == null) {
-                    break;
-                }
+    private CompletableFuture<Boolean> deployRevisionAsync(API api, String revisionId, String deploymentPayload) {
+        if (deploymentStage != null) {
+            deploymentStage.submit(api, revisionId, deploymentPayload);
+            return CompletableFuture.completedFuture(true);
+        }
+        logger.log(Level.FINE, () -> "***** New Revision going to be deployed with payload : " + deploymentPayload);
+        long start = System.nanoTime();
+        return asyncRestRequest.deployRevision(api.getId(), revisionId, deploymentPayload)
+                .whenComplete((deployed, e) -> recordPhase(api, "deploy", start));
+    }
 
-                JsonObject jsonResponse = JsonParser.parseString(response).getAsJsonObject();
-                JsonArray apiList = jsonResponse.getAsJsonArray("list");
+    private void logRevisionPlan(API api, RevisionManager.Plan plan) {
+        logger.log(Level.FINE, () -> "***** Revision Count for API : " + describe(api) + " is : " + plan.getRevisionCount());
+        if (!plan.getDeletions().isEmpty()) {
+            logger.log(Level.INFO, () -> "***** Revision Count for API is " + plan.getRevisionCount() + ". Deleting "
+                    + plan.getDeletions().size() + " Oldest Revision(s).");
+        }
+    }
 
-                if (apiList == null || apiList.size() == 0) {
-                    break;
-                }
+    /**
+     * Pick up an API where an interrupted run left it: skip it if it was completed, or finish its revision
+     * and deployment if it was already updated.
+     *
+     * @return the outcome, or null if the API has to be processed from the start.
+     */
+    private UpdateStatus resumeAPI(API api) {
+        CheckpointJournal.Entry previous = getPrevious(api);
+        if (previous == null) {
+            return null;
+        }
+        switch (previous.getState()) {
+            case DEPLOYED:
+            case UNCHANGED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " was completed in the previous run. Skipping.");
+                return UpdateStatus.SKIPPED;
+            case UPDATED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " was updated in the previous run. Finishing revision management.");
+                return finishRevisionManagement(api, handleRevisionManagement(api));
+            case REVISION_CREATED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " has revision " + previous.getRevisionId()
+                        + " from the previous run. Deploying it.");
+                return finishRevisionManagement(api, deployRevision(api, previous.getRevisionId(),
+                        revisionManager.getDeploymentPayload(api.getId())));
+            default:
+                return null;
+        }
+    }
 
-                for (int i = 0; i < apiList.size(); i++) {
-                    JsonObject apiJson = apiList.get(i).getAsJsonObject();
-                    API api = gson.fromJson(apiJson, API.class);
-                    allAPIs.add(api);
-                }
+    private CompletableFuture<UpdateStatus> resumeAPIAsync(API api) {
+        CheckpointJournal.Entry previous = getPrevious(api);
+        if (previous == null) {
+            return null;
+        }
+        switch (previous.getState()) {
+            case DEPLOYED:
+            case UNCHANGED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " was completed in the previous run. Skipping.");
+                return CompletableFuture.completedFuture(UpdateStatus.SKIPPED);
+            case UPDATED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " was updated in the previous run. Finishing revision management.");
+                return handleRevisionManagementAsync(api).thenApply(deployed -> finishRevisionManagement(api, deployed));
+            case REVISION_CREATED:
+                logger.log(Level.INFO, () -> "***** API : " + describe(api) + " has revision " + previous.getRevisionId()
+                        + " from the previous run. Deploying it.");
+                return revisionManager.getDeploymentPayloadAsync(api.getId())
+                        .thenCompose(deploymentPayload -> deployRevisionAsync(api, previous.getRevisionId(), deploymentPayload))
+                        .thenApply(deployed -> finishRevisionManagement(api, deployed));
+            default:
+                return null;
+        }
+    }
 
-                // Check pagination
-                JsonObject pagination = jsonResponse.getAsJsonObject("pagination");
-                if (pagination != null) {
-                    int total = pagination.get("total").getAsInt();
-                    if (offset + limit >= total) {
-                        break;
-                    }
-                    offset += limit;
-                } else {
-                    break;
-                }
+    /**
+     * @return the journal entry of the API, or in watch mode a revision the previous poll did not deploy.
+     */
+    private CheckpointJournal.Entry getPrevious(API api) {
+        CheckpointJournal.Entry previous = journal != null ? journal.getPrevious(api.getId()) : null;
+        if (previous == null && watchState != null) {
+            String revisionId = watchState.takePendingRevision(api.getId());
+            if (revisionId != null) {
+                previous = new CheckpointJournal.Entry(CheckpointJournal.State.REVISION_CREATED, revisionId);
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error fetching APIs", e);
         }
+        return previous;
+    }
 
-        return allAPIs;
+    private boolean isUnchangedSinceLastRun(API api) {
+        if (fingerprintIndex == null || !fingerprintIndex.isUnchanged(api)) {
+            return false;
+        }
+        logger.log(Level.INFO, () -> "***** API : " + describe(api) + " is unchanged since the last run with the same rules. Skipping.");
+        return true;
     }
 
-    private static void handleRevisionManagement(API api, String accessToken) {
+    /**
+     * The next listing reports the time of our own update, so take it from the PUT response.
+     */
+    private String getLastUpdatedTime(String updateResponse) {
         try {
-            // Get revision count
-            int revisionCount = restRequest.getRevisionCount(api.getId(), accessToken);
-            logger.log(Level.INFO, "***** Revision Count for API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + " is : " + revisionCount);
-
-            // Delete oldest revision if count is 5
-            if (revisionCount >= 5) {
-                logger.log(Level.INFO, "***** Revision Count for API is " + revisionCount + ". Deleting Oldest Revision.");
-                String oldestRevisionId = restRequest.getOldestRevisionId(api.getId(), accessToken);
-                if (oldestRevisionId != null) {
-                    restRequest.deleteRevision(api.getId(), oldestRevisionId, accessToken);
-                }
-            }
+            return gson.fromJson(updateResponse, API.class).getLastUpdatedTime();
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
-            // Create new revision
-            String newRevisionId = restRequest.createRevision(api.getId(), accessToken);
-            if (newRevisionId != null) {
-                logger.log(Level.INFO, "***** New Revision created with id : " + newRevisionId + " for API : " + api.getName() + "|" + api.getContext() + "|" + api.getVersion());
-
-                // Deploy revision
-                String deploymentPayload = restRequest.getDeploymentEnvironments(api.getId(), accessToken);
-                logger.log(Level.INFO, "***** New Revision going to be deployed with payload : " + deploymentPayload);
-                restRequest.deployRevision(api.getId(), newRevisionId, deploymentPayload, accessToken);
-            }
+    private UpdateStatus finishRevisionManagement(API api, boolean deployed) {
+        if (!deployed) {
+            logger.log(Level.SEVERE, "***** Revision management failed for API : " + describe(api));
+            return UpdateStatus.FAILED;
+        }
+        if (deploymentStage != null) {
+            logger.log(Level.INFO, () -> "***** Revision of API : " + describe(api) + " queued for deployment");
+            return UpdateStatus.DEPLOY_PENDING;
+        }
+        logger.log(Level.INFO, () -> "***** Completed Updating API : " + describe(api));
+        return UpdateStatus.UPDATED;
+    }
 
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error in revision management", e);
+    /**
+     * Journal a step of an API and wait until the record is on disk. No-op without a journal.
+     */
+    private void checkpoint(API api, CheckpointJournal.State state, String revisionId) {
+        if (journal != null) {
+            journal.record(api.getId(), state, revisionId);
         }
     }
 
-    private static void initializeSSLContext() {
-        try {
-            String truststorePath = configLoader.getProperty("TRUSTSTORE.PATH");
-            String truststorePassword = configLoader.getProperty("TRUSTSTORE.PASSWORD");
+    private CompletableFuture<Void> checkpointAsync(API api, CheckpointJournal.State state, String revisionId) {
+        return journal != null ? journal.append(api.getId(), state, revisionId) : CompletableFuture.completedFuture(null);
+    }
 
-            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            try (FileInputStream trustStoreStream = new FileInputStream(truststorePath)) {
-                trustStore.load(trustStoreStream, truststorePassword.toCharArray());
+    /**
+     * Journal the final outcome of an API. Skipped APIs are not recorded; they are re-evaluated on resume.
+     */
+    private UpdateStatus recordOutcome(API api, UpdateStatus status) {
+        recordOutcomeAsync(api, status).join();
+        return status;
+    }
+
+    private CompletableFuture<UpdateStatus> recordOutcomeAsync(API api, UpdateStatus status) {
+        if (fingerprintIndex != null) {
+            if (status == UpdateStatus.UPDATED || status == UpdateStatus.UNCHANGED) {
+                fingerprintIndex.record(api);
+            } else if (status == UpdateStatus.FAILED) {
+                fingerprintIndex.remove(api.getId());
             }
+        }
+        CheckpointJournal.State state = status == UpdateStatus.UPDATED ? CheckpointJournal.State.DEPLOYED
+                : status == UpdateStatus.UNCHANGED ? CheckpointJournal.State.UNCHANGED
+                : status == UpdateStatus.FAILED ? CheckpointJournal.State.FAILED
+                : null;
+        if (state == null) {
+            return CompletableFuture.completedFuture(status);
+        }
+        return checkpointAsync(api, state, null).thenApply(ignored -> status);
+    }
 
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init(trustStore);
+    /**
+     * Load the trust store into an SSLContext. Targets that use the same trust store share one context, and
+     * with it the TLS session cache, so connections to a shared publisher resume sessions.
+     */
+    private SSLContext initializeSSLContext() {
+        String truststorePath = configLoader.getProperty("TRUSTSTORE.PATH");
+        String truststorePassword = configLoader.getProperty("TRUSTSTORE.PASSWORD");
+        return sslContexts.computeIfAbsent(truststorePath + "\n" + truststorePassword, key -> {
+            try {
+                KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                try (FileInputStream trustStoreStream = new FileInputStream(truststorePath)) {
+                    trustStore.load(trustStoreStream, truststorePassword.toCharArray());
+                }
 
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, tmf.getTrustManagers(), null);
+                TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                tmf.init(trustStore);
 
-            HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-            HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, tmf.getTrustManagers(), null);
 
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed to initialize SSL context", e);
-            System.exit(1);
-        }
+                return sslContext;
+
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to initialize SSL context from " + truststorePath, e);
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.sample.updater;
+
+/**
+ * Final outcome of processing a single API.
+ */
+public enum UpdateStatus {
+    UPDATED,
+    // Updated and revised, deployment queued for the deployment stage
+    DEPLOY_PENDING,
+    // Changes found and written to the plan (plan mode)
+    PLANNED,
+    UNCHANGED,
+    SKIPPED,
+    FAILED
+}
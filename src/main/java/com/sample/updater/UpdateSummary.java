@@ -0,0 +1,156 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+import com.sample.utilities.Metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread-safe aggregation of per-API outcomes collected by the update workers.
+ */
+public class UpdateSummary {
+
+    private static final Logger logger = Logger.getLogger(UpdateSummary.class.getName());
+    private final Map<UpdateStatus, AtomicInteger> counts = new EnumMap<>(UpdateStatus.class);
+    private final ConcurrentLinkedQueue<String> failedAPIs = new ConcurrentLinkedQueue<>();
+    private final Set<String> unfinishedIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> pendingRevisions = new ConcurrentHashMap<>();
+    private volatile boolean listingComplete = true;
+    private final AtomicInteger otherShards = new AtomicInteger();
+    private final long startTime = System.currentTimeMillis();
+    private final String name;
+
+    public UpdateSummary() {
+        this(null);
+    }
+
+    /**
+     * @param name target the summary belongs to in a multi-target run, or null.
+     */
+    public UpdateSummary(String name) {
+        this.name = name;
+        for (UpdateStatus status : UpdateStatus.values()) {
+            counts.put(status, new AtomicInteger());
+        }
+    }
+
+    public void record(API api, UpdateStatus status) {
+        counts.get(status).incrementAndGet();
+        Metrics.countAPI(status.name(), 1);
+        if (status == UpdateStatus.FAILED) {
+            failedAPIs.add(api.getId() + " (" + api.getName() + "|" + api.getContext() + "|" + api.getVersion() + ")");
+        }
+        if (status == UpdateStatus.FAILED || status == UpdateStatus.DEPLOY_PENDING) {
+            unfinishedIds.add(api.getId());
+        } else {
+            unfinishedIds.remove(api.getId());
+        }
+    }
+
+    /**
+     * Replace the status an API was recorded with, once a later stage has finished it.
+     */
+    public void resolve(API api, UpdateStatus previous, UpdateStatus status) {
+        counts.get(previous).decrementAndGet();
+        Metrics.countAPI(previous.name(), -1);
+        record(api, status);
+    }
+
+    /**
+     * Count an API that was listed but belongs to another shard. It is not part of the total.
+     */
+    public void recordOtherShard(API api) {
+        otherShards.incrementAndGet();
+    }
+
+    public int getOtherShardCount() {
+        return otherShards.get();
+    }
+
+    public int getCount(UpdateStatus status) {
+        return counts.get(status).get();
+    }
+
+    public int getTotal() {
+        int total = 0;
+        for (AtomicInteger count : counts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public List<String> getFailedAPIs() {
+        return new ArrayList<>(failedAPIs);
+    }
+
+    /**
+     * @return ids of the APIs that failed or are still waiting for deployment.
+     */
+    public Set<String> getUnfinishedIds() {
+        return new HashSet<>(unfinishedIds);
+    }
+
+    /**
+     * Note a revision that was created but not deployed, so watch mode can deploy it at the next poll.
+     */
+    public void recordPendingRevision(String apiId, String revisionId) {
+        pendingRevisions.put(apiId, revisionId);
+    }
+
+    /**
+     * @return revisions that were created but not deployed, by API id.
+     */
+    public Map<String, String> getPendingRevisions() {
+        return new HashMap<>(pendingRevisions);
+    }
+
+    /**
+     * @return false if the publisher listing broke off, so APIs may be missing from this run.
+     */
+    public boolean isListingComplete() {
+        return listingComplete;
+    }
+
+    public void setListingComplete(boolean listingComplete) {
+        this.listingComplete = listingComplete;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    public boolean hasFailures() {
+        // APIs still pending deployment were held back by a failed canary wave
+        return getCount(UpdateStatus.FAILED) > 0 || getCount(UpdateStatus.DEPLOY_PENDING) > 0;
+    }
+
+    public void log() {
+        long elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000;
+        logger.log(Level.INFO, "***** Update Summary" + (name != null ? " [" + name + "]" : "") + " *****");
+        logger.log(Level.INFO, "***** Processed : " + getTotal() + " APIs in " + elapsedSeconds + "s");
+        for (UpdateStatus status : UpdateStatus.values()) {
+            logger.log(Level.INFO, "***** " + status + " : " + getCount(status));
+        }
+        if (otherShards.get() > 0) {
+            logger.log(Level.INFO, "***** Left to other shards : " + otherShards.get());
+        }
+        for (String failed : failedAPIs) {
+            logger.log(Level.SEVERE, "***** Failed API : " + failed);
+        }
+    }
+}
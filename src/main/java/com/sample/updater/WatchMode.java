@@ -0,0 +1,185 @@
+package com.sample.updater;
+
+import com.sample.utilities.ConfigLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long running alternative to a scheduled full sweep, started with {@code --watch}.
+ *
+ * Every WATCH.INTERVAL seconds the publisher's API list is polled and only APIs created or changed since the
+ * previous poll (see {@link WatchState}) are fetched and updated. Listing is a few paged requests, so a quiet
+ * poll costs a token and a handful of list requests instead of one request per API.
+ *
+ * The configuration file is re-read when it changes. If the update rules change, the next poll evaluates
+ * every API against the new rules. A configuration without valid rules is rejected and the previous one is
+ * kept. On shutdown the poll in progress is finished before the process exits.
+ */
+public class WatchMode {
+
+    private static final Logger logger = Logger.getLogger(WatchMode.class.getName());
+
+    private final String configFile;
+    private final Shard shard;
+    private ConfigLoader configLoader;
+    private FileTime configModified;
+    private final Object sleepLock = new Object();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean stopping;
+
+    /**
+     * @param configLoader configuration already loaded from {@code configFile}, with the shard's file names applied.
+     */
+    public WatchMode(String configFile, ConfigLoader configLoader, Shard shard) {
+        this.configFile = configFile;
+        this.configLoader = configLoader;
+        this.shard = shard;
+        this.configModified = lastModified();
+    }
+
+    /**
+     * Poll until the process is stopped, or WATCH.MAX.POLLS polls have run if it is set.
+     */
+    public void run() throws InterruptedException {
+        int interval = Math.max(1, configLoader.getIntProperty("WATCH.INTERVAL", 60));
+        int maxPolls = configLoader.getIntProperty("WATCH.MAX.POLLS", 0);
+        WatchState state = WatchState.load(stateFile(configLoader));
+        String rules = rulesFingerprint(configLoader);
+        if (!rules.equals(state.getRulesFingerprint())) {
+            if (state.getRulesFingerprint() != null) {
+                logger.log(Level.INFO, "***** Update rules changed since the last poll. Evaluating every API.");
+            }
+            state.reset(rules);
+        }
+
+        Thread shutdownHook = new Thread(this::stop, "watch-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        logger.log(Level.INFO, "***** Watching for new and changed APIs every " + interval + "s *****");
+        try {
+            for (int poll = 1; !stopping && (maxPolls <= 0 || poll <= maxPolls); poll++) {
+                if (reloadIfChanged()) {
+                    interval = Math.max(1, configLoader.getIntProperty("WATCH.INTERVAL", 60));
+                    rules = rulesFingerprint(configLoader);
+                    if (!rules.equals(state.getRulesFingerprint())) {
+                        logger.log(Level.INFO, "***** Update rules changed. The next poll evaluates every API.");
+                        state.reset(rules);
+                        state.save();
+                    }
+                }
+                long start = System.nanoTime();
+                poll(poll, state);
+                long waitMillis = TimeUnit.SECONDS.toMillis(interval) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (!stopping && (maxPolls <= 0 || poll < maxPolls) && waitMillis > 0) {
+                    synchronized (sleepLock) {
+                        if (!stopping) {
+                            sleepLock.wait(waitMillis);
+                        }
+                    }
+                }
+            }
+        } finally {
+            stopped.countDown();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down
+            }
+        }
+        logger.log(Level.INFO, "***** Watch mode stopped *****");
+    }
+
+    private void poll(int poll, WatchState state) {
+        logger.log(Level.INFO, "***** Poll " + poll + ". High-water mark : "
+                + (state.getHighWaterMark() != null ? state.getHighWaterMark() : "none, evaluating every API") + " *****");
+        try {
+            UpdateService service = new UpdateService(configLoader, null, null);
+            service.setWatchState(state);
+            UpdateSummary summary = service.run(null, null, false, shard);
+            state.advance(summary);
+            state.save();
+            logger.log(Level.INFO, "***** Poll " + poll + " : " + state.getPassed() + " new or changed APIs, "
+                    + state.getSkipped() + " unchanged since the last poll, " + summary.getCount(UpdateStatus.UPDATED) + " updated, "
+                    + summary.getCount(UpdateStatus.FAILED) + " failed");
+        } catch (Exception e) {
+            // The mark does not move, so the next poll covers these APIs again
+            logger.log(Level.SEVERE, "***** Poll " + poll + " failed. Retrying at the next poll.", e);
+        }
+    }
+
+    /**
+     * Finish the poll in progress and stop. Called by the shutdown hook.
+     */
+    public void stop() {
+        stopping = true;
+        synchronized (sleepLock) {
+            sleepLock.notifyAll();
+        }
+        int timeout = configLoader.getIntProperty("WATCH.SHUTDOWN.TIMEOUT", 60);
+        try {
+            if (!stopped.await(timeout, TimeUnit.SECONDS)) {
+                logger.log(Level.WARNING, "***** Poll still running after " + timeout + "s. Exiting; APIs in flight are retried at the next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Re-read the configuration file if it was modified. A configuration that cannot be read or has no valid
+     * rules is ignored.
+     *
+     * @return true if a new configuration is in use.
+     */
+    private boolean reloadIfChanged() {
+        FileTime modified = lastModified();
+        if (modified == null || modified.equals(configModified)) {
+            return false;
+        }
+        configModified = modified;
+        try {
+            ConfigLoader reloaded = ConfigLoader.load(configFile);
+            if (shard.isSharded()) {
+                reloaded = reloaded.withOverrides(UpdateService.shardFiles(reloaded, shard));
+            }
+            rulesFingerprint(reloaded);
+            configLoader = reloaded;
+            logger.log(Level.INFO, "***** Configuration " + configFile + " changed. Reloaded.");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "***** Configuration " + configFile + " changed but cannot be used. Keeping the previous one. "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    private FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(Paths.get(configFile));
+        } catch (IOException e) {
+            // Being replaced, e.g. by an editor; try again at the next poll
+            return null;
+        }
+    }
+
+    private static String rulesFingerprint(ConfigLoader configLoader) {
+        List<UpdateRule> rules = UpdateRule.loadUpdateRules(configLoader);
+        if (rules.isEmpty()) {
+            throw new IllegalStateException("No update rules configured. Please configure UPDATE.RULES in config.properties");
+        }
+        return RuleTrie.compile(rules).fingerprint();
+    }
+
+    private static Path stateFile(ConfigLoader configLoader) {
+        String file = configLoader.hasProperty("WATCH.STATE.FILE") ? configLoader.getProperty("WATCH.STATE.FILE") : "";
+        return Paths.get(file.isEmpty() ? "watch-state.json" : file);
+    }
+}
@@ -0,0 +1,223 @@
+package com.sample.updater;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sample.bean.API;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How far watch mode got, kept in WATCH.STATE.FILE so a restarted watcher carries on where it stopped.
+ *
+ * The high-water mark is the newest {@code lastUpdatedTime} in the last complete listing. A poll only passes
+ * on APIs updated after it, plus the APIs that failed or were still waiting for deployment in an earlier
+ * poll. Revisions a poll created but did not deploy are kept as well and deployed by the next one; the API
+ * was already updated, so evaluating it again would find nothing to change. The mark is taken from the listing rather than the local clock, so an API changed while a poll runs
+ * is newer than the mark and is picked up by the next poll. When the update rules change the mark is
+ * cleared, so the next poll evaluates every API against the new rules.
+ */
+public class WatchState {
+
+    private static final Logger logger = Logger.getLogger(WatchState.class.getName());
+
+    private final Path path;
+    private String rulesFingerprint;
+    private String highWaterMark;
+    private final Set<String> retryIds = new TreeSet<>();
+    private final Map<String, String> pendingRevisions = new ConcurrentHashMap<>();
+    // Of the poll in progress
+    private String newestSeen;
+    private int passed;
+    private int skipped;
+
+    private WatchState(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the state saved in {@code path}, or an empty state that passes on every API if there is none.
+     */
+    public static WatchState load(Path path) {
+        WatchState state = new WatchState(path);
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
+            state.rulesFingerprint = stringOrNull(json, "rulesFingerprint");
+            state.highWaterMark = stringOrNull(json, "highWaterMark");
+            if (json.has("retry")) {
+                for (JsonElement id : json.getAsJsonArray("retry")) {
+                    state.retryIds.add(id.getAsString());
+                }
+            }
+            if (json.has("pendingRevisions")) {
+                for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("pendingRevisions").entrySet()) {
+                    state.pendingRevisions.put(entry.getKey(), entry.getValue().getAsString());
+                }
+            }
+            logger.log(Level.INFO, "***** Watch state loaded from " + path + ". High-water mark : " + state.highWaterMark
+                    + ", " + state.retryIds.size() + " APIs to retry");
+        } catch (NoSuchFileException e) {
+            // First poll: every API is new
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to read watch state " + path + ". Evaluating every API.", e);
+            state.rulesFingerprint = null;
+            state.highWaterMark = null;
+            state.retryIds.clear();
+            state.pendingRevisions.clear();
+        }
+        return state;
+    }
+
+    public String getRulesFingerprint() {
+        return rulesFingerprint;
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Forget the mark, so the next poll evaluates every API against the given rules. Undeployed revisions are
+     * kept; the APIs they belong to were already changed on the publisher.
+     */
+    public void reset(String rulesFingerprint) {
+        this.rulesFingerprint = rulesFingerprint;
+        this.highWaterMark = null;
+        this.retryIds.clear();
+    }
+
+    /**
+     * The APIs of one poll that changed since the mark or are to be retried, taken lazily from {@code apis}.
+     */
+    public Iterable<API> filter(Iterable<API> apis) {
+        newestSeen = null;
+        passed = 0;
+        skipped = 0;
+        return () -> new Iterator<API>() {
+            private final Iterator<API> source = apis.iterator();
+            private API next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && source.hasNext()) {
+                    API api = source.next();
+                    String updated = api.getLastUpdatedTime();
+                    if (updated != null && (newestSeen == null || compare(updated, newestSeen) > 0)) {
+                        newestSeen = updated;
+                    }
+                    if (highWaterMark == null || updated == null || compare(updated, highWaterMark) > 0
+                            || retryIds.contains(api.getId()) || pendingRevisions.containsKey(api.getId())) {
+                        passed++;
+                        next = api;
+                    } else {
+                        skipped++;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public API next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                API api = next;
+                next = null;
+                return api;
+            }
+        };
+    }
+
+    /**
+     * @return the revision of the API a previous poll created but did not deploy, or null. It is handed out once;
+     * if it is still not deployed, the poll records it again.
+     */
+    public String takePendingRevision(String apiId) {
+        return pendingRevisions.remove(apiId);
+    }
+
+    public int getPassed() {
+        return passed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Move the mark past the poll that produced {@code summary}. If the listing broke off, APIs beyond the point
+     * it reached may be missing, so the mark stays where it was.
+     */
+    public void advance(UpdateSummary summary) {
+        if (summary.isListingComplete()) {
+            if (newestSeen != null && (highWaterMark == null || compare(newestSeen, highWaterMark) > 0)) {
+                highWaterMark = newestSeen;
+            }
+            retryIds.clear();
+        }
+        retryIds.addAll(summary.getUnfinishedIds());
+        pendingRevisions.putAll(summary.getPendingRevisions());
+    }
+
+    public void save() {
+        JsonObject json = new JsonObject();
+        json.addProperty("rulesFingerprint", rulesFingerprint);
+        json.addProperty("highWaterMark", highWaterMark);
+        JsonArray retry = new JsonArray();
+        retryIds.forEach(retry::add);
+        json.add("retry", retry);
+        JsonObject revisions = new JsonObject();
+        new TreeMap<>(pendingRevisions).forEach(revisions::addProperty);
+        json.add("pendingRevisions", revisions);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().serializeNulls().create().toJson(json, writer);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save watch state " + path + ". A restart evaluates every API again.", e);
+        }
+    }
+
+    private static String stringOrNull(JsonObject json, String name) {
+        JsonElement value = json.get(name);
+        // Saved as null until the first complete poll
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    /**
+     * Order two {@code lastUpdatedTime} values: numerically if both are epoch numbers, otherwise as text, which
+     * also orders ISO-8601 timestamps.
+     */
+    static int compare(String a, String b) {
+        try {
+            return Long.compare(Long.parseLong(a.trim()), Long.parseLong(b.trim()));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+}
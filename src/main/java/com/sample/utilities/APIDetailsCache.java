@@ -0,0 +1,400 @@
+package com.sample.utilities;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.http.HttpRequest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of API definitions returned by {@code GET /apis/{apiId}}, keyed by API id.
+ *
+ * Each definition is stored gzip compressed together with the ETag, Last-Modified and listed
+ * {@code lastUpdatedTime} it was fetched with, so the next run can either skip the request entirely
+ * (the listing shows the API has not changed) or revalidate it with a conditional GET. The total size
+ * on disk is capped and the least recently used definitions are evicted first.
+ */
+public class APIDetailsCache implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(APIDetailsCache.class.getName());
+    private static final String INDEX_FILE = "index.json";
+    private static final Gson gson = new Gson();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final boolean trustLastUpdatedTime;
+    // Access ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private int hits;
+    private int revalidated;
+    private int misses;
+
+    public static class Entry {
+        private String apiId;
+        private String etag;
+        private String lastModified;
+        private String lastUpdatedTime;
+        private long size;
+        private long lastAccess;
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getLastUpdatedTime() {
+            return lastUpdatedTime;
+        }
+    }
+
+    public APIDetailsCache(ConfigLoader configLoader) throws IOException {
+        String dir = configLoader.hasProperty("CACHE.DIRECTORY") ? configLoader.getProperty("CACHE.DIRECTORY") : "";
+        this.directory = Paths.get(dir.isEmpty() ? "cache/api-details" : dir);
+        this.maxBytes = configLoader.getIntProperty("CACHE.MAX.SIZE.MB", 512) * 1024L * 1024L;
+        this.trustLastUpdatedTime = !configLoader.hasProperty("CACHE.TRUST.LAST.UPDATED.TIME")
+                || Boolean.parseBoolean(configLoader.getProperty("CACHE.TRUST.LAST.UPDATED.TIME"));
+        Files.createDirectories(directory);
+        loadIndex();
+        logger.log(Level.INFO, "API details cache loaded from " + directory.toAbsolutePath() + " with " + entries.size()
+                + " entries (" + totalBytes / 1024 + " KB)");
+    }
+
+    /**
+     * @return the cached entry for an API, or null if it is not cached.
+     */
+    public synchronized Entry lookup(String apiId) {
+        Entry entry = entries.get(apiId);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        return entry;
+    }
+
+    /**
+     * Whether the cached definition can be used without asking the publisher, because the listing reports the
+     * same {@code lastUpdatedTime} it was fetched with.
+     */
+    public boolean isFresh(Entry entry, String lastUpdatedTime) {
+        return trustLastUpdatedTime && entry != null && lastUpdatedTime != null && !lastUpdatedTime.isEmpty()
+                && lastUpdatedTime.equals(entry.lastUpdatedTime);
+    }
+
+    /**
+     * Ask the publisher to answer with 304 Not Modified if the cached definition is still current.
+     */
+    public static void addConditionalHeaders(HttpRequest request, Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        if (entry.etag != null) {
+            request.setHeader("If-None-Match", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            request.setHeader("If-Modified-Since", entry.lastModified);
+        }
+    }
+
+    /**
+     * Record the listed {@code lastUpdatedTime} for a definition the publisher just confirmed as unchanged.
+     */
+    public synchronized void refresh(String apiId, String lastUpdatedTime) {
+        Entry entry = entries.get(apiId);
+        if (entry != null && lastUpdatedTime != null) {
+            entry.lastUpdatedTime = lastUpdatedTime;
+        }
+    }
+
+    /**
+     * Open a cached definition. Counts as a hit when {@code revalidation} is false and as a 304 revalidation
+     * otherwise.
+     *
+     * @return the definition, or null if it was evicted or invalidated since it was looked up.
+     */
+    public Reader open(String apiId, boolean revalidation) throws IOException {
+        InputStream file;
+        synchronized (this) {
+            // Opened under the lock that eviction holds, so the file cannot go away in between. Once open it
+            // stays readable even if it is deleted.
+            if (!entries.containsKey(apiId)) {
+                return null;
+            }
+            try {
+                file = Files.newInputStream(fileFor(apiId));
+            } catch (NoSuchFileException e) {
+                invalidate(apiId);
+                return null;
+            }
+            if (revalidation) {
+                revalidated++;
+            } else {
+                hits++;
+            }
+        }
+        try {
+            return new InputStreamReader(new GZIPInputStream(file, 8192), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the definition, or null if it was evicted or invalidated since it was looked up.
+     */
+    public String read(String apiId, boolean revalidation) throws IOException {
+        Reader opened = open(apiId, revalidation);
+        if (opened == null) {
+            return null;
+        }
+        StringBuilder body = new StringBuilder();
+        try (Reader reader = opened) {
+            char[] chunk = new char[8192];
+            int read;
+            while ((read = reader.read(chunk)) != -1) {
+                body.append(chunk, 0, read);
+            }
+        }
+        return body.toString();
+    }
+
+    public void store(String apiId, String body, String etag, String lastModified, String lastUpdatedTime) {
+        try (Writer writer = new OutputStreamWriter(beginStore(apiId), StandardCharsets.UTF_8)) {
+            writer.write(body);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to cache API details for " + apiId, e);
+            return;
+        }
+        commitStore(apiId, etag, lastModified, lastUpdatedTime);
+    }
+
+    /**
+     * Wrap a response body so that everything read from it is also written to the cache. Closing the stream
+     * reads whatever the consumer left and commits the entry once the whole body has been copied.
+     */
+    public InputStream tee(String apiId, InputStream body, String etag, String lastModified, String lastUpdatedTime)
+            throws IOException {
+        OutputStream cacheOut = beginStore(apiId);
+        return new FilterInputStream(body) {
+            private boolean failed;
+            private boolean eof;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    eof = true;
+                } else {
+                    copy(new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    copy(buffer, offset, read);
+                }
+                return read;
+            }
+
+            private void copy(byte[] buffer, int offset, int length) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    cacheOut.write(buffer, offset, length);
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    byte[] rest = new byte[8192];
+                    while (!eof && !failed) {
+                        read(rest, 0, rest.length);
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                }
+                try {
+                    cacheOut.close();
+                } catch (IOException e) {
+                    failed = true;
+                }
+                if (eof && !failed) {
+                    commitStore(apiId, etag, lastModified, lastUpdatedTime);
+                } else {
+                    Files.deleteIfExists(tempFileFor(apiId));
+                }
+                super.close();
+            }
+        };
+    }
+
+    public synchronized void invalidate(String apiId) {
+        Entry entry = entries.remove(apiId);
+        if (entry != null) {
+            totalBytes -= entry.size;
+            deleteQuietly(fileFor(apiId));
+        }
+    }
+
+    public synchronized void logStatistics() {
+        logger.log(Level.INFO, "***** API details cache : " + hits + " served from cache, " + revalidated
+                + " revalidated (304), " + misses + " downloaded. " + entries.size() + " entries, "
+                + totalBytes / 1024 + " KB");
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            saveIndex();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to save API details cache index", e);
+        }
+    }
+
+    private OutputStream beginStore(String apiId) throws IOException {
+        return new GZIPOutputStream(Files.newOutputStream(tempFileFor(apiId)), 8192);
+    }
+
+    private void commitStore(String apiId, String etag, String lastModified, String lastUpdatedTime) {
+        try {
+            Path file = fileFor(apiId);
+            Files.move(tempFileFor(apiId), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Entry entry = new Entry();
+            entry.apiId = apiId;
+            entry.etag = etag;
+            entry.lastModified = lastModified;
+            entry.lastUpdatedTime = lastUpdatedTime;
+            entry.size = Files.size(file);
+            entry.lastAccess = System.currentTimeMillis();
+            synchronized (this) {
+                Entry previous = entries.put(apiId, entry);
+                if (previous != null) {
+                    totalBytes -= previous.size;
+                }
+                totalBytes += entry.size;
+                misses++;
+                evict();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to cache API details for " + apiId, e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.size;
+            deleteQuietly(fileFor(eldest.apiId));
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        Map<String, Entry> loaded = new HashMap<>();
+        if (Files.exists(index)) {
+            try (Reader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                Map<String, Entry> stored = gson.fromJson(reader, new TypeToken<Map<String, Entry>>() { }.getType());
+                if (stored != null) {
+                    loaded.putAll(stored);
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "API details cache index is corrupt. Starting with an empty cache.", e);
+            }
+        }
+
+        // Rebuild LRU order from the recorded access times, dropping entries whose file is missing.
+        List<Entry> ordered = new ArrayList<>(loaded.values());
+        ordered.sort(Comparator.comparingLong(entry -> entry.lastAccess));
+        for (Entry entry : ordered) {
+            if (entry.apiId != null && Files.exists(fileFor(entry.apiId))) {
+                entries.put(entry.apiId, entry);
+                totalBytes += entry.size;
+            }
+        }
+
+        // Remove files the index does not know about, e.g. left over from a crash.
+        Set<String> indexed = new HashSet<>();
+        for (String apiId : entries.keySet()) {
+            indexed.add(fileFor(apiId).getFileName().toString());
+        }
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.equals(INDEX_FILE) && !indexed.contains(name)) {
+                    deleteQuietly(file.toPath());
+                }
+            }
+        }
+        evict();
+    }
+
+    private void saveIndex() throws IOException {
+        Map<String, Entry> snapshot = new LinkedHashMap<>(entries);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(temp, gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path fileFor(String apiId) {
+        return directory.resolve(safeName(apiId) + ".json.gz");
+    }
+
+    private Path tempFileFor(String apiId) {
+        return directory.resolve(safeName(apiId) + "." + Thread.currentThread().getId() + ".tmp");
+    }
+
+    private static String safeName(String apiId) {
+        return apiId.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Failed to delete " + path, e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.sample.utilities;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking counterpart of {@link HttpTransport}.
+ *
+ * Requests are multiplexed over a small number of I/O dispatcher threads, so the number of requests in
+ * flight is bounded by the connection pool rather than by the number of threads.
+ */
+public class AsyncHttpTransport implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AsyncHttpTransport.class.getName());
+    private final CloseableHttpAsyncClient httpClient;
+
+    public AsyncHttpTransport(ConfigLoader configLoader, SSLContext sslContext) throws IOException {
+        int concurrency = Math.max(1, configLoader.getIntProperty("UPDATE.CONCURRENCY", 1));
+        int maxPerRoute = configLoader.getIntProperty("HTTP.POOL.MAX.PER.ROUTE", Math.max(10, concurrency * 2));
+        int maxTotal = configLoader.getIntProperty("HTTP.POOL.MAX.TOTAL", maxPerRoute * 2);
+        int connectTimeout = configLoader.getIntProperty("HTTP.CONNECT.TIMEOUT", 10000);
+        int socketTimeout = configLoader.getIntProperty("HTTP.SOCKET.TIMEOUT", 120000);
+        int leaseTimeout = configLoader.getIntProperty("HTTP.POOL.LEASE.TIMEOUT", 60000);
+        long keepAlive = configLoader.getIntProperty("HTTP.KEEPALIVE.TIME", 30000);
+        int ioThreads = configLoader.getIntProperty("ASYNC.IO.THREADS", Runtime.getRuntime().availableProcessors());
+
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(socketTimeout)
+                .setSoKeepAlive(true)
+                .build();
+
+        Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new SSLIOSessionStrategy(sslContext, NoopHostnameVerifier.INSTANCE))
+                .build();
+
+        PoolingNHttpClientConnectionManager connectionManager =
+                new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig), registry);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(leaseTimeout)
+                .build();
+
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? serverKeepAlive : keepAlive;
+                })
+                .disableConnectionState()
+                .build();
+        httpClient.start();
+
+        logger.log(Level.INFO, "Async HTTP client initialized. I/O threads: " + ioThreads + ", max total: " + maxTotal
+                + ", max per route: " + maxPerRoute);
+    }
+
+    /**
+     * Execute a request without blocking. The returned future completes on an I/O dispatcher thread
+     * once the whole response body has been received.
+     *
+     * @param onHead run on the I/O dispatcher thread as soon as the status line and headers arrive.
+     */
+    public CompletableFuture<HttpTransport.Response> execute(HttpUriRequest request, Runnable onHead) {
+        CompletableFuture<HttpTransport.Response> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        BasicAsyncResponseConsumer consumer = new BasicAsyncResponseConsumer() {
+            @Override
+            protected void onResponseReceived(HttpResponse response) throws IOException {
+                super.onResponseReceived(response);
+                onHead.run();
+            }
+        };
+        httpClient.execute(HttpAsyncMethods.create(request), consumer, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                long received = 0;
+                try {
+                    HttpEntity entity = response.getEntity();
+                    byte[] content = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+                    received = content.length;
+                    future.complete(new HttpTransport.Response(statusCode, new String(content, StandardCharsets.UTF_8),
+                            response.getAllHeaders()));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    Metrics.recordRequest(Metrics.endpoint(request), statusCode, System.nanoTime() - start,
+                            Metrics.requestSize(request), received);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                Metrics.recordRequest(Metrics.endpoint(request), -1, System.nanoTime() - start,
+                        Metrics.requestSize(request), 0);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing async HTTP client", e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.sample.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Moves log output off the worker threads.
+ *
+ * {@link #install} replaces the handlers of the root logger with one handler that only queues records. A
+ * single writer thread drains the queue in batches and passes them to the original handlers, so formatting and
+ * console or file I/O happen there and workers never contend for the handlers' locks. When LOG.QUEUE.SIZE
+ * records are waiting, records below WARNING are dropped and counted rather than stalling the workers;
+ * warnings and errors always wait for room.
+ *
+ * The source of a record is taken from the logger name instead of walking the caller's stack. The loggers of
+ * this tool are named after their class, so the output is unchanged except that the method is not shown.
+ */
+public final class AsyncLogHandler extends Handler {
+
+    private static final int BATCH_SIZE = 256;
+    private static AsyncLogHandler installed;
+
+    private final Handler[] targets;
+    private final BlockingQueue<LogRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private AsyncLogHandler(Handler[] targets, int capacity) {
+        this.targets = targets;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Route the root logger through a background writer, unless LOG.ASYNC is false. Calling it again is a no-op.
+     */
+    public static synchronized void install(ConfigLoader configLoader) {
+        if (installed != null
+                || (configLoader.hasProperty("LOG.ASYNC") && !Boolean.parseBoolean(configLoader.getProperty("LOG.ASYNC")))) {
+            return;
+        }
+        Logger root = LogManager.getLogManager().getLogger("");
+        Handler[] handlers = root.getHandlers();
+        if (handlers.length == 0) {
+            return;
+        }
+        for (Handler handler : handlers) {
+            root.removeHandler(handler);
+        }
+        installed = new AsyncLogHandler(handlers, Math.max(BATCH_SIZE, configLoader.getIntProperty("LOG.QUEUE.SIZE", 8192)));
+        root.addHandler(installed);
+    }
+
+    /**
+     * Write everything still queued and give the root logger its original handlers back.
+     */
+    public static synchronized void uninstall() {
+        if (installed == null) {
+            return;
+        }
+        Logger root = LogManager.getLogManager().getLogger("");
+        root.removeHandler(installed);
+        installed.close();
+        for (Handler handler : installed.targets) {
+            root.addHandler(handler);
+        }
+        installed = null;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record) || !anyTargetLogs(record)) {
+            return;
+        }
+        // Setting the source stops the formatter from inferring it on the writer thread, where the stack is wrong
+        record.setSourceClassName(record.getLoggerName());
+        if (queue.offer(record)) {
+            return;
+        }
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean anyTargetLogs(LogRecord record) {
+        for (Handler target : targets) {
+            if (target.isLoggable(record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait until the records queued so far are written.
+     */
+    @Override
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!queue.isEmpty() && writer.isAlive() && System.nanoTime() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                LogRecord first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                }
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    continue;
+                }
+            }
+            queue.drainTo(batch, BATCH_SIZE - batch.size());
+            write(batch);
+            if (closed && queue.isEmpty()) {
+                break;
+            }
+        }
+        // Records that raced with close
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    private void write(List<LogRecord> batch) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            LogRecord warning = new LogRecord(Level.WARNING, lost + " log records below WARNING were dropped because the log queue was full."
+                    + " Increase LOG.QUEUE.SIZE or raise the log level.");
+            warning.setLoggerName(AsyncLogHandler.class.getName());
+            warning.setSourceClassName(AsyncLogHandler.class.getName());
+            batch.add(0, warning);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (LogRecord record : batch) {
+            for (Handler target : targets) {
+                target.publish(record);
+            }
+        }
+        for (Handler target : targets) {
+            target.flush();
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,388 @@
+package com.sample.utilities;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking variant of the Publisher operations in {@link RestRequest}.
+ *
+ * Every method returns immediately with a future. Failures are logged and the future completes with the
+ * same fallback value the blocking method would return (null or false), so callers can compose
+ * the per-API steps without a thread blocked on each request.
+ */
+public class AsyncRestRequest implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AsyncRestRequest.class.getName());
+    private final String publisherRestURL;
+    private final RateLimiter rateLimiter;
+    private final APIDetailsCache detailsCache;
+    private final TokenManager tokenManager;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final AsyncHttpTransport transport;
+    private final ScheduledExecutorService scheduler;
+    private volatile RestRequest.ResponseListener responseListener;
+    private volatile boolean gzipRequests;
+
+    /**
+     * @param detailsCache API details cache shared with the blocking client, or null to always download.
+     * @param tokenManager  token manager shared with the blocking client.
+     * @param circuitBreaker circuit breaker shared with the blocking client, so both stop when the publisher is overloaded.
+     */
+    public AsyncRestRequest(ConfigLoader configLoader, SSLContext sslContext, RateLimiter rateLimiter,
+                            APIDetailsCache detailsCache, TokenManager tokenManager, RetryPolicy retryPolicy,
+                            CircuitBreaker circuitBreaker) throws IOException {
+        this.publisherRestURL = configLoader.getProperty("PUBLISHER.REST.URL");
+        this.rateLimiter = rateLimiter;
+        this.detailsCache = detailsCache;
+        this.tokenManager = tokenManager;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.transport = new AsyncHttpTransport(configLoader, sslContext);
+        this.gzipRequests = Boolean.parseBoolean(configLoader.getProperty("HTTP.REQUEST.GZIP"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @see RestRequest.ResponseListener
+     */
+    public void setResponseListener(RestRequest.ResponseListener responseListener) {
+        this.responseListener = responseListener;
+    }
+
+    public CompletableFuture<String> getAPIDetails(String apiId, String lastUpdatedTime) {
+        APIDetailsCache.Entry cached = detailsCache != null ? detailsCache.lookup(apiId) : null;
+        if (detailsCache != null && detailsCache.isFresh(cached, lastUpdatedTime)) {
+            try {
+                String apiDetails = detailsCache.read(apiId, false);
+                if (apiDetails != null) {
+                    return CompletableFuture.completedFuture(apiDetails);
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to read cached API details for " + apiId + ". Downloading.", e);
+                detailsCache.invalidate(apiId);
+            }
+            cached = null;
+        }
+
+        String urlString = publisherRestURL + "/" + apiId;
+        HttpGet request = new HttpGet(urlString);
+        APIDetailsCache.addConditionalHeaders(request, cached);
+        boolean revalidating = cached != null;
+        return send(request, RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null).handle((response, e) -> {
+            if (e != null) {
+                logger.log(Level.SEVERE, "Error getting API details", e);
+                return CompletableFuture.<String>completedFuture(null);
+            }
+            try {
+                if (response.getStatusCode() == 304 && revalidating) {
+                    detailsCache.refresh(apiId, lastUpdatedTime);
+                    String apiDetails = detailsCache.read(apiId, true);
+                    // Evicted while the request was in flight: download it without the conditional headers
+                    return apiDetails != null ? CompletableFuture.completedFuture(apiDetails) : getAPIDetails(apiId, lastUpdatedTime);
+                }
+            } catch (IOException readError) {
+                logger.log(Level.SEVERE, "Error reading cached API details for " + apiId, readError);
+                detailsCache.invalidate(apiId);
+                return CompletableFuture.<String>completedFuture(null);
+            }
+            if (response.getStatusCode() == 200) {
+                if (detailsCache != null) {
+                    detailsCache.store(apiId, response.getBody(), response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"), lastUpdatedTime);
+                }
+                return CompletableFuture.completedFuture(response.getBody());
+            }
+            logger.log(Level.SEVERE, "Failed to get API details for " + apiId + ". Response code: " + response.getStatusCode());
+            return CompletableFuture.<String>completedFuture(null);
+        }).thenCompose(apiDetails -> apiDetails);
+    }
+
+    public CompletableFuture<String> updateAPI(String apiId, String apiPayload) {
+        return updateAPI(apiId, new JsonEntity(apiPayload, gzipRequests));
+    }
+
+    private CompletableFuture<String> updateAPI(String apiId, JsonEntity payload) {
+        String urlString = publisherRestURL + "/" + apiId;
+        return send(new HttpPut(urlString), RateLimiter.EndpointClass.WRITE, RetryPolicy.Idempotency.IDEMPOTENT, payload).handle((response, e) -> {
+            if (e != null) {
+                logger.log(Level.SEVERE, "Error updating API", e);
+                return CompletableFuture.<String>completedFuture(null);
+            }
+            if (response.getStatusCode() == 200) {
+                logger.log(Level.FINE, "API updated successfully.");
+                if (detailsCache != null) {
+                    detailsCache.invalidate(apiId);
+                }
+                return CompletableFuture.completedFuture(response.getBody());
+            }
+            if (response.getStatusCode() == 415 && payload.isCompressed()) {
+                // The gateway in front of the publisher does not accept gzip bodies; stop compressing for this run
+                if (gzipRequests) {
+                    gzipRequests = false;
+                    logger.log(Level.WARNING, "Publisher rejected a gzip request body (415). Sending uncompressed bodies.");
+                }
+                return updateAPI(apiId, payload.uncompressed());
+            }
+            logger.log(Level.SEVERE, "Failed to update API. Response code: " + response.getStatusCode() + ", Error: " + response.getBody());
+            return CompletableFuture.<String>completedFuture(null);
+        }).thenCompose(updated -> updated);
+    }
+
+    public CompletableFuture<JsonArray> getRevisions(String apiId) {
+        String urlString = publisherRestURL + "/" + apiId + "/revisions";
+        return send(new HttpGet(urlString), RateLimiter.EndpointClass.REVISION, RetryPolicy.Idempotency.SAFE, null).handle((response, e) -> {
+            try {
+                if (e != null) {
+                    throw e;
+                }
+                if (response.getStatusCode() == 200) {
+                    JsonObject jsonResponse = JsonParser.parseString(response.getBody()).getAsJsonObject();
+                    JsonArray revisions = jsonResponse.getAsJsonArray("list");
+                    return revisions != null ? revisions : new JsonArray();
+                }
+                logger.log(Level.SEVERE, "Failed to get revisions. Response code: " + response.getStatusCode());
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Error getting revisions", t);
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteRevision(String apiId, String revisionId) {
+        String urlString = publisherRestURL + "/" + apiId + "/revisions/" + revisionId;
+        return send(new HttpDelete(urlString), RateLimiter.EndpointClass.REVISION, RetryPolicy.Idempotency.SAFE, null).handle((response, e) -> {
+            if (e != null) {
+                logger.log(Level.SEVERE, "Error deleting revision", e);
+            } else if (response.getStatusCode() == 200 || response.getStatusCode() == 204) {
+                logger.log(Level.INFO, () -> "Successfully deleted revision ID: " + revisionId + " for API ID: " + apiId);
+            } else if (response.getStatusCode() == 404) {
+                // A retried delete finds the revision already gone
+                logger.log(Level.INFO, () -> "Revision ID: " + revisionId + " for API ID: " + apiId + " is already deleted.");
+            } else {
+                logger.log(Level.SEVERE, "Failed to delete revision. Response code: " + response.getStatusCode());
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> createRevision(String apiId) {
+        String urlString = publisherRestURL + "/" + apiId + "/revisions";
+        String requestBody = "{\"description\":\"Throttling policy update\"}";
+        return send(new HttpPost(urlString), RateLimiter.EndpointClass.REVISION, RetryPolicy.Idempotency.NON_IDEMPOTENT,
+                RestRequest.json(requestBody)).handle((response, e) -> {
+            try {
+                if (e != null) {
+                    throw e;
+                }
+                if (response.getStatusCode() == 200 || response.getStatusCode() == 201) {
+                    JsonObject jsonResponse = JsonParser.parseString(response.getBody()).getAsJsonObject();
+                    return jsonResponse.get("id").getAsString();
+                }
+                logger.log(Level.SEVERE, "Failed to create revision. Response code: " + response.getStatusCode());
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Error creating revision", t);
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<JsonArray> getDeployments(String apiId) {
+        String urlString = publisherRestURL + "/" + apiId + "/deployments";
+        return send(new HttpGet(urlString), RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null).handle((response, e) -> {
+            try {
+                if (e != null) {
+                    throw e;
+                }
+                if (response.getStatusCode() == 200) {
+                    return JsonParser.parseString(response.getBody()).getAsJsonArray();
+                }
+                logger.log(Level.SEVERE, "Failed to get deployment environments. Response code: " + response.getStatusCode());
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Error getting deployment environments", t);
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> deployRevision(String apiId, String revisionId, String deploymentPayload) {
+        String urlString = publisherRestURL + "/" + apiId + "/deploy-revision?revisionId=" + revisionId;
+        return send(new HttpPost(urlString), RateLimiter.EndpointClass.DEPLOY, RetryPolicy.Idempotency.IDEMPOTENT,
+                RestRequest.json(deploymentPayload)).handle((response, e) -> {
+            if (e != null) {
+                logger.log(Level.SEVERE, "Error deploying revision", e);
+                return false;
+            }
+            if (response.getStatusCode() == 200 || response.getStatusCode() == 201) {
+                logger.log(Level.FINE, () -> "Successfully deployed revision " + revisionId);
+                return true;
+            }
+            logger.log(Level.SEVERE, "Failed to deploy revision. Response code: " + response.getStatusCode());
+            return false;
+        });
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        transport.close();
+    }
+
+    /**
+     * Send a Publisher request once the circuit breaker and the rate limiter allow it. Instead of blocking for a
+     * permit the request is scheduled for the moment its reserved permit becomes available. A request rejected
+     * with 401 is sent once more with a renewed token, and failures the retry policy allows are scheduled again
+     * after a backoff.
+     */
+    private CompletableFuture<HttpTransport.Response> send(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                                                          RetryPolicy.Idempotency idempotency, HttpEntity body) {
+        request.setHeader("Content-Type", "application/json");
+        if (body != null) {
+            ((HttpEntityEnclosingRequestBase) request).setEntity(body);
+        }
+
+        return attempt(request, endpointClass, idempotency, 1).thenCompose(response -> {
+            if (response.getStatusCode() != 401) {
+                return CompletableFuture.completedFuture(response);
+            }
+            String rejectedToken = request.getFirstHeader("Authorization").getValue().substring("Bearer ".length());
+            // Renewing may wait for the token endpoint, so keep it off the I/O threads
+            return CompletableFuture.supplyAsync(() -> tokenManager.renew(rejectedToken)).thenCompose(renewed -> {
+                if (renewed == null) {
+                    logger.log(Level.SEVERE, "Access token rejected and could not be renewed.");
+                    return CompletableFuture.completedFuture(response);
+                }
+                logger.log(Level.INFO, "Access token rejected. Retrying with a renewed token.");
+                return attempt(request, endpointClass, idempotency, 1);
+            });
+        });
+    }
+
+    private CompletableFuture<HttpTransport.Response> attempt(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                                                             RetryPolicy.Idempotency idempotency, int attempt) {
+        boolean lastAttempt = attempt >= retryPolicy.getMaxAttempts();
+        CompletableFuture<HttpTransport.Response> result = new CompletableFuture<>();
+        dispatch(request, endpointClass).whenComplete((response, e) -> {
+            String reason;
+            String retryAfter = null;
+            if (e != null) {
+                if (lastAttempt || !retryPolicy.isRetryable(idempotency, e)) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                reason = RetryPolicy.unwrap(e).toString();
+            } else {
+                retryAfter = response.getHeader("Retry-After");
+                if (lastAttempt || !retryPolicy.isRetryable(idempotency, response.getStatusCode(), retryAfter)) {
+                    result.complete(response);
+                    return;
+                }
+                reason = "status " + response.getStatusCode();
+            }
+            long delay = retryPolicy.getDelayMillis(attempt, retryAfter);
+            logger.log(Level.WARNING, request.getMethod() + " " + request.getURI().getPath() + " failed (" + reason
+                    + "). Retrying in " + delay + "ms (attempt " + (attempt + 1) + " of " + retryPolicy.getMaxAttempts() + ").");
+            Metrics.countRetry(Metrics.endpoint(request));
+            scheduler.schedule(() -> attempt(request, endpointClass, idempotency, attempt + 1).whenComplete((retried, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(retried);
+                }
+            }), delay, TimeUnit.MILLISECONDS);
+        });
+        return result;
+    }
+
+    private CompletableFuture<HttpTransport.Response> dispatch(HttpRequestBase request,
+                                                              RateLimiter.EndpointClass endpointClass) {
+        CompletableFuture<HttpTransport.Response> result = new CompletableFuture<>();
+        dispatch(request, endpointClass, result);
+        return result;
+    }
+
+    private void dispatch(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                          CompletableFuture<HttpTransport.Response> result) {
+        long circuitWait = circuitBreaker.reserve();
+        if (circuitWait > 0) {
+            // The publisher is overloaded: ask again once the circuit may let requests through
+            scheduler.schedule(() -> dispatch(request, endpointClass, result), circuitWait, TimeUnit.NANOSECONDS);
+            return;
+        }
+        boolean probe = circuitWait == CircuitBreaker.PROBE;
+
+        Runnable dispatch = () -> {
+            // Attached when the permit is due, so the token cannot expire while the request waits
+            String token = tokenManager.getFreshAccessToken();
+            if (token != null) {
+                execute(request, endpointClass, token, probe, result);
+            } else {
+                // Renewing waits for the token endpoint, so keep it off the scheduler and the I/O threads
+                CompletableFuture.supplyAsync(tokenManager::getAccessToken).whenComplete((renewed, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else if (renewed == null) {
+                        // Not sent with "Bearer null"; the caller logs the failure
+                        result.completeExceptionally(new IllegalStateException("Failed to obtain access token"));
+                    } else {
+                        execute(request, endpointClass, renewed, probe, result);
+                    }
+                });
+            }
+        };
+
+        long waitNanos = rateLimiter.reserve(endpointClass);
+        if (waitNanos > 0) {
+            scheduler.schedule(dispatch, waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            dispatch.run();
+        }
+    }
+
+    private void execute(HttpRequestBase request, RateLimiter.EndpointClass endpointClass, String token, boolean probe,
+                         CompletableFuture<HttpTransport.Response> result) {
+        request.setHeader("Authorization", "Bearer " + token);
+        long start = System.nanoTime();
+        long[] headElapsed = {-1};
+        transport.execute(request, () -> headElapsed[0] = System.nanoTime() - start).whenComplete((response, e) -> {
+            int statusCode = response == null ? -1 : response.getStatusCode();
+            long elapsed = System.nanoTime() - start;
+            // The publisher's latency ends with the status line; receiving the body is ours
+            long latency = headElapsed[0] >= 0 ? headElapsed[0] : elapsed;
+            rateLimiter.record(endpointClass, TimeUnit.NANOSECONDS.toMillis(latency), statusCode);
+            circuitBreaker.record(statusCode, response == null ? 0 : RetryPolicy.parseRetryAfter(response.getHeader("Retry-After")),
+                    probe);
+            RestRequest.ResponseListener listener = responseListener;
+            if (listener != null) {
+                listener.onResponse(request, statusCode, elapsed);
+            }
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package com.sample.utilities;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reusable I/O buffers, so encoding request bodies and reading responses does not allocate fresh buffers for
+ * every request.
+ *
+ * At most {@link #POOLED} buffers of each kind are kept; any beyond that are left to the garbage collector.
+ */
+public final class BufferPool {
+
+    public static final int SIZE = 32 * 1024;
+    private static final int POOLED = 64;
+
+    private static final ArrayBlockingQueue<byte[]> bytes = new ArrayBlockingQueue<>(POOLED);
+    private static final ArrayBlockingQueue<char[]> chars = new ArrayBlockingQueue<>(POOLED);
+
+    private BufferPool() {
+    }
+
+    public static byte[] acquireBytes() {
+        byte[] buffer = bytes.poll();
+        return buffer != null ? buffer : new byte[SIZE];
+    }
+
+    public static void release(byte[] buffer) {
+        if (buffer.length == SIZE) {
+            bytes.offer(buffer);
+        }
+    }
+
+    public static char[] acquireChars() {
+        char[] buffer = chars.poll();
+        return buffer != null ? buffer : new char[SIZE];
+    }
+
+    public static void release(char[] buffer) {
+        if (buffer.length == SIZE) {
+            chars.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sample.utilities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pauses every request to a publisher while it is overloaded, so retries do not pile onto it.
+ *
+ * After CIRCUIT.FAILURE.THRESHOLD consecutive overload responses (429, 502, 503, 504) or connection failures
+ * the circuit opens: no request goes out for CIRCUIT.OPEN.TIME ms, or longer if the publisher sent a longer
+ * Retry-After. Then a single probe request is let through. If it succeeds the circuit closes and all waiting
+ * requests continue; if not it opens again. Responses to requests that went out before the circuit opened do not
+ * close it.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+    private static final long PROBE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /**
+     * Returned by {@link #reserve()} to the request that may go out now as the probe of a half-open circuit.
+     */
+    public static final long PROBE = -1;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private int consecutiveFailures;
+    // 0 while closed, otherwise the time the open period ends
+    private long openUntil;
+    private long probeStarted;
+    private boolean probing;
+    private int openings;
+
+    public CircuitBreaker(ConfigLoader configLoader) {
+        this.failureThreshold = configLoader.getIntProperty("CIRCUIT.FAILURE.THRESHOLD", 10);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, configLoader.getIntProperty("CIRCUIT.OPEN.TIME", 30000)));
+    }
+
+    /**
+     * Block until the circuit lets a request through.
+     *
+     * @return true if the request is the probe of a half-open circuit.
+     */
+    public boolean acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = reserve()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos == PROBE;
+    }
+
+    /**
+     * Check without blocking whether a request may go out.
+     *
+     * @return 0 if it may go out now, {@link #PROBE} if it may go out as the probe, otherwise nanoseconds to wait
+     * before asking again.
+     */
+    public synchronized long reserve() {
+        if (openUntil == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (now < openUntil) {
+            return openUntil - now;
+        }
+        // Half open: one probe at a time. A probe that never reported back does not block forever.
+        if (!probing || now - probeStarted > openNanos) {
+            probing = true;
+            probeStarted = now;
+            return PROBE;
+        }
+        return PROBE_POLL_NANOS;
+    }
+
+    /**
+     * Feed the outcome of a request back.
+     *
+     * @param statusCode       HTTP status, or -1 if the request failed without a response.
+     * @param retryAfterMillis how long the publisher asked to wait, 0 if it did not.
+     * @param probe            whether the request went out as the probe, see {@link #reserve()}.
+     */
+    public synchronized void record(int statusCode, long retryAfterMillis, boolean probe) {
+        boolean overloaded = statusCode < 0 || statusCode == 429 || statusCode == 502 || statusCode == 503
+                || statusCode == 504;
+        // Only the probe's outcome decides a half-open circuit; a replaced probe that reports late still counts
+        boolean probeOutcome = openUntil != 0 && probing && probe;
+        if (!overloaded) {
+            consecutiveFailures = 0;
+            if (probeOutcome) {
+                openUntil = 0;
+                probing = false;
+                logger.log(Level.INFO, "***** Publisher is responding again (status " + statusCode + "). Resuming requests.");
+            }
+            return;
+        }
+        consecutiveFailures++;
+        if (failureThreshold > 0 && (probeOutcome || (openUntil == 0 && consecutiveFailures >= failureThreshold))) {
+            long pause = Math.max(openNanos, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+            openUntil = System.nanoTime() + pause;
+            probing = false;
+            openings++;
+            logger.log(Level.WARNING, "***** Publisher overloaded (" + consecutiveFailures + " consecutive failures, last status "
+                    + statusCode + "). Pausing all requests for " + TimeUnit.NANOSECONDS.toSeconds(pause) + "s.");
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != 0;
+    }
+
+    /**
+     * @return how often the circuit opened during the run.
+     */
+    public synchronized int getOpenings() {
+        return openings;
+    }
+}
@@ -24,6 +24,44 @@ public class ConfigLoader {
         }
     }
 
+    private ConfigLoader(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Load a configuration file without exiting when it cannot be read, e.g. to reload it in a long running process.
+     */
+    public static ConfigLoader load(String configFilePath) throws IOException {
+        Properties properties = new Properties();
+        try (FileInputStream fis = new FileInputStream(configFilePath)) {
+            properties.load(fis);
+        }
+        return new ConfigLoader(properties);
+    }
+
+    /**
+     * @return a copy of this configuration with the given properties added or replaced.
+     */
+    public ConfigLoader withOverrides(Properties overrides) {
+        Properties merged = new Properties();
+        merged.putAll(properties);
+        merged.putAll(overrides);
+        return new ConfigLoader(merged);
+    }
+
+    /**
+     * @return all properties whose key starts with the prefix, keyed by the rest of the key.
+     */
+    public Properties getProperties(String prefix) {
+        Properties matching = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix) && key.length() > prefix.length()) {
+                matching.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+            }
+        }
+        return matching;
+    }
+
     public String getProperty(String key) {
         String value = properties.getProperty(key);
         if (value == null) {
@@ -56,6 +94,30 @@ public class ConfigLoader {
         return list;
     }
 
+    public int getIntProperty(String key, int defaultValue) {
+        if (!hasProperty(key) || getProperty(key).isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(getProperty(key));
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARNING, "Invalid integer for " + key + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public double getDoubleProperty(String key, double defaultValue) {
+        if (!hasProperty(key) || getProperty(key).isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(getProperty(key));
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARNING, "Invalid number for " + key + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     public boolean hasProperty(String key) {
         return properties.containsKey(key);
     }
@@ -0,0 +1,187 @@
+package com.sample.utilities;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared HTTP transport for all Publisher and Key Manager calls.
+ *
+ * Connections are pooled and kept alive between requests, and all TLS connections are created from a
+ * single SSLContext so sessions are resumed instead of paying a full handshake for every call.
+ */
+public class HttpTransport implements Transport {
+
+    private static final Logger logger = Logger.getLogger(HttpTransport.class.getName());
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    public static class Response {
+        private final int statusCode;
+        private final String body;
+        private final Header[] headers;
+
+        Response(int statusCode, String body, Header[] headers) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return this response with the body read from its stream.
+         */
+        Response withBody(String body) {
+            return new Response(statusCode, body, headers);
+        }
+
+        public String getHeader(String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Consumes a response body as a stream instead of buffering it into a String. {@code head} carries the
+     * status code and headers; its body is null.
+     */
+    public interface BodyHandler<T> {
+        T handle(Response head, InputStream body) throws IOException;
+    }
+
+    public HttpTransport(ConfigLoader configLoader, SSLContext sslContext) {
+        int concurrency = Math.max(1, configLoader.getIntProperty("UPDATE.CONCURRENCY", 1));
+        int maxPerRoute = configLoader.getIntProperty("HTTP.POOL.MAX.PER.ROUTE", Math.max(10, concurrency * 2));
+        int maxTotal = configLoader.getIntProperty("HTTP.POOL.MAX.TOTAL", maxPerRoute * 2);
+        int connectTimeout = configLoader.getIntProperty("HTTP.CONNECT.TIMEOUT", 10000);
+        int socketTimeout = configLoader.getIntProperty("HTTP.SOCKET.TIMEOUT", 120000);
+        int leaseTimeout = configLoader.getIntProperty("HTTP.POOL.LEASE.TIMEOUT", 60000);
+        long keepAlive = configLoader.getIntProperty("HTTP.KEEPALIVE.TIME", 30000);
+
+        // Reuse TLS sessions across pooled connections to the same host.
+        sslContext.getClientSessionContext().setSessionTimeout(
+                (int) TimeUnit.MILLISECONDS.toSeconds(Math.max(keepAlive, 300000)));
+
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+                .build();
+
+        connectionManager = new PoolingHttpClientConnectionManager(registry);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(leaseTimeout)
+                .build();
+
+        // Honour the server's Keep-Alive header, otherwise keep idle connections for HTTP.KEEPALIVE.TIME.
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? serverKeepAlive : keepAlive;
+        };
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .build();
+
+        logger.log(Level.INFO, "HTTP connection pool initialized. Max total: " + maxTotal + ", max per route: " + maxPerRoute);
+    }
+
+    /**
+     * Execute a request and fully consume the response so the connection goes back to the pool.
+     */
+    @Override
+    public Response execute(HttpUriRequest request) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        long received = 0;
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            byte[] content = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+            received = content.length;
+            return new Response(statusCode, new String(content, StandardCharsets.UTF_8), response.getAllHeaders());
+        } finally {
+            Metrics.recordRequest(Metrics.endpoint(request), statusCode, System.nanoTime() - start,
+                    Metrics.requestSize(request), received);
+        }
+    }
+
+    /**
+     * Execute a request and pass the response body stream to the handler. Whatever the handler leaves
+     * unread is drained so the connection can still go back to the pool.
+     */
+    @Override
+    public <T> T execute(HttpUriRequest request, BodyHandler<T> handler) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        Metrics.CountingInputStream body = null;
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            body = new Metrics.CountingInputStream(entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent());
+            try (InputStream in = body) {
+                Response head = new Response(statusCode, null, response.getAllHeaders());
+                return handler.handle(head, in);
+            } finally {
+                EntityUtils.consumeQuietly(entity);
+            }
+        } finally {
+            Metrics.recordRequest(Metrics.endpoint(request), statusCode, System.nanoTime() - start,
+                    Metrics.requestSize(request), body != null ? body.getCount() : 0);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing HTTP connection pool", e);
+        }
+        connectionManager.shutdown();
+    }
+}
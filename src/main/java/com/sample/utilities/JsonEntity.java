@@ -0,0 +1,255 @@
+package com.sample.utilities;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body that encodes JSON straight onto the connection with chunked transfer encoding.
+ *
+ * Unlike a {@code StringEntity}, no byte[] copy of the payload is made: a String payload is encoded in
+ * pooled chunks, and a {@link JsonElement} is serialized by a {@link JsonWriter} without ever becoming a
+ * String. The entity is repeatable, so a request can be replayed after a token renewal.
+ */
+public class JsonEntity extends AbstractHttpEntity {
+
+    private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+    private final String text;
+    private final JsonElement tree;
+    private final boolean gzip;
+    private volatile long writtenBytes = -1;
+
+    public JsonEntity(String json, boolean gzip) {
+        this(json, null, gzip);
+    }
+
+    public JsonEntity(JsonElement json, boolean gzip) {
+        this(null, json, gzip);
+    }
+
+    private JsonEntity(String text, JsonElement tree, boolean gzip) {
+        this.text = text;
+        this.tree = tree;
+        this.gzip = gzip;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+        if (gzip) {
+            setContentEncoding("gzip");
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    public boolean isCompressed() {
+        return gzip;
+    }
+
+    /**
+     * @return the same payload without gzip content encoding.
+     */
+    public JsonEntity uncompressed() {
+        return gzip ? new JsonEntity(text, tree, false) : this;
+    }
+
+    /**
+     * @return bytes put on the wire by the last {@link #writeTo}, or -1 if it was not written yet.
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Used by the async client, which pulls the body from a stream; the payload is encoded into one byte[] first.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(outStream);
+        // Closing the gzip stream writes its trailer and frees the native deflater, also when serializing fails
+        try (OutputStream target = gzip ? new GZIPOutputStream(counting, 8192) : counting;
+             EncodingWriter writer = new EncodingWriter(target)) {
+            if (text != null) {
+                writer.write(text);
+            } else {
+                // Same output as JsonElement.toString()
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                jsonWriter.setStrictness(Strictness.LENIENT);
+                ELEMENT_ADAPTER.write(jsonWriter, tree);
+                jsonWriter.flush();
+            }
+        }
+        writtenBytes = counting.count;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * UTF-8 writer over pooled buffers. Closing it releases the buffers but leaves the target stream open.
+     */
+    private static final class EncodingWriter extends Writer {
+        private final OutputStream out;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final char[] chars = BufferPool.acquireChars();
+        private final byte[] bytes = BufferPool.acquireBytes();
+        private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        private int count;
+        private boolean closed;
+
+        EncodingWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (count == chars.length) {
+                encode(false);
+            }
+            chars[count++] = (char) c;
+        }
+
+        @Override
+        public void write(char[] source, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chars.length) {
+                    encode(false);
+                }
+                int n = Math.min(length, chars.length - count);
+                System.arraycopy(source, offset, chars, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void write(String source, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == chars.length) {
+                    encode(false);
+                }
+                int n = Math.min(length, chars.length - count);
+                source.getChars(offset, offset + n, chars, count);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encode(false);
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                encode(true);
+                while (encoder.flush(byteBuffer).isOverflow()) {
+                    drain();
+                }
+                drain();
+            } finally {
+                BufferPool.release(chars);
+                BufferPool.release(bytes);
+            }
+        }
+
+        /**
+         * Encode the buffered characters. A high surrogate at the end of the buffer is kept for the next call.
+         */
+        private void encode(boolean endOfInput) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars, 0, count);
+            while (true) {
+                CoderResult result = encoder.encode(in, byteBuffer, endOfInput);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            count = in.remaining();
+            if (count > 0) {
+                System.arraycopy(chars, in.position(), chars, 0, count);
+            }
+        }
+
+        private void drain() throws IOException {
+            if (byteBuffer.position() > 0) {
+                out.write(bytes, 0, byteBuffer.position());
+                byteBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written. Closing it only flushes, so the connection's stream stays open.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.sample.utilities;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process wide request and phase metrics.
+ *
+ * Every HTTP request is recorded by the transports under its endpoint (method and path, with API and revision
+ * ids replaced by {@code {id}}): a latency histogram, status code counts and bytes sent and received. The
+ * update stages record how long each phase of an API took. Recording only touches atomic counters, so it is
+ * always on.
+ *
+ * With ENABLE.METRICS the metrics are written to METRICS.JSON.FILE and METRICS.PROMETHEUS.FILE (Prometheus
+ * text format, e.g. for the node_exporter textfile collector) every METRICS.INTERVAL seconds and at the end
+ * of the run.
+ */
+public final class Metrics {
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    private static final Map<String, Histogram> requestLatency = new ConcurrentHashMap<>();
+    private static final Map<String, Map<Integer, LongAdder>> statusCodes = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> bytesIn = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> bytesOut = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> phaseLatency = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> apis = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+    private static final long startTime = System.nanoTime();
+
+    private static ScheduledExecutorService reporter;
+    private static Path jsonFile;
+    private static Path prometheusFile;
+
+    private Metrics() {
+    }
+
+    /**
+     * Latency histogram in microseconds with 8 buckets per power of two, so any percentile is within 12.5%.
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long micros) {
+            long value = Math.max(0, micros);
+            buckets.incrementAndGet(index(value));
+            count.increment();
+            sum.add(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getSum() {
+            return sum.sum();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the given quantile, capped at the maximum seen.
+         */
+        long percentile(double quantile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+        }
+
+        static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+        }
+    }
+
+    /**
+     * Start writing the metrics files periodically, if ENABLE.METRICS is set.
+     */
+    public static synchronized void start(ConfigLoader configLoader) {
+        if (!Boolean.parseBoolean(configLoader.getProperty("ENABLE.METRICS"))) {
+            return;
+        }
+        jsonFile = Paths.get(configLoader.hasProperty("METRICS.JSON.FILE")
+                ? configLoader.getProperty("METRICS.JSON.FILE") : "metrics.json");
+        prometheusFile = Paths.get(configLoader.hasProperty("METRICS.PROMETHEUS.FILE")
+                ? configLoader.getProperty("METRICS.PROMETHEUS.FILE") : "metrics.prom");
+        int interval = configLoader.getIntProperty("METRICS.INTERVAL", 30);
+        if (interval > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> {
+                // An exception would cancel every later report
+                try {
+                    write();
+                    logger.log(Level.INFO, "***** Metrics : " + getProcessedAPIs() + " APIs processed ("
+                            + format(getAPIsPerSecond()) + " APIs/s), " + getRequestCount() + " requests");
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to report metrics", e);
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        logger.log(Level.INFO, "***** Metrics written to " + jsonFile + " and " + prometheusFile
+                + (interval > 0 ? " every " + interval + "s" : ""));
+    }
+
+    /**
+     * Write the final metrics and log the per-endpoint and per-phase latencies.
+     */
+    public static synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(phaseLatency).entrySet()) {
+            logger.log(Level.INFO, "***** Phase " + entry.getKey() + " : " + describe(entry.getValue()));
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(requestLatency).entrySet()) {
+            logger.log(Level.INFO, "***** Endpoint " + entry.getKey() + " : " + describe(entry.getValue())
+                    + ", status " + new TreeMap<>(statusCodes.get(entry.getKey())));
+        }
+        logger.log(Level.INFO, "***** Throughput : " + format(getAPIsPerSecond()) + " APIs/s");
+        if (jsonFile != null) {
+            write();
+        }
+    }
+
+    public static void recordRequest(String endpoint, int statusCode, long nanos, long sent, long received) {
+        // Reports walk requestLatency and look up statusCodes, so the status entry must exist first
+        statusCodes.computeIfAbsent(endpoint, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(statusCode, key -> new LongAdder()).increment();
+        requestLatency.computeIfAbsent(endpoint, key -> new Histogram()).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (sent > 0) {
+            bytesOut.computeIfAbsent(endpoint, key -> new LongAdder()).add(sent);
+        }
+        if (received > 0) {
+            bytesIn.computeIfAbsent(endpoint, key -> new LongAdder()).add(received);
+        }
+    }
+
+    /**
+     * Record a phase of an API (list, fetch, transform, update, revision, deploy) that started at {@code startNanos}.
+     */
+    public static void recordPhase(String phase, long startNanos) {
+        phaseLatency.computeIfAbsent(phase, key -> new Histogram())
+                .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public static void countAPI(String status, int delta) {
+        apis.computeIfAbsent(status, key -> new LongAdder()).add(delta);
+    }
+
+    public static void countRetry(String endpoint) {
+        retries.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return the endpoint a request is recorded under: method and path with ids replaced by {@code {id}}.
+     */
+    public static String endpoint(HttpUriRequest request) {
+        String path = request.getURI().getRawPath();
+        StringBuilder endpoint = new StringBuilder(request.getMethod()).append(' ');
+        String previous = "";
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            endpoint.append('/').append("apis".equals(previous) || "revisions".equals(previous) ? "{id}" : segment);
+            previous = segment;
+        }
+        return endpoint.toString();
+    }
+
+    public static long requestSize(HttpUriRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity instanceof JsonEntity) {
+                // Chunked; its size is only known once written
+                return Math.max(0, ((JsonEntity) entity).getWrittenBytes());
+            }
+            return entity != null ? Math.max(0, entity.getContentLength()) : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Input stream that counts the bytes read through it.
+     */
+    public static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private static long getProcessedAPIs() {
+        long total = 0;
+        for (Map.Entry<String, LongAdder> entry : apis.entrySet()) {
+            total += entry.getValue().sum();
+        }
+        return total;
+    }
+
+    private static double getAPIsPerSecond() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds > 0 ? getProcessedAPIs() / seconds : 0;
+    }
+
+    private static long getRequestCount() {
+        long total = 0;
+        for (Histogram histogram : requestLatency.values()) {
+            total += histogram.getCount();
+        }
+        return total;
+    }
+
+    private static void write() {
+        try {
+            writeAtomically(jsonFile, toJson());
+            writeAtomically(prometheusFile, toPrometheus());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write metrics", e);
+        }
+    }
+
+    static String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("elapsedSeconds", (System.nanoTime() - startTime) / 1e9);
+        root.addProperty("apisPerSecond", getAPIsPerSecond());
+        JsonObject apiCounts = new JsonObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(apis).entrySet()) {
+            apiCounts.addProperty(entry.getKey(), entry.getValue().sum());
+        }
+        root.add("apis", apiCounts);
+
+        JsonObject phases = new JsonObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(phaseLatency).entrySet()) {
+            phases.add(entry.getKey(), toJson(entry.getValue()));
+        }
+        root.add("phases", phases);
+
+        JsonObject requests = new JsonObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(requestLatency).entrySet()) {
+            JsonObject endpoint = toJson(entry.getValue());
+            JsonObject codes = new JsonObject();
+            for (Map.Entry<Integer, LongAdder> code : new TreeMap<>(statusCodes.get(entry.getKey())).entrySet()) {
+                codes.addProperty(String.valueOf(code.getKey()), code.getValue().sum());
+            }
+            endpoint.add("status", codes);
+            endpoint.addProperty("bytesIn", sum(bytesIn, entry.getKey()));
+            endpoint.addProperty("bytesOut", sum(bytesOut, entry.getKey()));
+            endpoint.addProperty("retries", sum(retries, entry.getKey()));
+            requests.add(entry.getKey(), endpoint);
+        }
+        root.add("requests", requests);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP apim_updater_request_duration_seconds Publisher and Key Manager request latency.\n");
+        out.append("# TYPE apim_updater_request_duration_seconds summary\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(requestLatency).entrySet()) {
+            appendSummary(out, "apim_updater_request_duration_seconds", "endpoint", entry.getKey(), entry.getValue());
+        }
+        out.append("# HELP apim_updater_requests_total Requests by endpoint and status code.\n");
+        out.append("# TYPE apim_updater_requests_total counter\n");
+        for (Map.Entry<String, Map<Integer, LongAdder>> entry : new TreeMap<>(statusCodes).entrySet()) {
+            for (Map.Entry<Integer, LongAdder> code : new TreeMap<>(entry.getValue()).entrySet()) {
+                out.append("apim_updater_requests_total{endpoint=\"").append(escape(entry.getKey()))
+                        .append("\",code=\"").append(code.getKey()).append("\"} ").append(code.getValue().sum()).append('\n');
+            }
+        }
+        out.append("# HELP apim_updater_request_bytes_total Bytes sent and received by endpoint.\n");
+        out.append("# TYPE apim_updater_request_bytes_total counter\n");
+        for (String endpoint : new TreeMap<>(requestLatency).keySet()) {
+            out.append("apim_updater_request_bytes_total{endpoint=\"").append(escape(endpoint))
+                    .append("\",direction=\"out\"} ").append(sum(bytesOut, endpoint)).append('\n');
+            out.append("apim_updater_request_bytes_total{endpoint=\"").append(escape(endpoint))
+                    .append("\",direction=\"in\"} ").append(sum(bytesIn, endpoint)).append('\n');
+        }
+        out.append("# HELP apim_updater_retries_total Requests sent again after a transient failure, by endpoint.\n");
+        out.append("# TYPE apim_updater_retries_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(retries).entrySet()) {
+            out.append("apim_updater_retries_total{endpoint=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+        out.append("# HELP apim_updater_phase_duration_seconds Time spent per API in each update phase.\n");
+        out.append("# TYPE apim_updater_phase_duration_seconds summary\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(phaseLatency).entrySet()) {
+            appendSummary(out, "apim_updater_phase_duration_seconds", "phase", entry.getKey(), entry.getValue());
+        }
+        out.append("# HELP apim_updater_apis_total Processed APIs by outcome.\n");
+        out.append("# TYPE apim_updater_apis_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(apis).entrySet()) {
+            out.append("apim_updater_apis_total{status=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+        out.append("# HELP apim_updater_apis_per_second Processed APIs per second since the start of the run.\n");
+        out.append("# TYPE apim_updater_apis_per_second gauge\n");
+        out.append("apim_updater_apis_per_second ").append(format(getAPIsPerSecond())).append('\n');
+        return out.toString();
+    }
+
+    private static void appendSummary(StringBuilder out, String name, String label, String value, Histogram histogram) {
+        String labels = label + "=\"" + escape(value) + "\"";
+        for (double quantile : new double[]{0.5, 0.95, 0.99, 1.0}) {
+            long micros = quantile == 1.0 ? histogram.getMax() : histogram.percentile(quantile);
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(micros / 1e6).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSum() / 1e6).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    private static JsonObject toJson(Histogram histogram) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", histogram.getCount());
+        json.addProperty("p50Ms", histogram.percentile(0.5) / 1000.0);
+        json.addProperty("p95Ms", histogram.percentile(0.95) / 1000.0);
+        json.addProperty("p99Ms", histogram.percentile(0.99) / 1000.0);
+        json.addProperty("maxMs", histogram.getMax() / 1000.0);
+        json.addProperty("totalMs", histogram.getSum() / 1000.0);
+        return json;
+    }
+
+    private static String describe(Histogram histogram) {
+        return histogram.getCount() + " x, p50 " + format(histogram.percentile(0.5) / 1000.0) + " ms, p95 "
+                + format(histogram.percentile(0.95) / 1000.0) + " ms, p99 " + format(histogram.percentile(0.99) / 1000.0)
+                + " ms, max " + format(histogram.getMax() / 1000.0) + " ms";
+    }
+
+    private static long sum(Map<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void writeAtomically(Path path, String content) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.sample.utilities;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive rate control for Publisher REST calls.
+ *
+ * Each endpoint class has its own token bucket. The allowed rate grows additively while the
+ * publisher answers quickly and is cut multiplicatively (AIMD) when a call is throttled (429),
+ * the server is unavailable (503), the connection fails, or latency exceeds the configured target.
+ */
+public class RateLimiter {
+
+    private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+    public enum EndpointClass {
+        READ,
+        WRITE,
+        REVISION,
+        DEPLOY
+    }
+
+    private final Map<EndpointClass, TokenBucket> buckets = new EnumMap<>(EndpointClass.class);
+
+    public RateLimiter(ConfigLoader configLoader) {
+        double initialRate = configLoader.getDoubleProperty("RATE.LIMIT.INITIAL", 5);
+        double minRate = configLoader.getDoubleProperty("RATE.LIMIT.MIN", 0.5);
+        double maxRate = configLoader.getDoubleProperty("RATE.LIMIT.MAX", 50);
+        long targetLatency = configLoader.getIntProperty("RATE.LIMIT.TARGET.LATENCY", 2000);
+        double increaseStep = configLoader.getDoubleProperty("RATE.LIMIT.INCREASE.STEP", 1);
+        double decreaseFactor = configLoader.getDoubleProperty("RATE.LIMIT.DECREASE.FACTOR", 0.5);
+
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String prefix = "RATE.LIMIT." + endpointClass + ".";
+            double classMax = configLoader.getDoubleProperty(prefix + "MAX", maxRate);
+            double classInitial = Math.min(configLoader.getDoubleProperty(prefix + "INITIAL", initialRate), classMax);
+            buckets.put(endpointClass, new TokenBucket(endpointClass, classInitial, minRate, classMax,
+                    targetLatency, increaseStep, decreaseFactor));
+        }
+    }
+
+    /**
+     * Block until a request of the given class is allowed to go out.
+     */
+    public void acquire(EndpointClass endpointClass) throws InterruptedException {
+        long waitNanos = reserve(endpointClass);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Reserve a permit without blocking.
+     *
+     * @return nanoseconds the caller must wait before sending the request, 0 if it may go out now.
+     */
+    public long reserve(EndpointClass endpointClass) {
+        return buckets.get(endpointClass).reserve();
+    }
+
+    /**
+     * Feed the outcome of a request back into the bucket of its class.
+     *
+     * @param latencyMillis time until the response status was received.
+     * @param statusCode    HTTP status, or -1 if the request failed without a response.
+     */
+    public void record(EndpointClass endpointClass, long latencyMillis, int statusCode) {
+        buckets.get(endpointClass).record(latencyMillis, statusCode);
+    }
+
+    public double getRate(EndpointClass endpointClass) {
+        return buckets.get(endpointClass).getRate();
+    }
+
+    public void logRates() {
+        for (TokenBucket bucket : buckets.values()) {
+            logger.log(Level.INFO, "***** Rate for " + bucket.endpointClass + " requests : "
+                    + String.format("%.2f", bucket.getRate()) + " req/s");
+        }
+    }
+
+    private static class TokenBucket {
+        private final EndpointClass endpointClass;
+        private final double minRate;
+        private final double maxRate;
+        private final long targetLatency;
+        private final double increaseStep;
+        private final double decreaseFactor;
+        private double rate;
+        private double tokens;
+        private long lastRefill;
+        private long lastDecrease;
+
+        TokenBucket(EndpointClass endpointClass, double initialRate, double minRate, double maxRate,
+                    long targetLatency, double increaseStep, double decreaseFactor) {
+            this.endpointClass = endpointClass;
+            this.minRate = minRate;
+            this.maxRate = maxRate;
+            this.targetLatency = targetLatency;
+            this.increaseStep = increaseStep;
+            this.decreaseFactor = decreaseFactor;
+            this.rate = Math.max(minRate, initialRate);
+            this.tokens = 1;
+            this.lastRefill = System.nanoTime();
+            this.lastDecrease = lastRefill;
+        }
+
+        synchronized long reserve() {
+            refill();
+            tokens -= 1;
+            if (tokens >= 0) {
+                return 0;
+            }
+            // Permits taken in advance leave the bucket negative, so later callers queue up behind them.
+            return (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        synchronized void record(long latencyMillis, int statusCode) {
+            boolean congested = statusCode == 429 || statusCode == 503 || statusCode < 0
+                    || latencyMillis > targetLatency;
+            long now = System.nanoTime();
+            if (congested) {
+                // Requests already in flight report the same congestion, so cut at most once per second.
+                if (now - lastDecrease < TimeUnit.SECONDS.toNanos(1)) {
+                    return;
+                }
+                refill();
+                rate = Math.max(minRate, rate * decreaseFactor);
+                tokens = Math.min(tokens, 1);
+                lastDecrease = now;
+                logger.log(Level.INFO, "***** Reducing " + endpointClass + " rate to " + String.format("%.2f", rate)
+                        + " req/s (status " + statusCode + ", latency " + latencyMillis + "ms)");
+            } else if (rate < maxRate) {
+                // Spread the increase over the requests of one second so the rate grows by increaseStep per second.
+                refill();
+                rate = Math.min(maxRate, rate + increaseStep / rate);
+            }
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            double elapsedSeconds = (now - lastRefill) / (double) TimeUnit.SECONDS.toNanos(1);
+            // Allow a burst of up to one second worth of requests.
+            tokens = Math.min(Math.max(1, rate), tokens + elapsedSeconds * rate);
+            lastRefill = now;
+        }
+    }
+}
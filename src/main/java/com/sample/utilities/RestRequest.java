@@ -1,171 +1,200 @@
 package com.sample.utilities;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import com.google.gson.stream.JsonReader;
+import com.sample.bean.API;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class RestRequest {
+public class RestRequest implements Closeable {
 
     private static final Logger logger = Logger.getLogger(RestRequest.class.getName());
+    private static final Gson gson = new Gson();
     private final ConfigLoader configLoader;
     private final String publisherRestURL;
-    private final String tokenURL;
-    private final String clientRegistrationURL;
-    private final String adminUsername;
-    private final String adminPassword;
-    public static class ClientCredentials {
-        public String clientId;
-        public String clientSecret;
+    private final RateLimiter rateLimiter;
+    private final Transport transport;
+    private final TokenManager tokenManager;
+    private final APIDetailsCache detailsCache;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private volatile boolean gzipRequests;
+    private volatile ResponseListener responseListener;
+
+    /**
+     * Consumes an API payload while it is read from the connection.
+     */
+    public interface PayloadHandler<T> {
+        T handle(Reader payload) throws IOException;
+    }
+
+    /**
+     * Told about every Publisher response, including those that are retried. Called on the thread that
+     * received the response, so it must be quick.
+     */
+    public interface ResponseListener {
+        void onResponse(HttpUriRequest request, int statusCode, long nanos);
     }
 
-    public RestRequest(ConfigLoader configLoader) {
+    public RestRequest(ConfigLoader configLoader, SSLContext sslContext) {
         this.configLoader = configLoader;
         this.publisherRestURL = configLoader.getProperty("PUBLISHER.REST.URL");
-        this.tokenURL = configLoader.getProperty("RESIDENTKM.TOKEN.URL");
-        this.clientRegistrationURL = configLoader.getProperty("RESIDENTKM.DCR.URL");
-        this.adminUsername = configLoader.getProperty("RESIDENTKM.USERNAME");
-        this.adminPassword = configLoader.getProperty("RESIDENTKM.PASSWORD");
+        this.rateLimiter = new RateLimiter(configLoader);
+        this.transport = Transport.create(configLoader, sslContext);
+        this.tokenManager = new TokenManager(configLoader, transport);
+        this.detailsCache = createDetailsCache(configLoader);
+        this.retryPolicy = new RetryPolicy(configLoader);
+        this.circuitBreaker = new CircuitBreaker(configLoader);
+        this.gzipRequests = Boolean.parseBoolean(configLoader.getProperty("HTTP.REQUEST.GZIP"));
     }
-    public ClientCredentials registerClient() {
-        ClientCredentials credentials = new ClientCredentials();
 
+    private static APIDetailsCache createDetailsCache(ConfigLoader configLoader) {
+        if (!Boolean.parseBoolean(configLoader.getProperty("ENABLE.API.DETAILS.CACHE"))) {
+            return null;
+        }
         try {
-
-            URL url = new URL(clientRegistrationURL);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            // Basic admin authentication
-            String auth = adminUsername + ":" + adminPassword;
-            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-            conn.setRequestProperty("Authorization", "Basic " + encodedAuth);
-
-            conn.setDoOutput(true);
-
-            // Minimal JSON payload required by DCR API
-            String body = "{\n" +
-                    "  \"callbackUrl\": \"www.google.lk\",\n" +
-                    "  \"clientName\": \"rest_api_publisher\",\n" +
-                    "  \"owner\": \"" + adminUsername + "\",\n" +
-                    "  \"grantType\": \"password client_credentials refresh_token\"\n" +
-                    "}";
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(body.getBytes(StandardCharsets.UTF_8));
-            }
-
-            int code = conn.getResponseCode();
-
-            if (code == 200 || code == 201) {
-                String response = readResponse(conn.getInputStream());
-                JsonObject json = JsonParser.parseString(response).getAsJsonObject();
-
-                credentials.clientId = json.get("clientId").getAsString();
-                credentials.clientSecret = json.get("clientSecret").getAsString();
-
-                return credentials;
-            } else {
-                logger.log(Level.SEVERE, "Failed to register client. Code: " + code);
-            }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error registering client", e);
+            return new APIDetailsCache(configLoader);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to open API details cache. Continuing without it.", e);
+            return null;
         }
-
-        return null;
     }
 
-    public String getAccessToken() {
-        try {
-            ClientCredentials creds = registerClient();  // NEW LINE
-
-            if (creds == null) {
-                logger.log(Level.SEVERE, "DCR client registration failed. Cannot continue.");
-                return null;
-            }
-
-            URL url = new URL(tokenURL);
-
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
 
-            // Use DCR client credentials
-            String auth = creds.clientId + ":" + creds.clientSecret;
-            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-            conn.setRequestProperty("Authorization", "Basic " + encodedAuth);
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
 
-            conn.setDoOutput(true);
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
 
-            String requestBody = "grant_type=password&username=" + adminUsername +
-                    "&password=" + adminPassword +
-                    "&scope=apim:api_view apim:api_create apim:api_manage";
+    public ResponseListener getResponseListener() {
+        return responseListener;
+    }
 
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(requestBody.getBytes(StandardCharsets.UTF_8));
-            }
+    public void setResponseListener(ResponseListener responseListener) {
+        this.responseListener = responseListener;
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = readResponse(conn.getInputStream());
-                JsonObject json = JsonParser.parseString(response).getAsJsonObject();
-                return json.get("access_token").getAsString();
-            } else {
-                logger.log(Level.SEVERE, "Failed to get access token. Response code: " + responseCode);
-            }
+    public TokenManager getTokenManager() {
+        return tokenManager;
+    }
 
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error getting access token", e);
-        }
-        return null;
+    /**
+     * @return the API details cache, or null if ENABLE.API.DETAILS.CACHE is off.
+     */
+    public APIDetailsCache getDetailsCache() {
+        return detailsCache;
+    }
+    /**
+     * @return a valid access token, or null if the Key Manager cannot issue one.
+     */
+    public String getAccessToken() {
+        return tokenManager.getAccessToken();
     }
 
+    public JsonObject getAPIs(int limit, int offset) {
+        return getAPIs(limit, offset, null);
+    }
 
-    public String getAPIs(int limit, int offset, String accessToken) {
+    /**
+     * List APIs, letting the publisher filter them with a search query (e.g. {@code status:PUBLISHED provider:admin}).
+     *
+     * @return the page, parsed as it is read from the connection, or null on failure.
+     */
+    public JsonObject getAPIs(int limit, int offset, String query) {
         try {
             String urlString = publisherRestURL + "?limit=" + limit + "&offset=" + offset;
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                return readResponse(conn.getInputStream());
-            } else {
-                logger.log(Level.SEVERE, "Failed to get APIs. Response code: " + responseCode);
-                return null;
+            if (query != null && !query.isEmpty()) {
+                urlString += "&query=" + URLEncoder.encode(query, StandardCharsets.UTF_8.name());
             }
+            return send(new HttpGet(urlString), RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null, (head, body) -> {
+                if (head.getStatusCode() == 200) {
+                    return parse(body).getAsJsonObject();
+                }
+                logger.log(Level.SEVERE, "Failed to get APIs. Response code: " + head.getStatusCode());
+                return null;
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error getting APIs", e);
             return null;
         }
     }
 
-    public String getAPIDetails(String apiId, String accessToken) {
-        try {
-            String urlString = publisherRestURL + "/" + apiId;
-            logger.log(Level.INFO, "urlString: " + urlString);
+    public String getAPIDetails(String apiId) {
+        return getAPIDetails(apiId, null);
+    }
 
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
+    /**
+     * Fetch an API definition, going through the details cache when it is enabled.
+     *
+     * @param lastUpdatedTime {@code lastUpdatedTime} from the API listing. When it matches the cached copy the
+     *                        definition is served without a request; otherwise the cached copy is revalidated.
+     */
+    public String getAPIDetails(String apiId, String lastUpdatedTime) {
+        try {
+            APIDetailsCache.Entry cached = detailsCache != null ? detailsCache.lookup(apiId) : null;
+            if (detailsCache != null && detailsCache.isFresh(cached, lastUpdatedTime)) {
+                try {
+                    String apiDetails = detailsCache.read(apiId, false);
+                    if (apiDetails != null) {
+                        return apiDetails;
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to read cached API details for " + apiId + ". Downloading.", e);
+                    detailsCache.invalidate(apiId);
+                }
+                cached = null;
+            }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                return readResponse(conn.getInputStream());
+            String urlString = publisherRestURL + "/" + apiId;
+            logger.log(Level.FINE, () -> "urlString: " + urlString);
+
+            HttpGet request = new HttpGet(urlString);
+            APIDetailsCache.addConditionalHeaders(request, cached);
+            HttpTransport.Response response = send(request, RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null);
+
+            int responseCode = response.getStatusCode();
+            if (responseCode == 304 && cached != null) {
+                detailsCache.refresh(apiId, lastUpdatedTime);
+                String apiDetails = detailsCache.read(apiId, true);
+                // Evicted while the request was in flight: download it without the conditional headers
+                return apiDetails != null ? apiDetails : getAPIDetails(apiId, lastUpdatedTime);
+            } else if (responseCode == 200) {
+                if (detailsCache != null) {
+                    detailsCache.store(apiId, response.getBody(), response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"), lastUpdatedTime);
+                }
+                return response.getBody();
             } else {
                 logger.log(Level.SEVERE, "Failed to get API details for " + apiId + ". Response code: " + responseCode);
                 return null;
@@ -176,95 +205,146 @@ public class RestRequest {
         }
     }
 
-    public String updateAPI(String apiId, String apiPayload, String accessToken) {
+    /**
+     * Fetch an API definition and hand the payload to the handler as it streams in, without buffering it.
+     * With the details cache enabled the payload is copied to the cache while the handler reads it.
+     *
+     * @return the handler's result, or null if the API could not be fetched.
+     */
+    public <T> T getAPIDetails(String apiId, String lastUpdatedTime, PayloadHandler<T> handler) {
         try {
-            String urlString = publisherRestURL + "/" + apiId;
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("PUT");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(apiPayload.getBytes(StandardCharsets.UTF_8));
+            APIDetailsCache.Entry lookedUp = detailsCache != null ? detailsCache.lookup(apiId) : null;
+            if (detailsCache != null && detailsCache.isFresh(lookedUp, lastUpdatedTime)) {
+                try (Reader payload = detailsCache.open(apiId, false)) {
+                    if (payload != null) {
+                        return handler.handle(payload);
+                    }
+                }
+                lookedUp = null;
             }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                logger.log(Level.INFO, "API updated successfully.");
-                return readResponse(conn.getInputStream());
-            } else {
-                String errorResponse = readResponse(conn.getErrorStream());
-                logger.log(Level.SEVERE, "Failed to update API. Response code: " + responseCode + ", Error: " + errorResponse);
+            APIDetailsCache.Entry cached = lookedUp;
+            String urlString = publisherRestURL + "/" + apiId;
+            HttpGet request = new HttpGet(urlString);
+            APIDetailsCache.addConditionalHeaders(request, cached);
+            boolean[] evicted = new boolean[1];
+            T result = send(request, RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null, (head, body) -> {
+                int responseCode = head.getStatusCode();
+                if (responseCode == 304 && cached != null) {
+                    detailsCache.refresh(apiId, lastUpdatedTime);
+                    try (Reader payload = detailsCache.open(apiId, true)) {
+                        if (payload == null) {
+                            evicted[0] = true;
+                            return null;
+                        }
+                        return handler.handle(payload);
+                    }
+                }
+                if (responseCode == 200) {
+                    if (detailsCache == null) {
+                        return handler.handle(new InputStreamReader(body, StandardCharsets.UTF_8));
+                    }
+                    try (InputStream cachingBody = detailsCache.tee(apiId, body, head.getHeader("ETag"),
+                            head.getHeader("Last-Modified"), lastUpdatedTime)) {
+                        return handler.handle(new InputStreamReader(cachingBody, StandardCharsets.UTF_8));
+                    }
+                }
+                logger.log(Level.SEVERE, "Failed to get API details for " + apiId + ". Response code: " + responseCode);
                 return null;
-            }
+            });
+            // Evicted while the request was in flight: download it without the conditional headers
+            return evicted[0] ? getAPIDetails(apiId, lastUpdatedTime, handler) : result;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error updating API", e);
+            logger.log(Level.SEVERE, "Error getting API details", e);
             return null;
         }
     }
 
-    public int getRevisionCount(String apiId, String accessToken) {
+    /**
+     * Update an API. The payload is encoded onto the connection in chunks rather than copied into a byte[].
+     *
+     * @return the updated API as the publisher stored it (summary fields only), or null on failure.
+     */
+    public API updateAPI(String apiId, String apiPayload) {
+        return updateAPI(apiId, new JsonEntity(apiPayload, gzipRequests));
+    }
+
+    /**
+     * Update an API from a parsed definition, serialized straight onto the connection.
+     */
+    public API updateAPI(String apiId, JsonObject apiJson) {
+        return updateAPI(apiId, new JsonEntity(apiJson, gzipRequests));
+    }
+
+    private API updateAPI(String apiId, JsonEntity payload) {
         try {
-            String urlString = publisherRestURL + "/" + apiId + "/revisions";
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = readResponse(conn.getInputStream());
-                JsonObject jsonResponse = JsonParser.parseString(response).getAsJsonObject();
-                return jsonResponse.get("count").getAsInt();
+            String urlString = publisherRestURL + "/" + apiId;
+            boolean[] encodingRejected = new boolean[1];
+            API updated = send(new HttpPut(urlString), RateLimiter.EndpointClass.WRITE, RetryPolicy.Idempotency.IDEMPOTENT, payload,
+                    (head, body) -> {
+                int responseCode = head.getStatusCode();
+                if (responseCode == 200) {
+                    logger.log(Level.FINE, "API updated successfully.");
+                    if (detailsCache != null) {
+                        detailsCache.invalidate(apiId);
+                    }
+                    // Only the summary fields are bound; the rest of the echoed definition is skipped unparsed
+                    return gson.<API>fromJson(new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)), API.class);
+                }
+                if (responseCode == 415 && payload.isCompressed()) {
+                    encodingRejected[0] = true;
+                    return null;
+                }
+                logger.log(Level.SEVERE, "Failed to update API. Response code: " + responseCode + ", Error: " + readError(body));
+                return null;
+            });
+            if (encodingRejected[0]) {
+                // The gateway in front of the publisher does not accept gzip bodies; stop compressing for this run
+                if (gzipRequests) {
+                    gzipRequests = false;
+                    logger.log(Level.WARNING, "Publisher rejected a gzip request body (415). Sending uncompressed bodies.");
+                }
+                return updateAPI(apiId, payload.uncompressed());
             }
+            return updated;
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error getting revision count", e);
+            logger.log(Level.SEVERE, "Error updating API", e);
+            return null;
         }
-        return 0;
     }
 
-    public String getOldestRevisionId(String apiId, String accessToken) {
+    /**
+     * @return the revisions of the API, oldest first, or null if they could not be fetched.
+     */
+    public JsonArray getRevisions(String apiId) {
         try {
             String urlString = publisherRestURL + "/" + apiId + "/revisions";
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = readResponse(conn.getInputStream());
-                JsonObject jsonResponse = JsonParser.parseString(response).getAsJsonObject();
-                JsonArray revisions = jsonResponse.getAsJsonArray("list");
-
-                if (revisions != null && revisions.size() > 0) {
-                    // Get the oldest revision (first one in the list)
-                    JsonObject oldestRevision = revisions.get(0).getAsJsonObject();
-                    return oldestRevision.get("id").getAsString();
+            return send(new HttpGet(urlString), RateLimiter.EndpointClass.REVISION, RetryPolicy.Idempotency.SAFE, null, (head, body) -> {
+                if (head.getStatusCode() == 200) {
+                    JsonArray revisions = parse(body).getAsJsonObject().getAsJsonArray("list");
+                    return revisions != null ? revisions : new JsonArray();
                 }
-            }
+                logger.log(Level.SEVERE, "Failed to get revisions. Response code: " + head.getStatusCode());
+                return null;
+            });
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error getting oldest revision", e);
+            logger.log(Level.SEVERE, "Error getting revisions", e);
         }
         return null;
     }
 
-    public void deleteRevision(String apiId, String revisionId, String accessToken) {
+    public void deleteRevision(String apiId, String revisionId) {
         try {
             String urlString = publisherRestURL + "/" + apiId + "/revisions/" + revisionId;
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("DELETE");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
+            HttpTransport.Response response = send(new HttpDelete(urlString), RateLimiter.EndpointClass.REVISION,
+                    RetryPolicy.Idempotency.SAFE, null);
 
-            int responseCode = conn.getResponseCode();
+            int responseCode = response.getStatusCode();
             if (responseCode == 200 || responseCode == 204) {
-                logger.log(Level.INFO, "Successfully deleted revision ID: " + revisionId + " for API ID: " + apiId);
+                logger.log(Level.INFO, () -> "Successfully deleted revision ID: " + revisionId + " for API ID: " + apiId);
+            } else if (responseCode == 404) {
+                // A retried delete finds the revision already gone
+                logger.log(Level.INFO, () -> "Revision ID: " + revisionId + " for API ID: " + apiId + " is already deleted.");
             } else {
                 logger.log(Level.SEVERE, "Failed to delete revision. Response code: " + responseCode);
             }
@@ -273,94 +353,236 @@ public class RestRequest {
         }
     }
 
-    public String createRevision(String apiId, String accessToken) {
+    public String createRevision(String apiId) {
         try {
             String urlString = publisherRestURL + "/" + apiId + "/revisions";
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-
             String requestBody = "{\"description\":\"Throttling policy update\"}";
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(requestBody.getBytes(StandardCharsets.UTF_8));
-            }
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200 || responseCode == 201) {
-                String response = readResponse(conn.getInputStream());
-                JsonObject jsonResponse = JsonParser.parseString(response).getAsJsonObject();
-                return jsonResponse.get("id").getAsString();
-            } else {
+            return send(new HttpPost(urlString), RateLimiter.EndpointClass.REVISION, RetryPolicy.Idempotency.NON_IDEMPOTENT,
+                    json(requestBody), (head, body) -> {
+                int responseCode = head.getStatusCode();
+                if (responseCode == 200 || responseCode == 201) {
+                    return parse(body).getAsJsonObject().get("id").getAsString();
+                }
                 logger.log(Level.SEVERE, "Failed to create revision. Response code: " + responseCode);
                 return null;
-            }
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error creating revision", e);
             return null;
         }
     }
 
-    public String getDeploymentEnvironments(String apiId, String accessToken) {
+    /**
+     * @return the environments the API is deployed to, or null if they could not be fetched.
+     */
+    public JsonArray getDeployments(String apiId) {
         try {
             String urlString = publisherRestURL + "/" + apiId + "/deployments";
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                String response = readResponse(conn.getInputStream());
-                JsonArray environments = JsonParser.parseString(response).getAsJsonArray();
-                return environments.toString();
-            }
+            return send(new HttpGet(urlString), RateLimiter.EndpointClass.READ, RetryPolicy.Idempotency.SAFE, null, (head, body) -> {
+                if (head.getStatusCode() == 200) {
+                    return parse(body).getAsJsonArray();
+                }
+                logger.log(Level.SEVERE, "Failed to get deployment environments. Response code: " + head.getStatusCode());
+                return null;
+            });
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error getting deployment environments", e);
         }
-        return "[]";
+        return null;
     }
 
-    public void deployRevision(String apiId, String revisionId, String deploymentPayload, String accessToken) {
+    public boolean deployRevision(String apiId, String revisionId, String deploymentPayload) {
         try {
             String urlString = publisherRestURL + "/" + apiId + "/deploy-revision?revisionId=" + revisionId;
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Bearer " + accessToken);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(deploymentPayload.getBytes(StandardCharsets.UTF_8));
-            }
+            HttpTransport.Response response = send(new HttpPost(urlString), RateLimiter.EndpointClass.DEPLOY,
+                    RetryPolicy.Idempotency.IDEMPOTENT, json(deploymentPayload));
 
-            int responseCode = conn.getResponseCode();
+            int responseCode = response.getStatusCode();
             if (responseCode == 200 || responseCode == 201) {
-                logger.log(Level.INFO, "Successfully deployed revision " + revisionId);
+                logger.log(Level.FINE, () -> "Successfully deployed revision " + revisionId);
+                return true;
             } else {
                 logger.log(Level.SEVERE, "Failed to deploy revision. Response code: " + responseCode);
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error deploying revision", e);
         }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        tokenManager.close();
+        transport.close();
+        if (detailsCache != null) {
+            detailsCache.logStatistics();
+            detailsCache.close();
+        }
+    }
+
+    /**
+     * Send a Publisher request and buffer the response body.
+     */
+    private HttpTransport.Response send(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                                        RetryPolicy.Idempotency idempotency, HttpEntity body)
+            throws IOException, InterruptedException {
+        return send(request, endpointClass, idempotency, body, (head, responseBody) -> head.withBody(readBody(responseBody)));
+    }
+
+    /**
+     * Send a Publisher request through the circuit breaker, the rate limiter and the shared connection pool.
+     *
+     * A request rejected with 401 is sent once more with a renewed token. Failures the retry policy allows for
+     * this kind of request (overload responses, timeouts, connection errors) are retried with backoff. The handler
+     * only sees the final response.
+     */
+    private <T> T send(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                       RetryPolicy.Idempotency idempotency, HttpEntity body,
+                       HttpTransport.BodyHandler<T> handler) throws IOException, InterruptedException {
+        prepare(request, body);
+        boolean tokenRenewed = false;
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = attempt >= retryPolicy.getMaxAttempts();
+            boolean renewToken = !tokenRenewed;
+            HttpTransport.Response[] intercepted = {null};
+            T result;
+            try {
+                result = execute(request, endpointClass, (head, responseBody) -> {
+                    if ((head.getStatusCode() == 401 && renewToken) || (!lastAttempt
+                            && retryPolicy.isRetryable(idempotency, head.getStatusCode(), head.getHeader("Retry-After")))) {
+                        intercepted[0] = head;
+                        return null;
+                    }
+                    return handler.handle(head, responseBody);
+                });
+            } catch (IOException e) {
+                if (lastAttempt || !retryPolicy.isRetryable(idempotency, e)) {
+                    throw e;
+                }
+                backOff(request, attempt, e.toString(), null);
+                continue;
+            }
+            HttpTransport.Response rejected = intercepted[0];
+            if (rejected == null) {
+                return result;
+            }
+            if (rejected.getStatusCode() == 401) {
+                tokenRenewed = true;
+                if (!renewToken(request)) {
+                    // Let the handler see the rejection, its body is already discarded
+                    return handler.handle(rejected, new ByteArrayInputStream(new byte[0]));
+                }
+                // A renewed token is not a retry
+                attempt--;
+                continue;
+            }
+            backOff(request, attempt, "status " + rejected.getStatusCode(), rejected.getHeader("Retry-After"));
+        }
     }
 
-    private String readResponse(InputStream inputStream) throws IOException {
-        if (inputStream == null) {
-            return "";
+    private void backOff(HttpRequestBase request, int attempt, String reason, String retryAfter) throws InterruptedException {
+        long delay = retryPolicy.getDelayMillis(attempt, retryAfter);
+        logger.log(Level.WARNING, request.getMethod() + " " + request.getURI().getPath() + " failed (" + reason
+                + "). Retrying in " + delay + "ms (attempt " + (attempt + 1) + " of " + retryPolicy.getMaxAttempts() + ").");
+        Metrics.countRetry(Metrics.endpoint(request));
+        TimeUnit.MILLISECONDS.sleep(delay);
+    }
+
+    /**
+     * Replace the token a request was rejected with.
+     *
+     * @return true if the request can be sent again.
+     */
+    private boolean renewToken(HttpRequestBase request) {
+        String rejectedToken = request.getFirstHeader("Authorization").getValue().substring("Bearer ".length());
+        if (tokenManager.renew(rejectedToken) == null) {
+            logger.log(Level.SEVERE, "Access token rejected and could not be renewed.");
+            return false;
         }
+        logger.log(Level.INFO, "Access token rejected. Retrying with a renewed token.");
+        return true;
+    }
+
+    /**
+     * The token is attached only once the circuit breaker and the rate limiter admit the request, so it cannot
+     * expire while queued.
+     */
+    private <T> T execute(HttpRequestBase request, RateLimiter.EndpointClass endpointClass,
+                          HttpTransport.BodyHandler<T> handler) throws IOException, InterruptedException {
+        boolean probe = circuitBreaker.acquire();
+        rateLimiter.acquire(endpointClass);
+        request.setHeader("Authorization", "Bearer " + tokenManager.getAccessToken());
+        long start = System.nanoTime();
+        int[] responseCode = {-1};
+        long[] retryAfter = {0};
+        long[] headElapsed = {-1};
+        try {
+            return transport.execute(request, (head, responseBody) -> {
+                headElapsed[0] = System.nanoTime() - start;
+                responseCode[0] = head.getStatusCode();
+                retryAfter[0] = RetryPolicy.parseRetryAfter(head.getHeader("Retry-After"));
+                return handler.handle(head, responseBody);
+            });
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            // The publisher's latency ends with the status line; reading and transforming a streamed body is ours
+            long latency = headElapsed[0] >= 0 ? headElapsed[0] : elapsed;
+            rateLimiter.record(endpointClass, TimeUnit.NANOSECONDS.toMillis(latency), responseCode[0]);
+            circuitBreaker.record(responseCode[0], retryAfter[0], probe);
+            ResponseListener listener = responseListener;
+            if (listener != null) {
+                listener.onResponse(request, responseCode[0], elapsed);
+            }
+        }
+    }
+
+    private void prepare(HttpRequestBase request, HttpEntity body) {
+        request.setHeader("Content-Type", "application/json");
+        if (body != null) {
+            ((HttpEntityEnclosingRequestBase) request).setEntity(body);
+        }
+    }
+
+    /**
+     * Small request bodies are sent with a Content-Length; API definitions go through {@link JsonEntity}.
+     */
+    static HttpEntity json(String body) {
+        return new StringEntity(body, ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Parse a response body while it is read from the connection.
+     */
+    private static JsonElement parse(InputStream body) {
+        return JsonParser.parseReader(new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+    }
+
+    private static String readBody(InputStream body) throws IOException {
+        StringBuilder content = new StringBuilder();
+        char[] buffer = BufferPool.acquireChars();
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                content.append(buffer, 0, read);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+        return content.toString();
+    }
 
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+    private static String readError(InputStream body) throws IOException {
+        StringBuilder error = new StringBuilder();
+        char[] buffer = BufferPool.acquireChars();
+        try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            int read;
+            // Error descriptions are short; do not buffer an echoed definition
+            while (error.length() < 4096 && (read = reader.read(buffer, 0, 4096 - error.length())) != -1) {
+                error.append(buffer, 0, read);
             }
+        } finally {
+            BufferPool.release(buffer);
         }
-        return response.toString();
+        return error.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.sample.utilities;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed Publisher requests are sent again, and when.
+ *
+ * Whether a request may be repeated depends on what it does: reads and deletes are always safe to repeat,
+ * a PUT of a full definition or a deployment only when the failure was transient, and a revision creation
+ * only when the publisher cannot have processed it (throttled, unavailable, or never connected), since
+ * repeating it blindly could leave an extra revision. Retries back off exponentially with jitter, capped
+ * at RETRY.MAX.DELAY, and wait at least as long as a Retry-After header asks.
+ */
+public class RetryPolicy {
+
+    public enum Idempotency {
+        // GET, DELETE
+        SAFE,
+        // PUT of a full definition, deploying a revision
+        IDEMPOTENT,
+        // Creating a revision
+        NON_IDEMPOTENT
+    }
+
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long maxRetryAfter;
+
+    public RetryPolicy(ConfigLoader configLoader) {
+        this.maxAttempts = Math.max(1, configLoader.getIntProperty("RETRY.MAX.ATTEMPTS", 4));
+        this.baseDelay = Math.max(1, configLoader.getIntProperty("RETRY.BASE.DELAY", 500));
+        this.maxDelay = Math.max(baseDelay, configLoader.getIntProperty("RETRY.MAX.DELAY", 30000));
+        this.maxRetryAfter = configLoader.getIntProperty("RETRY.MAX.RETRY.AFTER", 300000);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return true if a request that got this response may be sent again.
+     */
+    public boolean isRetryable(Idempotency idempotency, int statusCode, String retryAfter) {
+        if (parseRetryAfter(retryAfter) > maxRetryAfter) {
+            // The publisher will not take it within the time we are willing to wait
+            return false;
+        }
+        switch (statusCode) {
+            case 429:
+            case 503:
+                return true;
+            case 408:
+            case 502:
+            case 504:
+                return idempotency != Idempotency.NON_IDEMPOTENT;
+            case 500:
+                return idempotency == Idempotency.SAFE;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if a request that failed with this exception may be sent again.
+     */
+    public boolean isRetryable(Idempotency idempotency, Throwable failure) {
+        Throwable cause = unwrap(failure);
+        if (!(cause instanceof IOException)) {
+            return false;
+        }
+        if (idempotency != Idempotency.NON_IDEMPOTENT) {
+            return true;
+        }
+        // Only failures that happen before the request reaches the publisher
+        return cause instanceof ConnectException
+                || cause instanceof ConnectTimeoutException
+                || cause instanceof ConnectionPoolTimeoutException
+                || cause instanceof UnknownHostException
+                || "java.net.http.HttpConnectTimeoutException".equals(cause.getClass().getName());
+    }
+
+    /**
+     * Delay before the given retry (1 for the first): a random time between half and all of
+     * baseDelay * 2^(retry-1), capped at RETRY.MAX.DELAY, but never less than the Retry-After the publisher asked for.
+     * The randomness keeps workers that failed together from retrying together.
+     */
+    public long getDelayMillis(int retry, String retryAfter) {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(retry - 1, 30));
+        long backoff = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        return Math.max(backoff, parseRetryAfter(retryAfter));
+    }
+
+    /**
+     * @return the Retry-After header (delta-seconds or HTTP-date) in milliseconds, or 0 if absent or invalid.
+     */
+    public static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : 0;
+        }
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
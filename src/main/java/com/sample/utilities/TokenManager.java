@@ -0,0 +1,331 @@
+package com.sample.utilities;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Owns the Publisher access token for the whole run.
+ *
+ * The DCR client is registered once and persisted, so later runs reuse it instead of registering a new client
+ * every time. The token is refreshed with the refresh_token grant shortly before it expires, and again
+ * whenever a request is rejected with 401. All refreshes go through one lock, so concurrent workers that see
+ * an expired token wait for a single refresh and then share its result.
+ */
+public class TokenManager implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TokenManager.class.getName());
+    private static final Gson gson = new Gson();
+    private static final String SCOPES = "apim:api_view apim:api_create apim:api_manage";
+
+    private final Transport transport;
+    private final String tokenURL;
+    private final String clientRegistrationURL;
+    private final String adminUsername;
+    private final String adminPassword;
+    private final Path credentialsFile;
+    private final long refreshMarginMillis;
+    private final ScheduledExecutorService refresher;
+
+    private ClientCredentials client;
+    private volatile Token current;
+    private ScheduledFuture<?> scheduledRefresh;
+    private int lastTokenResponseCode;
+
+    public static class ClientCredentials {
+        public String clientId;
+        public String clientSecret;
+    }
+
+    private static final class Token {
+        final String accessToken;
+        final String refreshToken;
+        // When to replace the token: TOKEN.REFRESH.MARGIN before expiry, or halfway for short lived tokens
+        final long refreshAt;
+
+        Token(String accessToken, String refreshToken, long refreshAt) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.refreshAt = refreshAt;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < refreshAt;
+        }
+    }
+
+    public TokenManager(ConfigLoader configLoader, Transport transport) {
+        this.transport = transport;
+        this.tokenURL = configLoader.getProperty("RESIDENTKM.TOKEN.URL");
+        this.clientRegistrationURL = configLoader.getProperty("RESIDENTKM.DCR.URL");
+        this.adminUsername = configLoader.getProperty("RESIDENTKM.USERNAME");
+        this.adminPassword = configLoader.getProperty("RESIDENTKM.PASSWORD");
+        // An empty DCR.CREDENTIALS.FILE disables persisting the client
+        String file = configLoader.hasProperty("DCR.CREDENTIALS.FILE")
+                ? configLoader.getProperty("DCR.CREDENTIALS.FILE") : "dcr-client.json";
+        this.credentialsFile = file.isEmpty() ? null : Paths.get(file);
+        this.refreshMarginMillis = TimeUnit.SECONDS.toMillis(configLoader.getIntProperty("TOKEN.REFRESH.MARGIN", 60));
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a valid access token, refreshing it first if it is about to expire, or null if none can be obtained.
+     */
+    public String getAccessToken() {
+        Token token = current;
+        if (token != null && token.isFresh()) {
+            return token.accessToken;
+        }
+        return renew(token == null ? null : token.accessToken);
+    }
+
+    /**
+     * @return the access token if it does not need replacing yet, or null. Never waits for the token endpoint.
+     */
+    public String getFreshAccessToken() {
+        Token token = current;
+        return token != null && token.isFresh() ? token.accessToken : null;
+    }
+
+    /**
+     * Replace a token the server rejected or that is about to expire. If another thread already replaced it,
+     * its result is returned without another round trip.
+     *
+     * @return the new access token, or null if none can be obtained.
+     */
+    public synchronized String renew(String staleToken) {
+        Token token = current;
+        if (token != null && !token.accessToken.equals(staleToken) && token.isFresh()) {
+            return token.accessToken;
+        }
+
+        Token renewed = null;
+        if (token != null && token.refreshToken != null) {
+            renewed = requestToken(refreshTokenGrant(token.refreshToken));
+            if (renewed == null) {
+                logger.log(Level.WARNING, "Refresh token rejected. Requesting a new token.");
+            }
+        }
+        if (renewed == null) {
+            renewed = passwordGrant();
+        }
+        if (renewed == null) {
+            return null;
+        }
+        current = renewed;
+        scheduleRefresh(renewed);
+        return renewed.accessToken;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Refresh in the background shortly before expiry, so workers rarely have to wait for a token.
+     */
+    private void scheduleRefresh(Token token) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        long delay = token.refreshAt - System.currentTimeMillis();
+        scheduledRefresh = refresher.schedule(() -> renew(token.accessToken), Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private Token passwordGrant() {
+        ClientCredentials credentials = getClient();
+        if (credentials == null) {
+            logger.log(Level.SEVERE, "DCR client registration failed. Cannot continue.");
+            return null;
+        }
+        Token token = requestToken(passwordGrantForm());
+        if (token == null && lastTokenResponseCode == 401 && credentialsFile != null && Files.exists(credentialsFile)) {
+            // The persisted client may have been deleted on the server. Register a new one once.
+            logger.log(Level.WARNING, "Stored DCR client was rejected. Registering a new client.");
+            client = null;
+            deleteCredentials();
+            if (getClient() != null) {
+                token = requestToken(passwordGrantForm());
+            }
+        }
+        return token;
+    }
+
+    private List<NameValuePair> passwordGrantForm() {
+        List<NameValuePair> form = new ArrayList<>();
+        form.add(new BasicNameValuePair("grant_type", "password"));
+        form.add(new BasicNameValuePair("username", adminUsername));
+        form.add(new BasicNameValuePair("password", adminPassword));
+        form.add(new BasicNameValuePair("scope", SCOPES));
+        return form;
+    }
+
+    private List<NameValuePair> refreshTokenGrant(String refreshToken) {
+        List<NameValuePair> form = new ArrayList<>();
+        form.add(new BasicNameValuePair("grant_type", "refresh_token"));
+        form.add(new BasicNameValuePair("refresh_token", refreshToken));
+        form.add(new BasicNameValuePair("scope", SCOPES));
+        return form;
+    }
+
+    private Token requestToken(List<NameValuePair> form) {
+        ClientCredentials credentials = getClient();
+        if (credentials == null) {
+            return null;
+        }
+        lastTokenResponseCode = -1;
+        try {
+            HttpPost request = new HttpPost(tokenURL);
+
+            // Use DCR client credentials
+            String auth = credentials.clientId + ":" + credentials.clientSecret;
+            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+            request.setHeader("Authorization", "Basic " + encodedAuth);
+            request.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+
+            long requestedAt = System.currentTimeMillis();
+            HttpTransport.Response response = transport.execute(request);
+            int responseCode = response.getStatusCode();
+            lastTokenResponseCode = responseCode;
+            if (responseCode == 200) {
+                JsonObject json = JsonParser.parseString(response.getBody()).getAsJsonObject();
+                JsonElement refreshToken = json.get("refresh_token");
+                JsonElement expiresIn = json.get("expires_in");
+                long lifetime = expiresIn != null ? TimeUnit.SECONDS.toMillis(expiresIn.getAsLong()) : TimeUnit.HOURS.toMillis(1);
+                logger.log(Level.INFO, "Obtained access token valid for " + TimeUnit.MILLISECONDS.toSeconds(lifetime) + "s");
+                return new Token(json.get("access_token").getAsString(),
+                        refreshToken != null ? refreshToken.getAsString() : null,
+                        requestedAt + lifetime - Math.min(refreshMarginMillis, lifetime / 2));
+            } else {
+                logger.log(Level.SEVERE, "Failed to get access token. Response code: " + responseCode);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error getting access token", e);
+        }
+        return null;
+    }
+
+    private ClientCredentials getClient() {
+        if (client == null) {
+            client = loadCredentials();
+        }
+        if (client == null) {
+            client = registerClient();
+            if (client != null) {
+                saveCredentials(client);
+            }
+        }
+        return client;
+    }
+
+    private ClientCredentials registerClient() {
+        try {
+            HttpPost request = new HttpPost(clientRegistrationURL);
+
+            // Basic admin authentication
+            String auth = adminUsername + ":" + adminPassword;
+            String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+            request.setHeader("Authorization", "Basic " + encodedAuth);
+
+            // Minimal JSON payload required by DCR API
+            String body = "{\n" +
+                    "  \"callbackUrl\": \"www.google.lk\",\n" +
+                    "  \"clientName\": \"rest_api_publisher\",\n" +
+                    "  \"owner\": \"" + adminUsername + "\",\n" +
+                    "  \"grantType\": \"password client_credentials refresh_token\"\n" +
+                    "}";
+            request.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+
+            HttpTransport.Response response = transport.execute(request);
+            int code = response.getStatusCode();
+
+            if (code == 200 || code == 201) {
+                JsonObject json = JsonParser.parseString(response.getBody()).getAsJsonObject();
+
+                ClientCredentials credentials = new ClientCredentials();
+                credentials.clientId = json.get("clientId").getAsString();
+                credentials.clientSecret = json.get("clientSecret").getAsString();
+                logger.log(Level.INFO, "Registered DCR client " + credentials.clientId);
+                return credentials;
+            } else {
+                logger.log(Level.SEVERE, "Failed to register client. Code: " + code);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error registering client", e);
+        }
+
+        return null;
+    }
+
+    private ClientCredentials loadCredentials() {
+        if (credentialsFile == null || !Files.exists(credentialsFile)) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(credentialsFile), StandardCharsets.UTF_8);
+            ClientCredentials credentials = gson.fromJson(json, ClientCredentials.class);
+            if (credentials != null && credentials.clientId != null && credentials.clientSecret != null) {
+                logger.log(Level.INFO, "Reusing DCR client " + credentials.clientId + " from " + credentialsFile);
+                return credentials;
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Ignoring unreadable DCR credentials file " + credentialsFile, e);
+        }
+        return null;
+    }
+
+    private void saveCredentials(ClientCredentials credentials) {
+        if (credentialsFile == null) {
+            return;
+        }
+        try {
+            // The client secret is only readable by the owner
+            try {
+                Files.createFile(credentialsFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException | FileAlreadyExistsException e) {
+                // Not a POSIX file system, or left over from an earlier run
+            }
+            Files.write(credentialsFile, gson.toJson(credentials).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to store DCR credentials in " + credentialsFile, e);
+        }
+    }
+
+    private void deleteCredentials() {
+        try {
+            Files.deleteIfExists(credentialsFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete DCR credentials file " + credentialsFile, e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sample.utilities;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Blocking transport behind {@link RestRequest} and {@link TokenManager}.
+ *
+ * {@link HttpTransport} (pooled HTTP/1.1 connections) is the default. With HTTP.TRANSPORT = http2,
+ * {@code Http2Transport} multiplexes all requests over HTTP/2 using the JDK client; it needs Java 11 and is only
+ * compiled by the {@code http2} Maven profile.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Execute a request and fully consume the response.
+     */
+    HttpTransport.Response execute(HttpUriRequest request) throws IOException;
+
+    /**
+     * Execute a request and pass the response body stream to the handler.
+     */
+    <T> T execute(HttpUriRequest request, HttpTransport.BodyHandler<T> handler) throws IOException;
+
+    @Override
+    void close();
+
+    /**
+     * Create the transport selected by HTTP.TRANSPORT, falling back to HTTP/1.1 if it is not available.
+     */
+    static Transport create(ConfigLoader configLoader, SSLContext sslContext) {
+        Logger logger = Logger.getLogger(Transport.class.getName());
+        String kind = configLoader.hasProperty("HTTP.TRANSPORT") ? configLoader.getProperty("HTTP.TRANSPORT") : "";
+        if ("http2".equalsIgnoreCase(kind)) {
+            try {
+                // Loaded reflectively so the default Java 8 build does not need the class
+                return (Transport) Class.forName("com.sample.utilities.Http2Transport")
+                        .getConstructor(ConfigLoader.class, SSLContext.class)
+                        .newInstance(configLoader, sslContext);
+            } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+                logger.log(Level.WARNING, "HTTP/2 transport is not available in this build (build with -P http2 and run on"
+                        + " Java 11+). Using HTTP/1.1.");
+            } catch (ReflectiveOperationException e) {
+                logger.log(Level.WARNING, "Failed to create HTTP/2 transport. Using HTTP/1.1.", e);
+            }
+        } else if (!kind.isEmpty() && !"http1".equalsIgnoreCase(kind)) {
+            logger.log(Level.WARNING, "Unknown HTTP.TRANSPORT " + kind + ". Using HTTP/1.1.");
+        }
+        return new HttpTransport(configLoader, sslContext);
+    }
+}
@@ -0,0 +1,212 @@
+package com.sample.utilities;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP/2 transport on the JDK HTTP client. All requests to the publisher are multiplexed as streams over
+ * one connection instead of holding a pooled connection each; servers that only speak HTTP/1.1 are
+ * still served, as the client falls back during ALPN negotiation.
+ *
+ * Needs Java 11 and is only compiled by the {@code http2} Maven profile. Selected with HTTP.TRANSPORT = http2.
+ */
+public class Http2Transport implements Transport {
+
+    private static final Logger logger = Logger.getLogger(Http2Transport.class.getName());
+
+    // Set by the JDK client itself, or not allowed to be set by callers
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "date", "expect", "from", "host", "origin", "referer", "upgrade", "via",
+            "warning", "transfer-encoding"));
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final ExecutorService bodyWriters;
+
+    public Http2Transport(ConfigLoader configLoader, SSLContext sslContext) {
+        int connectTimeout = configLoader.getIntProperty("HTTP.CONNECT.TIMEOUT", 10000);
+        int socketTimeout = configLoader.getIntProperty("HTTP.SOCKET.TIMEOUT", 120000);
+        requestTimeout = Duration.ofMillis(socketTimeout);
+
+        // Same as the NoopHostnameVerifier used by the HTTP/1.1 transport; read when the client is built
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .sslContext(sslContext)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+
+        bodyWriters = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "http2-body-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        logger.log(Level.INFO, "HTTP/2 transport initialized.");
+    }
+
+    @Override
+    public HttpTransport.Response execute(HttpUriRequest request) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        long received = 0;
+        try {
+            HttpResponse<InputStream> response = send(request);
+            statusCode = response.statusCode();
+            Metrics.CountingInputStream counting = new Metrics.CountingInputStream(response.body());
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            try (InputStream in = decode(response, counting)) {
+                copy(in, content);
+            }
+            received = counting.getCount();
+            return new HttpTransport.Response(statusCode, new String(content.toByteArray(), StandardCharsets.UTF_8),
+                    toHeaders(response.headers()));
+        } finally {
+            Metrics.recordRequest(Metrics.endpoint(request), statusCode, System.nanoTime() - start,
+                    Metrics.requestSize(request), received);
+        }
+    }
+
+    @Override
+    public <T> T execute(HttpUriRequest request, HttpTransport.BodyHandler<T> handler) throws IOException {
+        long start = System.nanoTime();
+        int statusCode = -1;
+        Metrics.CountingInputStream body = null;
+        try {
+            HttpResponse<InputStream> response = send(request);
+            statusCode = response.statusCode();
+            body = new Metrics.CountingInputStream(response.body());
+            // Closing the stream before the end cancels the HTTP/2 stream, so nothing needs draining
+            try (InputStream in = decode(response, body)) {
+                HttpTransport.Response head = new HttpTransport.Response(statusCode, null, toHeaders(response.headers()));
+                return handler.handle(head, in);
+            }
+        } finally {
+            Metrics.recordRequest(Metrics.endpoint(request), statusCode, System.nanoTime() - start,
+                    Metrics.requestSize(request), body != null ? body.getCount() : 0);
+        }
+    }
+
+    private HttpResponse<InputStream> send(HttpUriRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI())
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip");
+        for (Header header : request.getAllHeaders()) {
+            String name = header.getName().toLowerCase();
+            if (!RESTRICTED_HEADERS.contains(name) && !"accept-encoding".equals(name)) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest
+                ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        if (entity != null) {
+            if (entity.getContentType() != null && request.getFirstHeader("Content-Type") == null) {
+                builder.header("Content-Type", entity.getContentType().getValue());
+            }
+            if (entity.getContentEncoding() != null) {
+                builder.header("Content-Encoding", entity.getContentEncoding().getValue());
+            }
+        }
+        builder.method(request.getMethod(), publisher(entity));
+        try {
+            return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending " + request.getMethod() + " " + request.getURI());
+        }
+    }
+
+    /**
+     * Bodies of known length (token and form requests) are sent as they are. Chunked bodies such as
+     * {@link JsonEntity} are written through a pipe, so the payload is still never held as one byte[].
+     */
+    private HttpRequest.BodyPublisher publisher(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        if (entity.getContentLength() >= 0) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) entity.getContentLength());
+            entity.writeTo(content);
+            return HttpRequest.BodyPublishers.ofByteArray(content.toByteArray());
+        }
+        return HttpRequest.BodyPublishers.ofInputStream(() -> {
+            PipedInputStream in = new PipedInputStream(BufferPool.SIZE);
+            try {
+                PipedOutputStream out = new PipedOutputStream(in);
+                bodyWriters.execute(() -> {
+                    try (OutputStream pipe = out) {
+                        entity.writeTo(pipe);
+                    } catch (IOException e) {
+                        logger.log(Level.FINE, "Request body was not fully written", e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return in;
+        });
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response, InputStream body) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        return "gzip".equalsIgnoreCase(encoding) ? new GZIPInputStream(body, 8192) : body;
+    }
+
+    private static Header[] toHeaders(HttpHeaders headers) {
+        List<Header> converted = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : headers.map().entrySet()) {
+            for (String value : entry.getValue()) {
+                converted.add(new BasicHeader(entry.getKey(), value));
+            }
+        }
+        return converted.toArray(new Header[0]);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = BufferPool.acquireBytes();
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        bodyWriters.shutdownNow();
+    }
+}
@@ -0,0 +1,163 @@
+package com.sample.updater;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("update-journal.log");
+    }
+
+    @Test
+    public void resumeRestoresLastStateOfEachAPI() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.FETCHED);
+            journal.record("a", CheckpointJournal.State.UPDATED);
+            journal.record("b", CheckpointJournal.State.UNCHANGED);
+            journal.record("c", CheckpointJournal.State.REVISION_CREATED, "rev-1");
+            journal.record("d", CheckpointJournal.State.DEPLOYED, "rev-2");
+        }
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertEquals(CheckpointJournal.State.UPDATED, journal.getPrevious("a").getState());
+            assertFalse(journal.isCompleted("a"));
+            assertTrue(journal.isCompleted("b"));
+            assertEquals(CheckpointJournal.State.REVISION_CREATED, journal.getPrevious("c").getState());
+            assertEquals("rev-1", journal.getPrevious("c").getRevisionId());
+            assertTrue(journal.isCompleted("d"));
+            assertNull(journal.getPrevious("e"));
+        }
+    }
+
+    @Test
+    public void failureAfterWritingKeepsProgress() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UPDATED);
+            journal.record("a", CheckpointJournal.State.FAILED);
+            journal.record("b", CheckpointJournal.State.REVISION_CREATED, "rev-1");
+            journal.record("b", CheckpointJournal.State.FAILED);
+            journal.record("c", CheckpointJournal.State.FETCHED);
+            journal.record("c", CheckpointJournal.State.FAILED);
+        }
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertEquals(CheckpointJournal.State.UPDATED, journal.getPrevious("a").getState());
+            assertEquals(CheckpointJournal.State.REVISION_CREATED, journal.getPrevious("b").getState());
+            assertEquals("rev-1", journal.getPrevious("b").getRevisionId());
+            assertEquals(CheckpointJournal.State.FAILED, journal.getPrevious("c").getState());
+        }
+    }
+
+    @Test
+    public void changedRulesEvaluateUnchangedAPIsAgain() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UNCHANGED);
+            journal.record("b", CheckpointJournal.State.UPDATED);
+        }
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-2")) {
+            assertNull(journal.getPrevious("a"));
+            assertEquals(CheckpointJournal.State.UPDATED, journal.getPrevious("b").getState());
+        }
+    }
+
+    @Test
+    public void resumedJournalKeepsAppending() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UNCHANGED);
+        }
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            journal.record("b", CheckpointJournal.State.DEPLOYED, "rev-1");
+        }
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertTrue(journal.isCompleted("a"));
+            assertTrue(journal.isCompleted("b"));
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals("#rules\trules-1", lines.get(0));
+        assertEquals("#rules\trules-1", lines.get(2));
+    }
+
+    @Test
+    public void missingJournalStartsEmpty() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertNull(journal.getPrevious("a"));
+        }
+        assertTrue(Files.exists(path));
+    }
+
+    @Test
+    public void rulesAreJudgedPerSection() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UNCHANGED);
+            journal.record("b", CheckpointJournal.State.DEPLOYED, "rev-1");
+            journal.record("c", CheckpointJournal.State.UPDATED);
+        }
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-2")) {
+            journal.record("d", CheckpointJournal.State.UNCHANGED);
+        }
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-2")) {
+            assertNull(journal.getPrevious("a"));
+            assertNull(journal.getPrevious("b"));
+            assertEquals(CheckpointJournal.State.UPDATED, journal.getPrevious("c").getState());
+            assertTrue(journal.isCompleted("d"));
+        }
+    }
+
+    @Test
+    public void tornLastLineIsIgnoredAndNotExtended() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UNCHANGED);
+        }
+        // Killed while writing the next record
+        Files.write(path, "1700000000000\tb\tDEPLOY".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertTrue(journal.isCompleted("a"));
+            assertNull(journal.getPrevious("b"));
+            journal.record("c", CheckpointJournal.State.UNCHANGED);
+        }
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals("1700000000000\tb\tDEPLOY", lines.get(2));
+        assertEquals("#rules\trules-1", lines.get(3));
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertTrue(journal.isCompleted("a"));
+            assertTrue(journal.isCompleted("c"));
+        }
+    }
+
+    @Test
+    public void revisionWithoutIdIsIgnored() throws Exception {
+        try (CheckpointJournal journal = CheckpointJournal.create(path, "rules-1")) {
+            journal.record("a", CheckpointJournal.State.UPDATED);
+        }
+        Files.write(path, "1700000000000\ta\tREVISION_CREATED\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (CheckpointJournal journal = CheckpointJournal.resume(path, "rules-1")) {
+            assertEquals(CheckpointJournal.State.UPDATED, journal.getPrevious("a").getState());
+        }
+    }
+}
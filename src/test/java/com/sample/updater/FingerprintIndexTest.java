@@ -0,0 +1,101 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("fingerprint-index.tsv");
+    }
+
+    @Test
+    public void unchangedOnlyWithSameTimeAndRules() throws Exception {
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            index.record(api("a", "1000"));
+        }
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            assertTrue(index.isUnchanged(api("a", "1000")));
+            assertFalse(index.isUnchanged(api("a", "2000")));
+            assertFalse(index.isUnchanged(api("a", null)));
+            assertFalse(index.isUnchanged(api("b", "1000")));
+        }
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-2")) {
+            assertFalse(index.isUnchanged(api("a", "1000")));
+        }
+    }
+
+    @Test
+    public void recordsSurviveARunThatNeverCloses() throws Exception {
+        FingerprintIndex interrupted = FingerprintIndex.load(path, "rules-1");
+        interrupted.record(api("a", "1000"));
+        interrupted.record(api("b", "1000"));
+        interrupted.record(api("a", "2000"));
+        interrupted.remove("b");
+
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            assertTrue(index.isUnchanged(api("a", "2000")));
+            assertFalse(index.isUnchanged(api("a", "1000")));
+            assertFalse(index.isUnchanged(api("b", "1000")));
+        }
+        interrupted.close();
+    }
+
+    @Test
+    public void tornLastLineIsIgnoredAndNotExtended() throws Exception {
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            index.record(api("a", "1000"));
+        }
+        // Killed while appending the next record
+        Files.write(path, "b\t10".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        FingerprintIndex interrupted = FingerprintIndex.load(path, "rules-1");
+        assertFalse(interrupted.isUnchanged(api("b", "10")));
+        interrupted.record(api("c", "1000"));
+
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            assertTrue(index.isUnchanged(api("a", "1000")));
+            assertTrue(index.isUnchanged(api("c", "1000")));
+        }
+        interrupted.close();
+    }
+
+    @Test
+    public void closeRewritesOneLinePerAPI() throws Exception {
+        try (FingerprintIndex index = FingerprintIndex.load(path, "rules-1")) {
+            index.record(api("a", "1000"));
+            index.record(api("a", "2000"));
+            index.record(api("b", "1000"));
+            index.record(api("b", null));
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals("a\t2000\trules-1", lines.get(0));
+    }
+
+    private static API api(String id, String lastUpdatedTime) {
+        API api = new API();
+        api.setId(id);
+        api.setLastUpdatedTime(lastUpdatedTime);
+        return api;
+    }
+}
@@ -0,0 +1,92 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class JsonPatchTest {
+
+    private static final String DOCUMENT = "{\"name\":\"PetStore\",\"visibility\":\"PUBLIC\","
+            + "\"policies\":[\"Bronze\",\"Unlimited\"],\"corsConfiguration\":{\"enabled\":false},"
+            + "\"paths\":{\"/pets\":{\"x-auth-type\":\"Any\"},\"~tilde\":{\"x-auth-type\":\"Any\"}}}";
+
+    @Test
+    public void replacesAfterPassingTests() throws Exception {
+        JsonArray patch = patch(
+                JsonPatch.test("/visibility", new JsonPrimitive("PUBLIC")),
+                JsonPatch.replace("/visibility", new JsonPrimitive("PRIVATE")),
+                JsonPatch.test("/policies/1", new JsonPrimitive("Unlimited")),
+                JsonPatch.replace("/policies/1", JsonParser.parseString("{\"name\":\"Gold\"}")),
+                JsonPatch.test("/corsConfiguration", JsonParser.parseString("{\"enabled\":false}")),
+                JsonPatch.replace("/corsConfiguration/enabled", new JsonPrimitive(true)));
+
+        JsonObject patched = JsonParser.parseString(JsonPatch.apply(DOCUMENT, patch)).getAsJsonObject();
+        assertEquals("PRIVATE", patched.get("visibility").getAsString());
+        assertEquals(JsonParser.parseString("[\"Bronze\",{\"name\":\"Gold\"}]"), patched.get("policies"));
+        assertTrue(patched.getAsJsonObject("corsConfiguration").get("enabled").getAsBoolean());
+    }
+
+    @Test
+    public void testSeesEarlierReplacements() throws Exception {
+        JsonArray patch = patch(
+                JsonPatch.replace("/visibility", new JsonPrimitive("RESTRICTED")),
+                JsonPatch.test("/visibility", new JsonPrimitive("RESTRICTED")),
+                JsonPatch.replace("/visibility", new JsonPrimitive("PRIVATE")));
+        assertEquals("PRIVATE", JsonParser.parseString(JsonPatch.apply(DOCUMENT, patch))
+                .getAsJsonObject().get("visibility").getAsString());
+    }
+
+    @Test
+    public void escapedPointersReachKeysWithSlashAndTilde() throws Exception {
+        JsonArray patch = patch(
+                JsonPatch.replace("/paths/" + JsonPatch.escape("/pets") + "/x-auth-type", new JsonPrimitive("None")),
+                JsonPatch.replace("/paths/" + JsonPatch.escape("~tilde") + "/x-auth-type", new JsonPrimitive("Application")));
+        assertEquals("/paths/~1pets/x-auth-type", patch.get(0).getAsJsonObject().get("path").getAsString());
+
+        JsonObject paths = JsonParser.parseString(JsonPatch.apply(DOCUMENT, patch)).getAsJsonObject().getAsJsonObject("paths");
+        assertEquals("None", paths.getAsJsonObject("/pets").get("x-auth-type").getAsString());
+        assertEquals("Application", paths.getAsJsonObject("~tilde").get("x-auth-type").getAsString());
+    }
+
+    @Test
+    public void failedTestRejectsWholePatch() {
+        JsonArray patch = patch(
+                JsonPatch.test("/visibility", new JsonPrimitive("PRIVATE")),
+                JsonPatch.replace("/visibility", new JsonPrimitive("INTERNAL")));
+        JsonPatch.PatchException e = assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT, patch));
+        assertTrue(e.getMessage(), e.getMessage().contains("/visibility"));
+    }
+
+    @Test
+    public void missingPathIsRejected() {
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT,
+                patch(JsonPatch.replace("/endpointConfig/url", new JsonPrimitive("http://new")))));
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT,
+                patch(JsonPatch.replace("/policies/2", new JsonPrimitive("Gold")))));
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT,
+                patch(JsonPatch.test("/policies/first", new JsonPrimitive("Bronze")))));
+    }
+
+    @Test
+    public void onlyTestAndReplaceOfAMemberAreSupported() {
+        JsonObject add = JsonPatch.replace("/visibility", new JsonPrimitive("PRIVATE"));
+        add.addProperty("op", "add");
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT, patch(add)));
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(DOCUMENT,
+                patch(JsonPatch.replace("", new JsonObject()))));
+    }
+
+    private static JsonArray patch(JsonObject... operations) {
+        JsonArray patch = new JsonArray();
+        for (JsonObject operation : operations) {
+            patch.add(operation);
+        }
+        return patch;
+    }
+}
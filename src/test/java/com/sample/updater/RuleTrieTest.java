@@ -0,0 +1,260 @@
+package com.sample.updater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sample.bean.API;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the compiled rules give the same result as the original applier, which walked the whole
+ * payload once per rule in configuration order. The tree, streaming and plan replay paths are each
+ * compared against {@link #baseline(String, List)}.
+ */
+public class RuleTrieTest {
+
+    private static final String API_JSON = "{"
+            + "\"name\":\"PetStore\",\"version\":\"1.0.0\",\"visibility\":\"PUBLIC\","
+            + "\"policies\":[\"Bronze\",\"Unlimited\",\"Bronze\"],"
+            + "\"operations\":["
+            + "{\"target\":\"/pets\",\"verb\":\"GET\",\"throttlingPolicy\":\"10KPerMin\",\"scopes\":[]},"
+            + "{\"target\":\"/pets\",\"verb\":\"POST\",\"throttlingPolicy\":\"Unlimited\",\"scopes\":[\"write\"]},"
+            + "{\"target\":\"/pets/{id}\",\"verb\":\"DELETE\"}],"
+            + "\"endpointConfig\":{\"endpoint_type\":\"http\","
+            + "\"production_endpoints\":{\"url\":\"http://old.example.com\"},"
+            + "\"sandbox_endpoints\":{\"url\":\"http://old.example.com\"}},"
+            + "\"corsConfiguration\":{\"corsConfigurationEnabled\":false,\"accessControlAllowOrigins\":[\"*\"]},"
+            + "\"paths\":{\"/pets\":{\"x-auth-type\":\"Any\"},\"~tilde\":{\"x-auth-type\":\"Any\"}},"
+            + "\"cacheTimeout\":300,\"businessInformation\":null}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void arrayWildcardReplacesMatchingElements() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "policies[]", "Bronze", "Gold"));
+    }
+
+    @Test
+    public void arrayWildcardDescendsIntoElements() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "operations[].throttlingPolicy", "Unlimited", "50KPerMin"),
+                rule(1, "operations[].scopes", "[]", "[\"read\"]"));
+    }
+
+    @Test
+    public void arrayWildcardOnNonArrayIsSkipped() throws Exception {
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                rule(0, "endpointConfig[].url", "", "http://new.example.com"),
+                rule(1, "visibility", "PUBLIC", "PRIVATE"));
+        assertEquals(1, trie.getPassCount());
+    }
+
+    @Test
+    public void siblingRulesShareOnePass() throws Exception {
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                rule(0, "endpointConfig.production_endpoints.url", "http://old.example.com", "http://new.example.com"),
+                rule(1, "endpointConfig.sandbox_endpoints.url", "http://old.example.com", "http://sandbox.example.com"),
+                rule(2, "endpointConfig.endpoint_type", "http", "https"));
+        assertEquals(1, trie.getPassCount());
+    }
+
+    @Test
+    public void ancestorAfterDescendantNeedsSecondPass() throws Exception {
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                rule(0, "endpointConfig.production_endpoints.url", "http://old.example.com", "http://new.example.com"),
+                rule(1, "endpointConfig", "", "{\"endpoint_type\":\"address\"}"));
+        assertEquals(2, trie.getPassCount());
+        assertFalse(trie.supportsStreaming());
+    }
+
+    @Test
+    public void descendantAfterAncestorSeesReplacedValue() throws Exception {
+        UpdateRule ancestor = rule(0, "endpointConfig",
+                "", "{\"production_endpoints\":{\"url\":\"http://old.example.com\"}}");
+        JsonElement configured = ancestor.getNewValue().deepCopy();
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                ancestor,
+                rule(1, "endpointConfig.production_endpoints.url", "http://old.example.com", "http://new.example.com"));
+        assertEquals(1, trie.getPassCount());
+        assertEquals(configured, ancestor.getNewValue());
+    }
+
+    @Test
+    public void samePathRulesApplyInOrder() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "visibility", "PUBLIC", "RESTRICTED"),
+                rule(1, "visibility", "RESTRICTED", "PRIVATE"),
+                rule(2, "visibility", "PUBLIC", "INTERNAL"));
+    }
+
+    @Test
+    public void emptyOldValueReplacesEvenEqualValues() throws Exception {
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                rule(0, "visibility", "", "PUBLIC"),
+                rule(1, "businessInformation", "", "{\"businessOwner\":\"team\"}"),
+                rule(2, "operations[].throttlingPolicy", "", "Unlimited"));
+        assertTrue(trie.apply(API_JSON) != null);
+    }
+
+    @Test
+    public void oldValueMatchesObjectsByTheirJson() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "corsConfiguration.accessControlAllowOrigins", "[\"*\"]", "[\"https://example.com\"]"),
+                rule(1, "endpointConfig.sandbox_endpoints", "{\"url\":\"http://old.example.com\"}", "{\"url\":\"http://sandbox.example.com\"}"),
+                rule(2, "cacheTimeout", "300", "600"));
+    }
+
+    @Test
+    public void jsonValuedNewValueIsInsertedAsJson() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "corsConfiguration", "", "{\"corsConfigurationEnabled\":true,\"accessControlAllowOrigins\":[\"*\"]}"),
+                rule(1, "policies", "", "[\"Gold\",\"Unlimited\"]"),
+                rule(2, "operations[].scopes", "", "[]"),
+                rule(3, "cacheTimeout", "", "1.5"),
+                rule(4, "corsConfiguration.corsConfigurationEnabled", "", "false"));
+    }
+
+    @Test
+    public void keysNeedingPointerEscapes() throws Exception {
+        assertSameAsBaseline(API_JSON,
+                rule(0, "paths./pets.x-auth-type", "Any", "None"),
+                rule(1, "paths.~tilde.x-auth-type", "Any", "Application"));
+    }
+
+    @Test
+    public void noMatchLeavesPayloadUnchanged() throws Exception {
+        RuleTrie trie = assertSameAsBaseline(API_JSON,
+                rule(0, "visibility", "PRIVATE", "PUBLIC"),
+                rule(1, "missing.path", "", "x"),
+                rule(2, "name.first", "", "x"));
+        assertNull(trie.apply(API_JSON));
+    }
+
+    @Test
+    public void replayedPatchFailsWhenDefinitionChanged() throws Exception {
+        RuleTrie trie = RuleTrie.compile(Arrays.asList(
+                rule(0, "operations[].throttlingPolicy", "Unlimited", "50KPerMin")));
+        JsonArray patch = new JsonArray();
+        trie.apply(JsonParser.parseString(API_JSON).getAsJsonObject(), new int[1], patch);
+
+        String edited = API_JSON.replace("\"POST\",\"throttlingPolicy\":\"Unlimited\"", "\"POST\",\"throttlingPolicy\":\"Gold\"");
+        assertThrows(JsonPatch.PatchException.class, () -> JsonPatch.apply(edited, patch));
+    }
+
+    /**
+     * Compare every way of applying {@code rules} with the original applier and return the compiled rules.
+     */
+    private RuleTrie assertSameAsBaseline(String json, UpdateRule... rules) throws Exception {
+        List<UpdateRule> ruleList = Arrays.asList(rules);
+        String expected = baseline(json, ruleList);
+        RuleTrie trie = RuleTrie.compile(ruleList);
+
+        String tree = trie.apply(json);
+        if (expected == null) {
+            assertNull(tree);
+        } else {
+            assertEquals(JsonParser.parseString(expected), JsonParser.parseString(tree));
+        }
+        JsonElement result = expected == null ? JsonParser.parseString(json) : JsonParser.parseString(expected);
+
+        if (trie.supportsStreaming()) {
+            RuleTrie.Result streamed = trie.applyStreaming(new StringReader(json));
+            if (expected == null) {
+                assertNull(streamed.getPayload());
+            } else {
+                assertEquals(result, JsonParser.parseString(streamed.getPayload()));
+            }
+        }
+
+        int[] hits = new int[ruleList.size()];
+        JsonArray patch = new JsonArray();
+        int changes = trie.apply(JsonParser.parseString(json).getAsJsonObject(), hits, patch);
+        assertEquals(expected != null, changes > 0);
+        assertEquals(result, JsonParser.parseString(JsonPatch.apply(json, patch)));
+
+        if (changes > 0) {
+            Path path = folder.newFile("plan.json").toPath();
+            try (UpdatePlan plan = new UpdatePlan(path, ruleList)) {
+                API api = new API();
+                api.setId("pet-store");
+                plan.add(api, patch, hits);
+            }
+            List<API> planned = UpdatePlan.load(path);
+            assertEquals(1, planned.size());
+            assertEquals(result, JsonParser.parseString(JsonPatch.apply(json, planned.get(0).getPatch())));
+        }
+        return trie;
+    }
+
+    private static UpdateRule rule(int index, String jsonPath, String oldValue, String newValue) {
+        return new UpdateRule(index, "RULE" + (index + 1), jsonPath, oldValue, UpdateRule.parseValue(newValue));
+    }
+
+    /**
+     * The original applier: each rule walks the whole payload in turn.
+     *
+     * @return the updated JSON, or null if no rule changed anything.
+     */
+    private static String baseline(String json, List<UpdateRule> rules) {
+        JsonObject apiJson = JsonParser.parseString(json).getAsJsonObject();
+        boolean[] hasUpdates = new boolean[1];
+        for (UpdateRule rule : rules) {
+            applyRuleRecursive(apiJson, new ArrayList<>(rule.getSegments()), rule, hasUpdates);
+        }
+        return hasUpdates[0] ? apiJson.toString() : null;
+    }
+
+    private static void applyRuleRecursive(JsonElement currentElement, List<String> pathSegments, UpdateRule rule,
+                                           boolean[] hasUpdates) {
+        String segment = pathSegments.get(0);
+        boolean isArray = segment.endsWith("[]");
+        String key = isArray ? segment.substring(0, segment.length() - 2) : segment;
+        List<String> remaining = pathSegments.subList(1, pathSegments.size());
+
+        if (!currentElement.isJsonObject() || !currentElement.getAsJsonObject().has(key)) {
+            return;
+        }
+        JsonObject currentObject = currentElement.getAsJsonObject();
+        JsonElement child = currentObject.get(key);
+
+        if (isArray) {
+            if (child.isJsonArray()) {
+                JsonArray array = child.getAsJsonArray();
+                for (int i = 0; i < array.size(); i++) {
+                    if (remaining.isEmpty()) {
+                        if (rule.shouldReplace(array.get(i))) {
+                            array.set(i, JsonParser.parseString(rule.getNewValue().toString()));
+                            hasUpdates[0] = true;
+                        }
+                    } else {
+                        applyRuleRecursive(array.get(i), remaining, rule, hasUpdates);
+                    }
+                }
+            }
+        } else if (remaining.isEmpty()) {
+            if (rule.shouldReplace(child)) {
+                currentObject.add(key, JsonParser.parseString(rule.getNewValue().toString()));
+                hasUpdates[0] = true;
+            }
+        } else {
+            applyRuleRecursive(child, remaining, rule, hasUpdates);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ShardTest {
+
+    @Test
+    public void assignmentIsCrc32OfTheIdModuloCount() {
+        // crc32("abc") = 0x352441c2 = 891568578, which is 2 modulo 4 and 3 modulo 5
+        assertTrue(new Shard(2, 4).owns("abc"));
+        assertFalse(new Shard(1, 4).owns("abc"));
+        assertTrue(new Shard(3, 5).owns("abc"));
+        assertTrue(Shard.ALL.owns("abc"));
+    }
+
+    @Test
+    public void shardsSplitTheEstateWithoutOverlap() {
+        int count = 4;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            ids.add(UUID.nameUUIDFromBytes(("api-" + i).getBytes()).toString());
+        }
+        int[] sizes = new int[count];
+        for (String id : ids) {
+            int owners = 0;
+            for (int index = 0; index < count; index++) {
+                if (new Shard(index, count).owns(id)) {
+                    owners++;
+                    sizes[index]++;
+                }
+            }
+            assertEquals(id, 1, owners);
+        }
+        for (int size : sizes) {
+            assertTrue(String.valueOf(size), size > 900 && size < 1100);
+        }
+    }
+
+    @Test
+    public void filterPassesOtherShardsToTheCallback() {
+        List<API> apis = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            API api = new API();
+            api.setId("api-" + i);
+            apis.add(api);
+        }
+        Shard shard = new Shard(1, 3);
+        List<API> mine = new ArrayList<>();
+        List<API> others = new ArrayList<>();
+        for (API api : shard.filter(apis, others::add)) {
+            mine.add(api);
+        }
+
+        assertEquals(apis.size(), mine.size() + others.size());
+        for (API api : mine) {
+            assertTrue(shard.owns(api.getId()));
+        }
+        for (API api : others) {
+            assertFalse(shard.owns(api.getId()));
+        }
+    }
+
+    @Test
+    public void singleShardPassesEverything() {
+        List<API> apis = new ArrayList<>();
+        assertSame(apis, Shard.ALL.filter(apis, api -> {
+            throw new AssertionError();
+        }));
+        assertFalse(Shard.ALL.isSharded());
+        assertTrue(new Shard(0, 2).isSharded());
+    }
+
+    @Test
+    public void suffixNamesTheShard() {
+        assertEquals("shard-2-of-4", new Shard(2, 4).getSuffix());
+    }
+
+    @Test
+    public void indexMustBeWithinCount() {
+        assertThrows(IllegalArgumentException.class, () -> new Shard(4, 4));
+        assertThrows(IllegalArgumentException.class, () -> new Shard(-1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new Shard(0, 0));
+    }
+}
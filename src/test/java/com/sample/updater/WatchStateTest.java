@@ -0,0 +1,188 @@
+package com.sample.updater;
+
+import com.sample.bean.API;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WatchStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("watch-state.json");
+    }
+
+    @Test
+    public void firstPollPassesEveryAPI() {
+        WatchState state = WatchState.load(path);
+        assertNull(state.getHighWaterMark());
+        assertEquals(ids("a", "b", "c"), passed(state, api("a", "100"), api("b", "300"), api("c", null)));
+        assertEquals(3, state.getPassed());
+        assertEquals(0, state.getSkipped());
+    }
+
+    @Test
+    public void markMovesToTheNewestListedAPI() {
+        WatchState state = WatchState.load(path);
+        passed(state, api("a", "100"), api("b", "300"), api("c", "200"));
+        state.advance(new UpdateSummary());
+        assertEquals("300", state.getHighWaterMark());
+
+        // Only APIs changed after the mark, and those without a lastUpdatedTime, are passed on
+        assertEquals(ids("b", "d"), passed(state, api("a", "100"), api("b", "301"), api("c", "300"), api("d", null)));
+        assertEquals(2, state.getPassed());
+        assertEquals(2, state.getSkipped());
+    }
+
+    @Test
+    public void markDoesNotMoveBackOrPastAnIncompleteListing() {
+        WatchState state = WatchState.load(path);
+        passed(state, api("a", "500"));
+        state.advance(new UpdateSummary());
+
+        passed(state, api("a", "400"));
+        state.advance(new UpdateSummary());
+        assertEquals("500", state.getHighWaterMark());
+
+        passed(state, api("a", "900"));
+        UpdateSummary broken = new UpdateSummary();
+        broken.setListingComplete(false);
+        state.advance(broken);
+        assertEquals("500", state.getHighWaterMark());
+    }
+
+    @Test
+    public void unfinishedAPIsAreRetriedUntilTheySucceed() {
+        WatchState state = WatchState.load(path);
+        API a = api("a", "100");
+        API b = api("b", "100");
+        passed(state, a, b);
+        UpdateSummary first = new UpdateSummary();
+        first.record(a, UpdateStatus.FAILED);
+        first.record(b, UpdateStatus.DEPLOY_PENDING);
+        state.advance(first);
+
+        assertEquals(ids("a", "b"), passed(state, a, b, api("c", "50")));
+        UpdateSummary second = new UpdateSummary();
+        second.record(a, UpdateStatus.UPDATED);
+        second.record(b, UpdateStatus.FAILED);
+        state.advance(second);
+
+        assertEquals(ids("b"), passed(state, a, b));
+    }
+
+    @Test
+    public void stateSurvivesRestart() {
+        WatchState state = WatchState.load(path);
+        state.reset("rules-1");
+        API a = api("a", "100");
+        passed(state, a, api("b", "200"));
+        UpdateSummary summary = new UpdateSummary();
+        summary.record(a, UpdateStatus.FAILED);
+        state.advance(summary);
+        state.save();
+
+        WatchState restarted = WatchState.load(path);
+        assertEquals("rules-1", restarted.getRulesFingerprint());
+        assertEquals("200", restarted.getHighWaterMark());
+        assertEquals(ids("a"), passed(restarted, a, api("b", "200")));
+    }
+
+    @Test
+    public void stateWithoutMarkSurvivesRestart() {
+        WatchState state = WatchState.load(path);
+        state.reset("rules-1");
+        state.save();
+
+        WatchState restarted = WatchState.load(path);
+        assertEquals("rules-1", restarted.getRulesFingerprint());
+        assertNull(restarted.getHighWaterMark());
+    }
+
+    @Test
+    public void resetEvaluatesEveryAPIAgain() {
+        WatchState state = WatchState.load(path);
+        API a = api("a", "100");
+        passed(state, a);
+        UpdateSummary summary = new UpdateSummary();
+        summary.record(a, UpdateStatus.FAILED);
+        state.advance(summary);
+
+        state.reset("rules-2");
+        assertNull(state.getHighWaterMark());
+        assertEquals("rules-2", state.getRulesFingerprint());
+        assertEquals(ids("a", "b"), passed(state, api("a", "100"), api("b", "100")));
+    }
+
+    @Test
+    public void corruptStateStartsOver() throws Exception {
+        Files.write(path, "{\"highWaterMark\":".getBytes(StandardCharsets.UTF_8));
+        WatchState state = WatchState.load(path);
+        assertNull(state.getHighWaterMark());
+        assertNull(state.getRulesFingerprint());
+    }
+
+    @Test
+    public void timesCompareAsNumbersOrText() {
+        assertTrue(WatchState.compare("900", "1000") < 0);
+        assertTrue(WatchState.compare("2024-01-02T00:00:00Z", "2024-01-10T00:00:00Z") < 0);
+        assertEquals(0, WatchState.compare(" 1000", "1000"));
+    }
+
+    @Test
+    public void undeployedRevisionsAreDeployedByTheNextPoll() {
+        WatchState state = WatchState.load(path);
+        API a = api("a", "100");
+        passed(state, a, api("b", "100"));
+        UpdateSummary summary = new UpdateSummary();
+        summary.record(a, UpdateStatus.UPDATED);
+        summary.recordPendingRevision("a", "rev-1");
+        state.advance(summary);
+        state.reset("rules-2");
+        state.save();
+
+        WatchState restarted = WatchState.load(path);
+        passed(restarted, a, api("b", "100"));
+        restarted.advance(new UpdateSummary());
+        assertEquals(ids("a"), passed(restarted, a, api("b", "100")));
+        assertEquals("rev-1", restarted.takePendingRevision("a"));
+        assertNull(restarted.takePendingRevision("a"));
+        assertEquals(ids(), passed(restarted, a, api("b", "100")));
+    }
+
+    private static List<String> passed(WatchState state, API... apis) {
+        List<String> ids = new ArrayList<>();
+        for (API api : state.filter(Arrays.asList(apis))) {
+            ids.add(api.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> ids(String... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static API api(String id, String lastUpdatedTime) {
+        API api = new API();
+        api.setId(id);
+        api.setLastUpdatedTime(lastUpdatedTime);
+        return api;
+    }
+}
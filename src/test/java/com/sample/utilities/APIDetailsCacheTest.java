@@ -0,0 +1,167 @@
+package com.sample.utilities;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class APIDetailsCacheTest {
+
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    private APIDetailsCache open(String... extra) throws Exception {
+        if (directory == null) {
+            directory = folder.newFolder("cache").toPath();
+        }
+        String[] keysAndValues = new String[extra.length + 4];
+        keysAndValues[0] = "CACHE.DIRECTORY";
+        keysAndValues[1] = directory.toString();
+        keysAndValues[2] = "CACHE.MAX.SIZE.MB";
+        keysAndValues[3] = "1";
+        System.arraycopy(extra, 0, keysAndValues, 4, extra.length);
+        return new APIDetailsCache(TestConfig.of(folder, keysAndValues));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondMaxSize() throws Exception {
+        APIDetailsCache cache = open();
+        // About 400 KB each once gzipped, so the 1 MB cap holds two
+        String a = incompressible(1);
+        String b = incompressible(2);
+        String c = incompressible(3);
+        cache.store("a", a, null, null, "1");
+        cache.store("b", b, null, null, "1");
+        assertNotNull(cache.lookup("a"));
+        cache.store("c", c, null, null, "1");
+
+        assertNull(cache.lookup("b"));
+        assertEquals(a, cache.read("a", false));
+        assertEquals(c, cache.read("c", false));
+    }
+
+    @Test
+    public void indexSurvivesReopen() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{\"id\":\"api-1\"}", "\"v1\"", LAST_MODIFIED, "1000");
+        cache.close();
+        Files.write(directory.resolve("orphan.json.gz"), new byte[]{1, 2, 3});
+
+        APIDetailsCache reopened = open();
+        APIDetailsCache.Entry entry = reopened.lookup("api-1");
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getEtag());
+        assertEquals("{\"id\":\"api-1\"}", reopened.read("api-1", false));
+        assertFalse(Files.exists(directory.resolve("orphan.json.gz")));
+    }
+
+    @Test
+    public void unchangedListingIsServedWithoutRevalidation() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{}", "\"v1\"", LAST_MODIFIED, "1000");
+        APIDetailsCache.Entry entry = cache.lookup("api-1");
+
+        assertTrue(cache.isFresh(entry, "1000"));
+        assertFalse(cache.isFresh(entry, "2000"));
+        assertFalse(cache.isFresh(entry, null));
+        assertFalse(cache.isFresh(null, "1000"));
+    }
+
+    @Test
+    public void untrustedListingAlwaysRevalidates() throws Exception {
+        APIDetailsCache cache = open("CACHE.TRUST.LAST.UPDATED.TIME", "false");
+        cache.store("api-1", "{}", "\"v1\"", LAST_MODIFIED, "1000");
+        assertFalse(cache.isFresh(cache.lookup("api-1"), "1000"));
+    }
+
+    @Test
+    public void notModifiedServesCachedCopyAndRecordsListedTime() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{\"name\":\"PetStore\"}", "\"v1\"", LAST_MODIFIED, "1000");
+
+        HttpGet request = new HttpGet("https://localhost/apis/api-1");
+        APIDetailsCache.addConditionalHeaders(request, cache.lookup("api-1"));
+        assertEquals("\"v1\"", request.getFirstHeader("If-None-Match").getValue());
+        assertEquals(LAST_MODIFIED, request.getFirstHeader("If-Modified-Since").getValue());
+
+        // The publisher answered 304 for the listing's newer lastUpdatedTime
+        cache.refresh("api-1", "2000");
+        assertEquals("{\"name\":\"PetStore\"}", cache.read("api-1", true));
+        assertTrue(cache.isFresh(cache.lookup("api-1"), "2000"));
+    }
+
+    @Test
+    public void noConditionalHeadersWithoutEntry() {
+        HttpGet request = new HttpGet("https://localhost/apis/api-1");
+        APIDetailsCache.addConditionalHeaders(request, null);
+        assertNull(request.getFirstHeader("If-None-Match"));
+        assertNull(request.getFirstHeader("If-Modified-Since"));
+    }
+
+    @Test
+    public void teeStoresBodyOnceFullyRead() throws Exception {
+        APIDetailsCache cache = open();
+        byte[] body = "{\"name\":\"PetStore\"}".getBytes(StandardCharsets.UTF_8);
+        try (InputStream in = cache.tee("api-1", new ByteArrayInputStream(body), "\"v1\"", null, "1000")) {
+            // The consumer stops early; closing reads the rest into the cache
+            assertEquals('{', in.read());
+        }
+        assertEquals("{\"name\":\"PetStore\"}", cache.read("api-1", false));
+        assertEquals("\"v1\"", cache.lookup("api-1").getEtag());
+    }
+
+    @Test
+    public void invalidateDropsEntry() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{}", "\"v1\"", null, "1000");
+        cache.invalidate("api-1");
+        assertNull(cache.lookup("api-1"));
+    }
+
+    @Test
+    public void readAfterInvalidateReturnsNull() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{}", "\"v1\"", null, "1000");
+        APIDetailsCache.Entry looked = cache.lookup("api-1");
+        // Evicted or updated by another worker after the lookup
+        cache.invalidate("api-1");
+        assertNotNull(looked);
+        assertNull(cache.read("api-1", true));
+        assertNull(cache.open("api-1", false));
+    }
+
+    @Test
+    public void deletedFileDropsEntry() throws Exception {
+        APIDetailsCache cache = open();
+        cache.store("api-1", "{}", "\"v1\"", null, "1000");
+        Files.delete(directory.resolve("api-1.json.gz"));
+        assertNull(cache.read("api-1", false));
+        assertNull(cache.lookup("api-1"));
+    }
+
+    private static String incompressible(long seed) {
+        Random random = new Random(seed);
+        StringBuilder body = new StringBuilder(500_000);
+        for (int i = 0; i < 500_000; i++) {
+            body.append((char) ('!' + random.nextInt(94)));
+        }
+        return body.toString();
+    }
+}
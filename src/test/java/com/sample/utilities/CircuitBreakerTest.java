@@ -0,0 +1,131 @@
+package com.sample.utilities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CircuitBreaker breaker(int threshold) throws Exception {
+        return new CircuitBreaker(TestConfig.of(folder,
+                "CIRCUIT.FAILURE.THRESHOLD", String.valueOf(threshold),
+                "CIRCUIT.OPEN.TIME", String.valueOf(OPEN_MILLIS)));
+    }
+
+    @Test
+    public void opensAfterConsecutiveOverloadResponses() throws Exception {
+        CircuitBreaker breaker = breaker(3);
+        breaker.record(503, 0, false);
+        breaker.record(429, 0, false);
+        breaker.record(200, 0, false);
+        breaker.record(502, 0, false);
+        breaker.record(-1, 0, false);
+        assertFalse(breaker.isOpen());
+        assertEquals(0, breaker.reserve());
+
+        breaker.record(504, 0, false);
+        assertTrue(breaker.isOpen());
+        assertEquals(1, breaker.getOpenings());
+        long wait = breaker.reserve();
+        assertTrue(String.valueOf(wait), wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+    }
+
+    @Test
+    public void otherFailuresDoNotOpen() throws Exception {
+        CircuitBreaker breaker = breaker(2);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(500, 0, false);
+            breaker.record(404, 0, false);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void zeroThresholdNeverOpens() throws Exception {
+        CircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(503, 0, false);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void retryAfterExtendsTheOpenPeriod() throws Exception {
+        CircuitBreaker breaker = breaker(1);
+        breaker.record(429, 10000, false);
+        assertTrue(breaker.reserve() > TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS * 10));
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThroughAndClosesWhenItSucceeds() throws Exception {
+        CircuitBreaker breaker = breaker(1);
+        breaker.record(503, 0, false);
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 20);
+
+        assertEquals(CircuitBreaker.PROBE, breaker.reserve());
+        // Everyone else waits for the probe
+        assertTrue(breaker.reserve() > 0);
+        assertTrue(breaker.isOpen());
+
+        breaker.record(200, 0, true);
+        assertFalse(breaker.isOpen());
+        assertEquals(0, breaker.reserve());
+        assertEquals(0, breaker.reserve());
+    }
+
+    @Test
+    public void failedProbeOpensAgain() throws Exception {
+        CircuitBreaker breaker = breaker(3);
+        for (int i = 0; i < 3; i++) {
+            breaker.record(503, 0, false);
+        }
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.PROBE, breaker.reserve());
+
+        // A single failure is enough while probing
+        breaker.record(503, 0, true);
+        assertTrue(breaker.isOpen());
+        assertEquals(2, breaker.getOpenings());
+        assertTrue(breaker.reserve() > TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS / 2));
+    }
+
+    @Test
+    public void probeThatNeverReportsBackIsReplaced() throws Exception {
+        CircuitBreaker breaker = breaker(1);
+        breaker.record(503, 0, false);
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.PROBE, breaker.reserve());
+
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.PROBE, breaker.reserve());
+    }
+
+    @Test
+    public void responsesToRequestsSentBeforeOpeningDoNotCloseIt() throws Exception {
+        CircuitBreaker breaker = breaker(1);
+        breaker.record(503, 0, false);
+        // Requests that were already in flight come back while the circuit is open, and while it probes
+        breaker.record(200, 0, false);
+        assertTrue(breaker.isOpen());
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 20);
+        assertEquals(CircuitBreaker.PROBE, breaker.reserve());
+        breaker.record(200, 0, false);
+        breaker.record(503, 0, false);
+        assertTrue(breaker.isOpen());
+        assertEquals(1, breaker.getOpenings());
+
+        breaker.record(200, 0, true);
+        assertFalse(breaker.isOpen());
+    }
+}
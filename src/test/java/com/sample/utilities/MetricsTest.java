@@ -0,0 +1,67 @@
+package com.sample.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, Metrics.Histogram.index(value));
+            assertEquals(value, Metrics.Histogram.upperBound(value));
+        }
+        assertEquals(8, Metrics.Histogram.index(8));
+        assertEquals(8, Metrics.Histogram.upperBound(8));
+        assertEquals(16, Metrics.Histogram.index(16));
+        assertEquals(17, Metrics.Histogram.index(18));
+        assertEquals(17, Metrics.Histogram.upperBound(16));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinAnEighth() {
+        int maxIndex = Metrics.Histogram.index(Long.MAX_VALUE);
+        assertTrue(maxIndex < 64 * 8);
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.upperBound(maxIndex));
+        for (int index = 1; index <= maxIndex; index++) {
+            long lower = Metrics.Histogram.upperBound(index - 1) + 1;
+            long upper = Metrics.Histogram.upperBound(index);
+            assertTrue("bucket " + index, upper >= lower);
+            assertEquals("bucket " + index, index, Metrics.Histogram.index(lower));
+            assertEquals("bucket " + index, index, Metrics.Histogram.index(upper));
+            assertTrue("bucket " + index, (upper - lower + 1) <= Math.max(1, lower / 8));
+        }
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedAtMax() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+
+        assertWithinAnEighth(500, histogram.percentile(0.5));
+        assertWithinAnEighth(950, histogram.percentile(0.95));
+        assertWithinAnEighth(990, histogram.percentile(0.99));
+        assertEquals(1000, histogram.percentile(1.0));
+        assertEquals(1, histogram.percentile(0.0));
+    }
+
+    @Test
+    public void emptyAndNegativeSamples() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        assertEquals(0, histogram.percentile(0.99));
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+
+    private static void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(actual + " for " + expected, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,122 @@
+package com.sample.utilities;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static com.sample.utilities.RetryPolicy.Idempotency.IDEMPOTENT;
+import static com.sample.utilities.RetryPolicy.Idempotency.NON_IDEMPOTENT;
+import static com.sample.utilities.RetryPolicy.Idempotency.SAFE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RetryPolicy policy;
+
+    @Before
+    public void setUp() throws Exception {
+        policy = new RetryPolicy(TestConfig.of(folder,
+                "RETRY.MAX.ATTEMPTS", "5",
+                "RETRY.BASE.DELAY", "100",
+                "RETRY.MAX.DELAY", "1000",
+                "RETRY.MAX.RETRY.AFTER", "60000"));
+    }
+
+    @Test
+    public void statusCodesByIdempotency() {
+        int[] codes = {429, 503, 408, 502, 504, 500, 400, 401, 404, 409};
+        // SAFE, IDEMPOTENT, NON_IDEMPOTENT for each code above
+        boolean[][] expected = {
+                {true, true, true},
+                {true, true, true},
+                {true, true, false},
+                {true, true, false},
+                {true, true, false},
+                {true, false, false},
+                {false, false, false},
+                {false, false, false},
+                {false, false, false},
+                {false, false, false},
+        };
+        for (int i = 0; i < codes.length; i++) {
+            assertEquals("SAFE " + codes[i], expected[i][0], policy.isRetryable(SAFE, codes[i], null));
+            assertEquals("IDEMPOTENT " + codes[i], expected[i][1], policy.isRetryable(IDEMPOTENT, codes[i], null));
+            assertEquals("NON_IDEMPOTENT " + codes[i], expected[i][2], policy.isRetryable(NON_IDEMPOTENT, codes[i], null));
+        }
+    }
+
+    @Test
+    public void revisionCreationIsOnlyRetriedWhenItNeverReachedThePublisher() {
+        assertTrue(policy.isRetryable(NON_IDEMPOTENT, new ConnectException("refused")));
+        assertTrue(policy.isRetryable(NON_IDEMPOTENT, new ConnectTimeoutException("connect timed out")));
+        assertFalse(policy.isRetryable(NON_IDEMPOTENT, new SocketTimeoutException("read timed out")));
+        assertFalse(policy.isRetryable(NON_IDEMPOTENT, new IOException("connection reset")));
+
+        assertTrue(policy.isRetryable(SAFE, new SocketTimeoutException("read timed out")));
+        assertTrue(policy.isRetryable(IDEMPOTENT, new IOException("connection reset")));
+    }
+
+    @Test
+    public void onlyIOFailuresAreRetriedEvenWhenWrapped() {
+        assertTrue(policy.isRetryable(SAFE, new CompletionException(new ExecutionException(new IOException("reset")))));
+        assertTrue(policy.isRetryable(NON_IDEMPOTENT, new CompletionException(new ConnectException("refused"))));
+        assertFalse(policy.isRetryable(SAFE, new CompletionException(new IllegalStateException("bug"))));
+        assertFalse(policy.isRetryable(SAFE, new IllegalArgumentException("bug")));
+    }
+
+    @Test
+    public void retryAfterInSecondsOrAsDate() {
+        assertEquals(0, RetryPolicy.parseRetryAfter(null));
+        assertEquals(0, RetryPolicy.parseRetryAfter(" "));
+        assertEquals(0, RetryPolicy.parseRetryAfter("soon"));
+        assertEquals(120000, RetryPolicy.parseRetryAfter("120"));
+        assertEquals(0, RetryPolicy.parseRetryAfter("-5"));
+
+        long delay = RetryPolicy.parseRetryAfter(DateUtils.formatDate(new Date(System.currentTimeMillis() + 30000)));
+        assertTrue(String.valueOf(delay), delay > 25000 && delay <= 30000);
+        assertEquals(0, RetryPolicy.parseRetryAfter(DateUtils.formatDate(new Date(System.currentTimeMillis() - 30000))));
+    }
+
+    @Test
+    public void retryAfterBeyondTheLimitIsNotWaitedFor() {
+        assertTrue(policy.isRetryable(SAFE, 503, "60"));
+        assertFalse(policy.isRetryable(SAFE, 503, "61"));
+        assertFalse(policy.isRetryable(SAFE, 429, "3600"));
+    }
+
+    @Test
+    public void delayBacksOffExponentiallyWithJitterUpToTheCap() {
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.getDelayMillis(1, null));
+            assertBetween(100, 200, policy.getDelayMillis(2, null));
+            assertBetween(400, 800, policy.getDelayMillis(4, null));
+            assertBetween(500, 1000, policy.getDelayMillis(5, null));
+            assertBetween(500, 1000, policy.getDelayMillis(40, null));
+        }
+    }
+
+    @Test
+    public void delayIsAtLeastRetryAfter() {
+        assertEquals(5000, policy.getDelayMillis(1, "5"));
+        assertBetween(50, 100, policy.getDelayMillis(1, "0"));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+}
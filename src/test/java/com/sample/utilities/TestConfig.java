@@ -0,0 +1,34 @@
+package com.sample.utilities;
+
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Configuration for tests, written to a temporary config.properties.
+ */
+public final class TestConfig {
+
+    private TestConfig() {
+    }
+
+    /**
+     * @param keysAndValues alternating property names and values.
+     */
+    public static ConfigLoader of(TemporaryFolder folder, String... keysAndValues) throws IOException {
+        Properties properties = new Properties();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        Path file = folder.newFile().toPath();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        return new ConfigLoader(file.toString());
+    }
+}